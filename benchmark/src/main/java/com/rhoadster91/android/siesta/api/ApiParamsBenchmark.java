@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiParamsBenchmark {
+
+    static class BenchmarkApi extends Api {
+
+        @Override
+        public String getApiUrl() {
+            return "https://api.example.com/v1/items";
+        }
+    }
+
+    @Param({"2", "8", "32"})
+    public int paramCount;
+
+    private ApiExecutor mApiExecutor;
+    private Api mApi;
+    private String[] mKeyValues;
+    private Map<String, String> mParams;
+
+    @Setup
+    public void setUp() {
+        mApiExecutor = new ApiExecutor(1);
+        mApi = new BenchmarkApi();
+        mKeyValues = new String[paramCount * 2];
+        for(int i = 0; i < paramCount; i++) {
+            mKeyValues[i * 2] = "key" + i;
+            mKeyValues[i * 2 + 1] = "value " + i + " & more";
+        }
+        mParams = mApiExecutor.toMap(mKeyValues);
+    }
+
+    @Benchmark
+    public Map<String, String> toMap() {
+        return mApiExecutor.toMap(mKeyValues);
+    }
+
+    @Benchmark
+    public String processGetParams() {
+        return mApi.processGetParams(mParams);
+    }
+
+    @Benchmark
+    public String processPutParams() {
+        return mApi.processPutParams(mParams);
+    }
+
+    @Benchmark
+    public String getApiSignature() {
+        return mApi.getApiSignature(mParams);
+    }
+}
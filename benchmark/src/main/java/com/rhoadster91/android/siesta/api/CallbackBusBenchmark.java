@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One signature makes every thread coalesce onto the same subscription,
+// which is the worst case for the CAS loops; 64 spreads them out.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CallbackBusBenchmark {
+
+    private static final ApiExecutor.ApiCallback<Object> CALLBACK = new ApiExecutor.ApiCallback<Object>() {
+        @Override
+        public void onSuccess(int responseCode, Object response) {
+        }
+
+        @Override
+        public void onFailure(int responseCode, Object response, Throwable t) {
+        }
+    };
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+
+    @Param({"1", "64"})
+    public int signatureCount;
+
+    private CallbackBus mBus;
+    private String[] mSignatures;
+
+    @Setup
+    public void setUp() {
+        mBus = new CallbackBus();
+        mSignatures = new String[signatureCount];
+        for(int i = 0; i < signatureCount; i++) {
+            mSignatures[i] = "https://api.example.com/v1/items?page=" + i + "&";
+        }
+    }
+
+    @Benchmark
+    public Object subscribeAndComplete(ThreadState threadState) {
+        String signature = mSignatures[threadState.next++ % signatureCount];
+        CallbackBus.Subscription subscription = mBus.subscribe(signature, new CallbackBus.Subscriber(CALLBACK, CallbackExecutors.immediate()));
+        return subscription != null ? mBus.complete(subscription) : null;
+    }
+
+    @Benchmark
+    public Object subscribeAndCancel(ThreadState threadState) {
+        String signature = mSignatures[threadState.next++ % signatureCount];
+        CallbackBus.Subscriber subscriber = new CallbackBus.Subscriber(CALLBACK, CallbackExecutors.immediate());
+        mBus.subscribe(signature, subscriber);
+        return mBus.unsubscribe(signature, subscriber);
+    }
+}
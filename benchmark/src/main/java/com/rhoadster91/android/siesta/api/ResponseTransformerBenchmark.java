@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.response.ResponseTransformer;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseTransformerBenchmark {
+
+    private static final String PAYLOAD = "{\"id\":42,\"name\":\"siesta\",\"tags\":[\"a\",\"b\",\"c\"],\"score\":0.75}";
+    private static final String SIGNATURE = "https://api.example.com/v1/items/42?";
+
+    static class SinkCallback<T> implements ApiExecutor.ApiCallback<T> {
+
+        Blackhole blackhole;
+
+        @Override
+        public void onSuccess(int responseCode, T response) {
+            blackhole.consume(response);
+        }
+
+        @Override
+        public void onFailure(int responseCode, T response, Throwable t) {
+            blackhole.consume(t);
+        }
+    }
+
+    static class JsonTransformer extends ResponseTransformer<JSONObject, String> {
+
+        JsonTransformer(ApiExecutor.ApiCallback<JSONObject> actualApiCallback) {
+            super(actualApiCallback);
+        }
+
+        @Override
+        public JSONObject transform(String s) throws Throwable {
+            return new JSONObject(s);
+        }
+    }
+
+    @Param({"1", "8"})
+    public int subscriberCount;
+
+    private ApiExecutor mApiExecutor;
+    private SinkCallback<String> mPlainCallback;
+    private SinkCallback<JSONObject> mTransformedCallback;
+    private JsonTransformer mTransformer;
+    private ResponseWrapper<String> mResponseWrapper;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        mApiExecutor = new ApiExecutor(1);
+        mApiExecutor.setCallbackExecutor(CallbackExecutors.immediate());
+        mPlainCallback = new SinkCallback<>();
+        mPlainCallback.blackhole = blackhole;
+        mTransformedCallback = new SinkCallback<>();
+        mTransformedCallback.blackhole = blackhole;
+        mTransformer = new JsonTransformer(mTransformedCallback);
+        mResponseWrapper = new ResponseWrapper<>();
+        mResponseWrapper.setCode(200);
+        mResponseWrapper.setResponse(PAYLOAD);
+    }
+
+    @Benchmark
+    public void plainCallback() {
+        mPlainCallback.onSuccess(200, PAYLOAD);
+    }
+
+    @Benchmark
+    public void transformerCallback() {
+        mTransformer.onSuccess(200, PAYLOAD);
+    }
+
+    // Fans one completed response out to every subscriber through the bus, the
+    // way ApiTask completes a coalesced request. Transformers that share a
+    // transform key should cost one transform regardless of subscriberCount.
+    @Benchmark
+    public void dispatchPlain() {
+        dispatch(mPlainCallback);
+    }
+
+    @Benchmark
+    public void dispatchTransformed() {
+        dispatch(mTransformer);
+    }
+
+    private void dispatch(ApiExecutor.ApiCallback callback) {
+        CallbackBus.Subscription subscription = null;
+        for(int i = 0; i < subscriberCount; i++) {
+            CallbackBus.Subscription created = mApiExecutor.mApiBus.subscribe(SIGNATURE, new CallbackBus.Subscriber(callback, CallbackExecutors.immediate()));
+            if(created != null) {
+                subscription = created;
+            }
+        }
+        mApiExecutor.complete(subscription, true, mResponseWrapper, null);
+    }
+}
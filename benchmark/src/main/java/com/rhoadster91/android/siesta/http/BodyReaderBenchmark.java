@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Run with -prof gc to get the allocation rate per operation alongside the
+// time; the legacy variant is the char-at-a-time loop SimpleHttpApiRequest
+// used before ResponseBodyReader.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyReaderBenchmark {
+
+    static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    @Param({"16384", "1048576"})
+    public int size;
+
+    private byte[] mBody;
+
+    @Setup
+    public void setUp() {
+        mBody = newBody(size);
+    }
+
+    @Benchmark
+    public String legacyCharByChar() throws IOException {
+        return readLegacy(new ByteArrayInputStream(mBody));
+    }
+
+    @Benchmark
+    public String knownLength() throws IOException {
+        return ResponseBodyReader.readString(new ByteArrayInputStream(mBody), mBody.length, CONTENT_TYPE);
+    }
+
+    @Benchmark
+    public String unknownLength() throws IOException {
+        return ResponseBodyReader.readString(new ByteArrayInputStream(mBody), -1, CONTENT_TYPE);
+    }
+
+    static String readLegacy(InputStream in) throws IOException {
+        InputStreamReader isw = new InputStreamReader(in);
+        StringBuilder stringBuilder = new StringBuilder();
+        int data = isw.read();
+        while (data != -1) {
+            char current = (char) data;
+            data = isw.read();
+            stringBuilder.append(current);
+        }
+        return stringBuilder.toString();
+    }
+
+    static byte[] newBody(int size) {
+        String record = "{\"id\":12345,\"name\":\"caf\u00e9 siesta\",\"active\":true},";
+        StringBuilder builder = new StringBuilder(size + record.length());
+        while (builder.length() < size) {
+            builder.append(record);
+        }
+        try {
+            return Arrays.copyOf(builder.toString().getBytes("UTF-8"), size);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
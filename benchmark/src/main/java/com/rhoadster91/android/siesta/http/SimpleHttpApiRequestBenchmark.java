@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.api.Api;
+import com.rhoadster91.android.siesta.api.capability.Gettable;
+import com.rhoadster91.android.siesta.request.GetRequest;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleHttpApiRequestBenchmark {
+
+    static class BenchmarkApi extends Api implements Gettable<String> {
+
+        private final String mUrl;
+        private final GetRequest<String> mRequest = new SimpleHttpApiRequest();
+
+        BenchmarkApi(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public String getApiUrl() {
+            return mUrl;
+        }
+
+        @Override
+        public GetRequest<String> newGetRequest() {
+            return mRequest;
+        }
+
+        @Override
+        public boolean isGetSuccess(int responseCode, String response) {
+            return responseCode == HttpURLConnection.HTTP_OK;
+        }
+    }
+
+    @Param({"16384", "1048576"})
+    public int size;
+
+    private HttpServer mServer;
+    private BenchmarkApi mApi;
+    private Map<String, String> mParams = Collections.emptyMap();
+    private Map<String, String> mHeaders = Collections.emptyMap();
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] body = BodyReaderBenchmark.newBody(size);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/body", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Content-Type", BodyReaderBenchmark.CONTENT_TYPE);
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        mServer.setExecutor(Executors.newFixedThreadPool(2));
+        mServer.start();
+        mApi = new BenchmarkApi("http://127.0.0.1:" + mServer.getAddress().getPort() + "/body");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Benchmark
+    public String simpleHttpApiRequest() throws Throwable {
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        mApi.newGetRequest().get(mApi, mParams, mHeaders, responseWrapper);
+        return responseWrapper.getResponse();
+    }
+
+    @Benchmark
+    public String legacyCharByChar() throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) new URL(mApi.processGetParams(mParams)).openConnection();
+        urlConnection.getResponseCode();
+        return BodyReaderBenchmark.readLegacy(urlConnection.getInputStream());
+    }
+}
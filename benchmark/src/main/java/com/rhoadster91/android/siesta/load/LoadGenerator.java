@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.load;
+
+import com.rhoadster91.android.siesta.api.Api;
+import com.rhoadster91.android.siesta.api.ApiExecutor;
+import com.rhoadster91.android.siesta.api.OverflowPolicy;
+import com.rhoadster91.android.siesta.api.capability.Gettable;
+import com.rhoadster91.android.siesta.http.SimpleHttpApiRequest;
+import com.rhoadster91.android.siesta.metrics.Histogram;
+import com.rhoadster91.android.siesta.request.GetRequest;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Closed-loop load generator: keeps `concurrency` requests outstanding across
+// a set of ApiExecutors and measures submit-to-callback latency. Callbacks are
+// delivered on one shared thread, standing in for the Android main thread.
+//
+//   ./gradlew :benchmark:loadtest -Pload='--pool=fixed:4,fixed:16,cached,bounded:16:32 --concurrency=8,64 --dedup=0,0.5'
+public class LoadGenerator {
+
+    static final int HOT_SIGNATURES = 8;
+
+    static class LoadApi extends Api implements Gettable<String> {
+
+        private final String mUrl;
+        private final GetRequest<String> mRequest;
+
+        LoadApi(String url, GetRequest<String> request) {
+            mUrl = url;
+            mRequest = request;
+        }
+
+        @Override
+        public String getApiUrl() {
+            return mUrl;
+        }
+
+        @Override
+        public GetRequest<String> newGetRequest() {
+            return mRequest;
+        }
+
+        @Override
+        public boolean isGetSuccess(int responseCode, String response) {
+            return responseCode == HttpURLConnection.HTTP_OK;
+        }
+    }
+
+    static class Run {
+
+        String pool;
+        int concurrency;
+        int payloadSize;
+        double dedupRatio;
+
+        long elapsedNanos;
+        long completed;
+        long errors;
+        long serverRequests;
+        long peakHeap;
+        Histogram latency = new Histogram();
+    }
+
+    private final Map<String, String> mOptions;
+    private final LoadServer mServer;
+
+    private final int mRequests;
+    private final int mWarmupRequests;
+    private final int mExecutors;
+    private final int mMaxRequestsPerHost;
+
+    LoadGenerator(Map<String, String> options, LoadServer server) {
+        mOptions = options;
+        mServer = server;
+        mRequests = Integer.parseInt(option("requests", "5000"));
+        mWarmupRequests = Integer.parseInt(option("warmup", "500"));
+        mExecutors = Integer.parseInt(option("executors", "2"));
+        mMaxRequestsPerHost = Integer.parseInt(option("per-host", String.valueOf(Integer.MAX_VALUE)));
+        server.setLatency(Long.parseLong(option("latency", "20")), Long.parseLong(option("jitter", "10")));
+        server.setErrorRate(Double.parseDouble(option("error-rate", "0")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args) {
+            if(!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        LoadServer server = new LoadServer();
+        try {
+            new LoadGenerator(options, server).sweep();
+        } finally {
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    void sweep() throws InterruptedException {
+        System.out.println(String.format(Locale.US, "%-10s %6s %9s %6s %8s %7s %10s %9s %9s %9s %9s %9s",
+                "pool", "conc", "payload", "dedup", "done", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "heap MB"));
+        for(String pool : option("pool", "fixed:4,fixed:16,cached").split(",")) {
+            for(String concurrency : option("concurrency", "1,8,64").split(",")) {
+                for(String payloadSize : option("payload", "1024,65536").split(",")) {
+                    for(String dedupRatio : option("dedup", "0,0.5").split(",")) {
+                        Run run = new Run();
+                        run.pool = pool;
+                        run.concurrency = Integer.parseInt(concurrency);
+                        run.payloadSize = Integer.parseInt(payloadSize);
+                        run.dedupRatio = Double.parseDouble(dedupRatio);
+                        execute(run);
+                        report(run);
+                    }
+                }
+            }
+        }
+    }
+
+    private void execute(Run run) throws InterruptedException {
+        mServer.setPayloadSize(run.payloadSize);
+        ExecutorService callbackThread = Executors.newSingleThreadExecutor();
+        List<ApiExecutor> apiExecutors = new ArrayList<>();
+        for(int i = 0; i < mExecutors; i++) {
+            ApiExecutor apiExecutor = newApiExecutor(run.pool);
+            apiExecutor.setCallbackExecutor(callbackThread);
+            apiExecutor.setMaxRequestsPerHost(mMaxRequestsPerHost);
+            apiExecutors.add(apiExecutor);
+        }
+        LoadApi api = new LoadApi(mServer.getUrl(), new SimpleHttpApiRequest());
+
+        issue(run, apiExecutors, api, mWarmupRequests, new Run());
+
+        System.gc();
+        HeapSampler heapSampler = new HeapSampler();
+        heapSampler.start();
+        long serverRequests = mServer.getRequestCount();
+        long startedAt = System.nanoTime();
+        issue(run, apiExecutors, api, mRequests, run);
+        run.elapsedNanos = System.nanoTime() - startedAt;
+        run.serverRequests = mServer.getRequestCount() - serverRequests;
+        run.peakHeap = heapSampler.finish();
+        callbackThread.shutdown();
+    }
+
+    private void issue(Run config, List<ApiExecutor> apiExecutors, LoadApi api, int requests, final Run results) throws InterruptedException {
+        final Semaphore inFlight = new Semaphore(config.concurrency);
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            String key = random.nextDouble() < config.dedupRatio ? "hot" + random.nextInt(HOT_SIGNATURES) : "cold" + i + "-" + System.nanoTime();
+            final long submittedAt = System.nanoTime();
+            apiExecutors.get(i % apiExecutors.size()).get(api, new ApiExecutor.ApiCallback<String>() {
+                @Override
+                public void onSuccess(int responseCode, String response) {
+                    done(false);
+                }
+
+                @Override
+                public void onFailure(int responseCode, String response, Throwable t) {
+                    done(true);
+                }
+
+                private void done(boolean failed) {
+                    results.latency.record((System.nanoTime() - submittedAt) / 1000);
+                    if(failed) {
+                        errors.incrementAndGet();
+                    }
+                    completed.incrementAndGet();
+                    inFlight.release();
+                }
+            }, null, "key", key);
+        }
+        inFlight.acquire(config.concurrency);
+        results.completed = completed.get();
+        results.errors = errors.get();
+    }
+
+    private static ApiExecutor newApiExecutor(String pool) {
+        if("cached".equals(pool)) {
+            return new ApiExecutor();
+        } else if(pool.startsWith("fixed:")) {
+            return new ApiExecutor(Integer.parseInt(pool.substring("fixed:".length())));
+        } else if(pool.startsWith("bounded:")) {
+            // bounded:<threads>:<max queued>, failing fast once the queue is full
+            String[] parts = pool.split(":");
+            ApiExecutor apiExecutor = new ApiExecutor(Integer.parseInt(parts[1]));
+            apiExecutor.setMaxQueuedRequests(Integer.parseInt(parts[2]), OverflowPolicy.FAIL_FAST);
+            return apiExecutor;
+        }
+        throw new IllegalArgumentException("Unknown pool " + pool + ", expected cached, fixed:<threads> or bounded:<threads>:<max queued>");
+    }
+
+    private static void report(Run run) {
+        double seconds = run.elapsedNanos / 1e9;
+        System.out.println(String.format(Locale.US, "%-10s %6d %9d %6.2f %8d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.1f",
+                run.pool, run.concurrency, run.payloadSize, run.dedupRatio, run.completed, run.errors, run.completed / seconds,
+                run.latency.getPercentile(50) / 1000d, run.latency.getPercentile(95) / 1000d,
+                run.latency.getPercentile(99) / 1000d, run.latency.getPercentile(99.9) / 1000d,
+                run.peakHeap / (1024d * 1024d)));
+    }
+
+    private String option(String name, String defaultValue) {
+        String value = mOptions.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    static class HeapSampler extends Thread {
+
+        private volatile boolean mRunning = true;
+        private long mPeak;
+
+        HeapSampler() {
+            super("heap-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (mRunning) {
+                mPeak = Math.max(mPeak, runtime.totalMemory() - runtime.freeMemory());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long finish() throws InterruptedException {
+            mRunning = false;
+            join();
+            return mPeak;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stand-in for a real backend: serves a fixed-size JSON-ish body after a
+// configurable delay and fails a configurable fraction of requests with 500.
+class LoadServer {
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    private volatile byte[] mBody = new byte[0];
+    private volatile long mLatency;
+    private volatile long mJitter;
+    private volatile double mErrorRate;
+
+    LoadServer() throws IOException {
+        // Without TCP_NODELAY the JDK server's separate header and body writes
+        // hit Nagle plus delayed ACK, adding ~40ms to every request.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/load", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/load";
+    }
+
+    long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    void setPayloadSize(int payloadSize) {
+        byte[] body = new byte[payloadSize];
+        Arrays.fill(body, (byte) 'x');
+        if(payloadSize >= 2) {
+            body[0] = '"';
+            body[payloadSize - 1] = '"';
+        }
+        mBody = body;
+    }
+
+    void setLatency(long latency, long jitter) {
+        mLatency = latency;
+        mJitter = jitter;
+    }
+
+    void setErrorRate(double errorRate) {
+        mErrorRate = errorRate;
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = mLatency + (mJitter > 0 ? random.nextLong(-mJitter, mJitter + 1) : 0);
+        if(delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = mBody;
+        int code = random.nextDouble() < mErrorRate ? HttpURLConnection.HTTP_INTERNAL_ERROR : HttpURLConnection.HTTP_OK;
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length > 0 ? body.length : -1);
+        OutputStream os = exchange.getResponseBody();
+        os.write(body);
+        os.close();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.TypeMirror;
+
+class ServiceMethod {
+
+    enum Verb {
+        GET("Get", "GettableApi", "Gettable", "GetRequest", "newGetRequest"),
+        POST("Post", "PostableApi", "Postable", "PostRequest", "newPostRequest"),
+        PUT("Put", "PuttableApi", "Puttable", "PutRequest", "newPutRequest"),
+        DELETE("Delete", "DeletableApi", "Deletable", "DeleteRequest", "newDeleteRequest");
+
+        final String annotation;
+        final String baseClass;
+        final String capability;
+        final String request;
+        final String factoryMethod;
+
+        Verb(String annotation, String baseClass, String capability, String request, String factoryMethod) {
+            this.annotation = annotation;
+            this.baseClass = baseClass;
+            this.capability = capability;
+            this.request = request;
+            this.factoryMethod = factoryMethod;
+        }
+
+        boolean hasBody() {
+            return this == POST || this == PUT;
+        }
+    }
+
+    enum Kind {
+        PATH, QUERY, FIELD, HEADER;
+
+        String annotation() {
+            return name().charAt(0) + name().substring(1).toLowerCase(Locale.US);
+        }
+    }
+
+    static class Parameter {
+
+        final Kind kind;
+        final String name;
+        final String javaName;
+        final TypeMirror type;
+
+        Parameter(Kind kind, String name, String javaName, TypeMirror type) {
+            this.kind = kind;
+            this.name = name;
+            this.javaName = javaName;
+            this.type = type;
+        }
+    }
+
+    // A URL template split into literal text and {placeholder} names; even
+    // indices are literals, odd indices are placeholder names.
+    static List<String> parseTemplate(String template) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (true) {
+            int open = template.indexOf('{', start);
+            if(open == -1) {
+                parts.add(template.substring(start));
+                return parts;
+            }
+            int close = template.indexOf('}', open);
+            if(close == -1) {
+                throw new IllegalArgumentException("Unclosed '{' in \"" + template + "\"");
+            }
+            parts.add(template.substring(start, open));
+            parts.add(template.substring(open + 1, close));
+            start = close + 1;
+        }
+    }
+
+    final ExecutableElement element;
+    final Verb verb;
+    final String url;
+    final TypeMirror responseType;
+    final List<Parameter> parameters = new ArrayList<>();
+    String className;
+
+    ServiceMethod(ExecutableElement element, Verb verb, String url, TypeMirror responseType) {
+        this.element = element;
+        this.verb = verb;
+        this.url = url;
+        this.responseType = responseType;
+    }
+
+    List<Parameter> parametersOf(Kind kind) {
+        List<Parameter> result = new ArrayList<>();
+        for(Parameter parameter : parameters) {
+            if(parameter.kind == kind) {
+                result.add(parameter);
+            }
+        }
+        return result;
+    }
+
+    Parameter pathParameter(String name) {
+        for(Parameter parameter : parameters) {
+            if(parameter.kind == Kind.PATH && parameter.name.equals(name)) {
+                return parameter;
+            }
+        }
+        return null;
+    }
+}
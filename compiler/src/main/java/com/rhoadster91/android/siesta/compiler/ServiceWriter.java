@@ -0,0 +1,469 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.compiler;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+// Emits one class per service interface. Every service method gets a nested
+// Api subclass whose URL and body are assembled once in its constructor, so
+// the executor never goes through the Map based processGetParams and
+// processPutParams paths for generated Apis.
+class ServiceWriter {
+
+    private static final String LIBRARY = "com.rhoadster91.android.siesta.";
+    private static final int DYNAMIC_PART_ESTIMATE = 16;
+    private static final String[] BOXED_LITERALS = {
+            "java.lang.Boolean", "java.lang.Byte", "java.lang.Short", "java.lang.Integer",
+            "java.lang.Long", "java.lang.Float", "java.lang.Double"
+    };
+
+    private final Types mTypes;
+    private final TypeElement mService;
+    private final String mPackageName;
+    private final String mClassName;
+    private final List<ServiceMethod> mMethods = new ArrayList<>();
+
+    private StringBuilder mOut;
+    private int mIndent;
+
+    ServiceWriter(ProcessingEnvironment processingEnv, TypeElement service) {
+        mTypes = processingEnv.getTypeUtils();
+        mService = service;
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(service);
+        mPackageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        StringBuilder name = new StringBuilder();
+        for(Element element = service; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+            if(name.length() > 0) {
+                name.insert(0, '_');
+            }
+            name.insert(0, element.getSimpleName());
+        }
+        mClassName = "Siesta" + name;
+    }
+
+    void addMethod(ServiceMethod method) {
+        mMethods.add(method);
+    }
+
+    String getQualifiedName() {
+        return mPackageName.isEmpty() ? mClassName : mPackageName + "." + mClassName;
+    }
+
+    String write() {
+        mOut = new StringBuilder();
+        mIndent = 0;
+        if(!mPackageName.isEmpty()) {
+            line("package " + mPackageName + ";");
+            line("");
+        }
+        line("import java.util.HashMap;");
+        line("import java.util.Map;");
+        line("");
+        line("import " + LIBRARY + "request.Encoders;");
+        line("");
+        line("public final class " + mClassName + " implements " + mService.getQualifiedName() + " {");
+        mIndent++;
+        for(ServiceMethod method : mMethods) {
+            line("");
+            writeServiceMethod(method);
+        }
+        for(ServiceMethod method : mMethods) {
+            line("");
+            writeApiClass(method);
+        }
+        mIndent--;
+        line("}");
+        return mOut.toString();
+    }
+
+    private void writeServiceMethod(ServiceMethod method) {
+        line("@Override");
+        line("public " + method.element.getReturnType() + " " + method.element.getSimpleName() + "(" + declaration(method) + ") {");
+        mIndent++;
+        StringBuilder arguments = new StringBuilder();
+        for(VariableElement parameter : method.element.getParameters()) {
+            if(arguments.length() > 0) {
+                arguments.append(", ");
+            }
+            arguments.append(parameter.getSimpleName());
+        }
+        line("return new " + method.className + "(" + arguments + ");");
+        mIndent--;
+        line("}");
+    }
+
+    private void writeApiClass(ServiceMethod method) {
+        String responseType = method.responseType.toString();
+        boolean isString = isType(method.responseType, "java.lang.String");
+        boolean hasBody = method.verb.hasBody();
+        List<ServiceMethod.Parameter> headers = method.parametersOf(ServiceMethod.Kind.HEADER);
+
+        line("static final class " + method.className + " extends " + LIBRARY + "api." + method.verb.baseClass + "<" + responseType + "> {");
+        mIndent++;
+        line("");
+        if(!isString) {
+            line("private static final " + LIBRARY + "json.JsonCodec<" + responseType + "> CODEC = " + codecExpression(method.responseType) + ";");
+            line("");
+        }
+        line("private final String mUrl;");
+        if(hasBody) {
+            line("private final String mBody;");
+        }
+        if(!headers.isEmpty()) {
+            line("private final Map<String, String> mHeaders;");
+        }
+        line("");
+        line(method.className + "(" + declaration(method) + ") {");
+        mIndent++;
+        writeUrl(method);
+        if(hasBody) {
+            writeBody(method);
+        }
+        if(!headers.isEmpty()) {
+            writeHeaders(headers);
+        }
+        mIndent--;
+        line("}");
+
+        line("");
+        line("@Override");
+        line("public String getApiUrl() {");
+        line("    return mUrl;");
+        line("}");
+        line("");
+        line("@Override");
+        line("public String processGetParams(Map<String, String> params) {");
+        line("    return mUrl;");
+        line("}");
+        if(hasBody) {
+            line("");
+            line("@Override");
+            line("public String processPutParams(Map<String, String> params) {");
+            line("    return mBody;");
+            line("}");
+        }
+        line("");
+        line("@Override");
+        line("public String getApiSignature(Map<String, String> params) {");
+        line(hasBody ? "    return mUrl + ' ' + mBody;" : "    return mUrl;");
+        line("}");
+        if(!headers.isEmpty()) {
+            line("");
+            line("@Override");
+            line("public Map<String, String> getDefaultHeaders() {");
+            line("    return mHeaders;");
+            line("}");
+        }
+        line("");
+        line("@Override");
+        line("public " + LIBRARY + "request." + method.verb.request + "<" + responseType + "> " + method.verb.factoryMethod + "() {");
+        if(isString) {
+            line("    return new " + LIBRARY + "http.SimpleHttpApiRequest();");
+        } else {
+            line("    return new " + LIBRARY + "http.JsonHttpApiRequest<" + responseType + ">(CODEC);");
+        }
+        line("}");
+        mIndent--;
+        line("}");
+    }
+
+    private void writeUrl(ServiceMethod method) {
+        List<String> template = ServiceMethod.parseTemplate(method.url);
+        List<ServiceMethod.Parameter> queries = method.parametersOf(ServiceMethod.Kind.QUERY);
+        if(template.size() == 1 && queries.isEmpty()) {
+            line("mUrl = " + literal(method.url) + ";");
+            return;
+        }
+        int capacity = 0;
+        for(int i = 0; i < template.size(); i += 2) {
+            capacity += template.get(i).length();
+        }
+        capacity += (template.size() / 2 + queries.size()) * DYNAMIC_PART_ESTIMATE;
+        line("StringBuilder url = new StringBuilder(" + capacity + ");");
+        for(int i = 0; i < template.size(); i++) {
+            String part = template.get(i);
+            if(i % 2 == 0) {
+                if(!part.isEmpty()) {
+                    line("url.append(" + literal(part) + ");");
+                }
+                continue;
+            }
+            ServiceMethod.Parameter parameter = method.pathParameter(part);
+            if(!parameter.type.getKind().isPrimitive()) {
+                line("if(" + parameter.javaName + " == null) {");
+                line("    throw new IllegalArgumentException(" + literal("@Path(\"" + parameter.name + "\") must not be null") + ");");
+                line("}");
+            }
+            appendValue("url", parameter, "Encoders.appendPathSegment");
+        }
+        if(!queries.isEmpty()) {
+            line("char separator = '?';");
+            for(ServiceMethod.Parameter parameter : queries) {
+                String name = literal(queryName(parameter.name) + "=");
+                if(nullable(parameter)) {
+                    line("if(" + parameter.javaName + " != null) {");
+                    mIndent++;
+                }
+                line("url.append(separator).append(" + name + ");");
+                appendValue("url", parameter, "Encoders.appendQueryValue");
+                line("separator = '&';");
+                if(nullable(parameter)) {
+                    mIndent--;
+                    line("}");
+                }
+            }
+        }
+        line("mUrl = url.toString();");
+    }
+
+    private void writeBody(ServiceMethod method) {
+        List<ServiceMethod.Parameter> fields = method.parametersOf(ServiceMethod.Kind.FIELD);
+        if(fields.isEmpty()) {
+            line("mBody = \"{}\";");
+            return;
+        }
+        int capacity = 2;
+        for(ServiceMethod.Parameter parameter : fields) {
+            capacity += parameter.name.length() + 4 + DYNAMIC_PART_ESTIMATE;
+        }
+        line("StringBuilder body = new StringBuilder(" + capacity + ");");
+        line("body.append('{');");
+        for(ServiceMethod.Parameter parameter : fields) {
+            StringBuilder key = new StringBuilder();
+            appendJsonString(key, parameter.name);
+            key.append(':');
+            if(nullable(parameter)) {
+                line("if(" + parameter.javaName + " != null) {");
+                mIndent++;
+            }
+            String floating = floatingClass(parameter.type);
+            if(floating != null) {
+                line("if(" + floating + ".isNaN(" + parameter.javaName + ") || " + floating + ".isInfinite(" + parameter.javaName + ")) {");
+                line("    throw new IllegalArgumentException(" + literal("@Field(\"" + parameter.name + "\") must be finite") + ");");
+                line("}");
+            }
+            line("if(body.length() > 1) {");
+            line("    body.append(',');");
+            line("}");
+            line("body.append(" + literal(key.toString()) + ");");
+            if(isLiteral(parameter.type)) {
+                line("body.append(" + parameter.javaName + ");");
+            } else {
+                line("Encoders.appendJsonString(body, " + stringExpression(parameter) + ");");
+            }
+            if(nullable(parameter)) {
+                mIndent--;
+                line("}");
+            }
+        }
+        line("body.append('}');");
+        line("mBody = body.toString();");
+    }
+
+    private void writeHeaders(List<ServiceMethod.Parameter> headers) {
+        line("mHeaders = new HashMap<>(" + Math.max(4, headers.size() * 2) + ");");
+        for(ServiceMethod.Parameter parameter : headers) {
+            if(nullable(parameter)) {
+                line("if(" + parameter.javaName + " != null) {");
+                line("    mHeaders.put(" + literal(parameter.name) + ", " + stringExpression(parameter) + ");");
+                line("}");
+            } else {
+                line("mHeaders.put(" + literal(parameter.name) + ", " + stringExpression(parameter) + ");");
+            }
+        }
+    }
+
+    private void appendValue(String builder, ServiceMethod.Parameter parameter, String encoder) {
+        if(isLiteral(parameter.type)) {
+            line(builder + ".append(" + parameter.javaName + ");");
+        } else {
+            line(encoder + "(" + builder + ", " + stringExpression(parameter) + ");");
+        }
+    }
+
+    private String codecExpression(TypeMirror type) {
+        String codecs = LIBRARY + "json.JsonCodecs";
+        if(type.getKind() == TypeKind.DECLARED) {
+            DeclaredType declared = (DeclaredType) type;
+            List<? extends TypeMirror> arguments = declared.getTypeArguments();
+            if(arguments.size() == 1 && isType(type, "java.util.List")) {
+                return codecs + ".listOf(" + codecExpression(arguments.get(0)) + ")";
+            }
+            if(arguments.size() == 2 && isType(type, "java.util.Map") && isType(arguments.get(0), "java.lang.String")) {
+                return codecs + ".mapOf(" + codecExpression(arguments.get(1)) + ")";
+            }
+        }
+        return codecs + ".get(" + mTypes.erasure(type) + ".class)";
+    }
+
+    // JsonCodecs.get only yields codecs for raw classes, so the only generic
+    // responses a codec can be built for are List<T> and Map<String, T>.
+    static boolean hasCodec(TypeMirror type) {
+        if(type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if(arguments.isEmpty()) {
+            return true;
+        }
+        if(arguments.size() == 1 && isType(type, "java.util.List")) {
+            return hasCodec(arguments.get(0));
+        }
+        return arguments.size() == 2 && isType(type, "java.util.Map")
+                && isType(arguments.get(0), "java.lang.String") && hasCodec(arguments.get(1));
+    }
+
+    private String declaration(ServiceMethod method) {
+        StringBuilder declaration = new StringBuilder();
+        for(VariableElement parameter : method.element.getParameters()) {
+            if(declaration.length() > 0) {
+                declaration.append(", ");
+            }
+            declaration.append(parameter.asType()).append(' ').append(parameter.getSimpleName());
+        }
+        return declaration.toString();
+    }
+
+    private String stringExpression(ServiceMethod.Parameter parameter) {
+        if(isType(parameter.type, "java.lang.String")) {
+            return parameter.javaName;
+        }
+        if(isEnum(parameter.type)) {
+            return parameter.javaName + ".name()";
+        }
+        return "String.valueOf(" + parameter.javaName + ")";
+    }
+
+    private static boolean nullable(ServiceMethod.Parameter parameter) {
+        return !parameter.type.getKind().isPrimitive();
+    }
+
+    // Numbers and booleans print the same in a URL as in JSON and need no
+    // escaping in either; chars do.
+    private static boolean isLiteral(TypeMirror type) {
+        TypeKind kind = type.getKind();
+        if(kind.isPrimitive()) {
+            return kind != TypeKind.CHAR;
+        }
+        for(String boxed : BOXED_LITERALS) {
+            if(isType(type, boxed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // JSON has no literal for NaN or the infinities, so a body field holding
+    // one would be written as invalid JSON.
+    private static String floatingClass(TypeMirror type) {
+        if(type.getKind() == TypeKind.FLOAT || isType(type, "java.lang.Float")) {
+            return "Float";
+        }
+        if(type.getKind() == TypeKind.DOUBLE || isType(type, "java.lang.Double")) {
+            return "Double";
+        }
+        return null;
+    }
+
+    private boolean isEnum(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    private static boolean isType(TypeMirror type, String qualifiedName) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(qualifiedName);
+    }
+
+    private static String queryName(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void appendJsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if(c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    static String literal(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2);
+        builder.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20 || c > 0x7e) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private void line(String text) {
+        if(!text.isEmpty()) {
+            for(int i = 0; i < mIndent; i++) {
+                mOut.append("    ");
+            }
+            mOut.append(text);
+        }
+        mOut.append('\n');
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+public class SiestaProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION_PACKAGE = "com.rhoadster91.android.siesta.annotation.";
+    static final String SERVICE = ANNOTATION_PACKAGE + "SiestaService";
+
+    private Messager mMessager;
+
+    // Claims the method and parameter annotations too, so javac does not look
+    // for another processor for them or warn that they went unclaimed.
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new HashSet<>();
+        types.add(SERVICE);
+        for(ServiceMethod.Verb verb : ServiceMethod.Verb.values()) {
+            types.add(ANNOTATION_PACKAGE + verb.annotation);
+        }
+        for(ServiceMethod.Kind kind : ServiceMethod.Kind.values()) {
+            types.add(ANNOTATION_PACKAGE + kind.annotation());
+        }
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        mMessager = processingEnv.getMessager();
+        TypeElement service = processingEnv.getElementUtils().getTypeElement(SERVICE);
+        if(service == null || !annotations.contains(service)) {
+            return true;
+        }
+        for(Element element : roundEnv.getElementsAnnotatedWith(service)) {
+            ServiceWriter writer = parseService(element);
+            if(writer != null) {
+                write(writer, element);
+            }
+        }
+        return true;
+    }
+
+    private ServiceWriter parseService(Element element) {
+        if(element.getKind() != ElementKind.INTERFACE) {
+            error(element, "@SiestaService can only be applied to interfaces");
+            return null;
+        }
+        TypeElement service = (TypeElement) element;
+        if(service.getModifiers().contains(Modifier.PRIVATE)) {
+            error(element, "@SiestaService interfaces must not be private");
+            return null;
+        }
+        if(!service.getTypeParameters().isEmpty()) {
+            error(element, "@SiestaService interfaces must not declare type parameters");
+            return null;
+        }
+        String baseUrl = stringValue(findAnnotation(service, SERVICE));
+        ServiceWriter writer = new ServiceWriter(processingEnv, service);
+        Set<String> classNames = new HashSet<>();
+        boolean valid = true;
+        for(ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(service))) {
+            if(!method.getModifiers().contains(Modifier.ABSTRACT) || method.getEnclosingElement().getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+            ServiceMethod serviceMethod = parseMethod(method, baseUrl);
+            if(serviceMethod == null) {
+                valid = false;
+                continue;
+            }
+            String simpleName = method.getSimpleName().toString();
+            String className = Character.toUpperCase(simpleName.charAt(0)) + simpleName.substring(1) + "Api";
+            String unique = className;
+            for(int i = 2; !classNames.add(unique); i++) {
+                unique = className + i;
+            }
+            serviceMethod.className = unique;
+            writer.addMethod(serviceMethod);
+        }
+        return valid ? writer : null;
+    }
+
+    private ServiceMethod parseMethod(ExecutableElement method, String baseUrl) {
+        if(!method.getTypeParameters().isEmpty()) {
+            error(method, "Service methods must not declare type parameters");
+            return null;
+        }
+        ServiceMethod.Verb verb = null;
+        String path = null;
+        for(ServiceMethod.Verb candidate : ServiceMethod.Verb.values()) {
+            AnnotationMirror mirror = findAnnotation(method, ANNOTATION_PACKAGE + candidate.annotation);
+            if(mirror == null) {
+                continue;
+            }
+            if(verb != null) {
+                error(method, "Service methods must have exactly one of @Get, @Post, @Put or @Delete");
+                return null;
+            }
+            verb = candidate;
+            path = stringValue(mirror);
+        }
+        if(verb == null) {
+            error(method, "Service methods must be annotated with @Get, @Post, @Put or @Delete");
+            return null;
+        }
+
+        TypeMirror returnType = method.getReturnType();
+        String expected = "com.rhoadster91.android.siesta.api." + verb.baseClass;
+        if(returnType.getKind() != TypeKind.DECLARED
+                || !((TypeElement) ((DeclaredType) returnType).asElement()).getQualifiedName().contentEquals(expected)
+                || ((DeclaredType) returnType).getTypeArguments().size() != 1
+                || ((DeclaredType) returnType).getTypeArguments().get(0).getKind() != TypeKind.DECLARED) {
+            error(method, "@" + verb.annotation + " methods must return " + verb.baseClass + "<T> with a concrete T");
+            return null;
+        }
+        TypeMirror responseType = ((DeclaredType) returnType).getTypeArguments().get(0);
+        if(!ServiceWriter.hasCodec(responseType)) {
+            error(method, "Generic response types must be List<T> or Map<String, T>, not " + responseType);
+            return null;
+        }
+
+        String url = joinUrl(baseUrl, path);
+        List<String> template;
+        try {
+            template = ServiceMethod.parseTemplate(url);
+        } catch (IllegalArgumentException e) {
+            error(method, e.getMessage());
+            return null;
+        }
+
+        ServiceMethod serviceMethod = new ServiceMethod(method, verb, url, responseType);
+        boolean valid = true;
+        for(VariableElement parameter : method.getParameters()) {
+            ServiceMethod.Parameter parsed = parseParameter(parameter, verb);
+            if(parsed == null) {
+                valid = false;
+            } else {
+                serviceMethod.parameters.add(parsed);
+            }
+        }
+        if(!valid) {
+            return null;
+        }
+
+        Set<String> placeholders = new HashSet<>();
+        for(int i = 1; i < template.size(); i += 2) {
+            placeholders.add(template.get(i));
+            if(serviceMethod.pathParameter(template.get(i)) == null) {
+                error(method, "No @Path parameter for {" + template.get(i) + "}");
+                valid = false;
+            }
+        }
+        for(ServiceMethod.Parameter parameter : serviceMethod.parametersOf(ServiceMethod.Kind.PATH)) {
+            if(!placeholders.contains(parameter.name)) {
+                error(method, "@Path(\"" + parameter.name + "\") does not appear in \"" + path + "\"");
+                valid = false;
+            }
+        }
+        return valid ? serviceMethod : null;
+    }
+
+    private ServiceMethod.Parameter parseParameter(VariableElement parameter, ServiceMethod.Verb verb) {
+        ServiceMethod.Parameter parsed = null;
+        for(ServiceMethod.Kind kind : ServiceMethod.Kind.values()) {
+            AnnotationMirror mirror = findAnnotation(parameter, ANNOTATION_PACKAGE + kind.annotation());
+            if(mirror == null) {
+                continue;
+            }
+            if(parsed != null) {
+                error(parameter, "Parameters must have exactly one of @Path, @Query, @Field or @Header");
+                return null;
+            }
+            if(kind == ServiceMethod.Kind.FIELD && !verb.hasBody()) {
+                error(parameter, "@Field can only be used on @Post and @Put methods");
+                return null;
+            }
+            parsed = new ServiceMethod.Parameter(kind, stringValue(mirror), parameter.getSimpleName().toString(), parameter.asType());
+        }
+        if(parsed == null) {
+            error(parameter, "Parameters must be annotated with @Path, @Query, @Field or @Header");
+        }
+        return parsed;
+    }
+
+    private void write(ServiceWriter writer, Element element) {
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(writer.getQualifiedName(), element);
+            Writer out = file.openWriter();
+            try {
+                out.write(writer.write());
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            error(element, "Could not write " + writer.getQualifiedName() + ": " + e.getMessage());
+        }
+    }
+
+    static String joinUrl(String baseUrl, String path) {
+        if(baseUrl.endsWith("/") && path.startsWith("/")) {
+            return baseUrl + path.substring(1);
+        }
+        if(!baseUrl.isEmpty() && !path.isEmpty() && !baseUrl.endsWith("/") && !path.startsWith("/")) {
+            return baseUrl + "/" + path;
+        }
+        return baseUrl + path;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String qualifiedName) {
+        for(AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if(type.getQualifiedName().contentEquals(qualifiedName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static String stringValue(AnnotationMirror mirror) {
+        for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            return String.valueOf(entry.getValue().getValue());
+        }
+        return "";
+    }
+
+    private void error(Element element, String message) {
+        mMessager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
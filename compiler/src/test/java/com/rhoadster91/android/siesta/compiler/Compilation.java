@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+// Runs SiestaProcessor over in-memory sources, compiles what it generated and
+// keeps the generated sources. The parts of the library that generated code
+// touches are stubbed so the compiler module still has no dependency on the
+// Android library.
+class Compilation {
+
+    private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+    private static final Pattern TYPE = Pattern.compile("(?:class|interface|enum)\\s+(\\w+)");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Just enough of the library for generated sources to compile against.
+    private static final String[] LIBRARY = {
+            "package com.rhoadster91.android.siesta.api;\n"
+                    + "import java.util.Map;\n"
+                    + "public abstract class Api {\n"
+                    + "    public abstract String getApiUrl();\n"
+                    + "    public String processGetParams(Map<String, String> params) { return null; }\n"
+                    + "    public String processPutParams(Map<String, String> params) { return null; }\n"
+                    + "    public String getApiSignature(Map<String, String> params) { return null; }\n"
+                    + "    public Map<String, String> getDefaultHeaders() { return null; }\n"
+                    + "}",
+            "package com.rhoadster91.android.siesta.json;\n"
+                    + "public interface JsonCodec<T> {}",
+            "package com.rhoadster91.android.siesta.json;\n"
+                    + "import java.util.List;\n"
+                    + "import java.util.Map;\n"
+                    + "public final class JsonCodecs {\n"
+                    + "    public static <T> JsonCodec<T> get(Class<T> type) { return null; }\n"
+                    + "    public static <E> JsonCodec<List<E>> listOf(JsonCodec<E> codec) { return null; }\n"
+                    + "    public static <V> JsonCodec<Map<String, V>> mapOf(JsonCodec<V> codec) { return null; }\n"
+                    + "}",
+            "package com.rhoadster91.android.siesta.request;\n"
+                    + "public final class Encoders {\n"
+                    + "    public static void appendQueryValue(StringBuilder builder, String value) {}\n"
+                    + "    public static void appendPathSegment(StringBuilder builder, String value) {}\n"
+                    + "    public static void appendJsonString(StringBuilder builder, String value) {}\n"
+                    + "}",
+            "package com.rhoadster91.android.siesta.http;\n"
+                    + "import com.rhoadster91.android.siesta.request.*;\n"
+                    + "public class SimpleHttpApiRequest implements GetRequest<String>, PostRequest<String>, PutRequest<String>, DeleteRequest<String> {}",
+            "package com.rhoadster91.android.siesta.http;\n"
+                    + "import com.rhoadster91.android.siesta.json.JsonCodec;\n"
+                    + "import com.rhoadster91.android.siesta.request.*;\n"
+                    + "public class JsonHttpApiRequest<T> implements GetRequest<T>, PostRequest<T>, PutRequest<T>, DeleteRequest<T> {\n"
+                    + "    public JsonHttpApiRequest(JsonCodec<T> codec) {}\n"
+                    + "}"
+    };
+
+    private static final List<String> STUBS = new ArrayList<>(Arrays.asList(LIBRARY));
+
+    static {
+        for(String annotation : new String[]{"Get", "Post", "Put", "Delete", "Path", "Query", "Field", "Header"}) {
+            STUBS.add("package com.rhoadster91.android.siesta.annotation;\n"
+                    + "public @interface " + annotation + " { String value(); }");
+        }
+        STUBS.add("package com.rhoadster91.android.siesta.annotation;\n"
+                + "public @interface SiestaService { String baseUrl(); }");
+        for(ServiceMethod.Verb verb : ServiceMethod.Verb.values()) {
+            STUBS.add("package com.rhoadster91.android.siesta.request;\n"
+                    + "public interface " + verb.request + "<T> {}");
+            STUBS.add("package com.rhoadster91.android.siesta.api;\n"
+                    + "public abstract class " + verb.baseClass + "<T> extends Api {\n"
+                    + "    public abstract com.rhoadster91.android.siesta.request." + verb.request + "<T> " + verb.factoryMethod + "();\n"
+                    + "}");
+        }
+    }
+
+    final boolean success;
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+    final Map<String, String> generated;
+
+    private Compilation(boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics, Map<String, String> generated) {
+        this.success = success;
+        this.diagnostics = diagnostics;
+        this.generated = generated;
+    }
+
+    static Compilation compile(String... sources) {
+        return compile(Collections.<String>emptyList(), sources);
+    }
+
+    static Compilation compile(List<String> options, String... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, null);
+        ForwardingJavaFileManager<StandardJavaFileManager> fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standard) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                if(kind == JavaFileObject.Kind.SOURCE) {
+                    outputs.put(className, out);
+                }
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return out;
+                    }
+
+                    // Generated sources are parsed again in the next round.
+                    @Override
+                    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                        return new String(out.toByteArray(), UTF_8);
+                    }
+                };
+            }
+        };
+
+        List<JavaFileObject> units = new ArrayList<>();
+        for(String source : STUBS) {
+            units.add(sourceFile(source));
+        }
+        for(String source : sources) {
+            units.add(sourceFile(source));
+        }
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, units);
+        task.setProcessors(Collections.singletonList(new SiestaProcessor()));
+        boolean success = task.call();
+
+        Map<String, String> generated = new LinkedHashMap<>();
+        for(Map.Entry<String, ByteArrayOutputStream> entry : outputs.entrySet()) {
+            generated.put(entry.getKey(), new String(entry.getValue().toByteArray(), UTF_8));
+        }
+        return new Compilation(success, diagnostics.getDiagnostics(), generated);
+    }
+
+    String source(String className) {
+        String source = generated.get(className);
+        if(source == null) {
+            throw new AssertionError("Nothing generated for " + className + ", generated " + generated.keySet() + ", " + messages(Diagnostic.Kind.ERROR));
+        }
+        return source;
+    }
+
+    List<String> messages(Diagnostic.Kind kind) {
+        List<String> messages = new ArrayList<>();
+        for(Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            if(diagnostic.getKind() == kind) {
+                messages.add(diagnostic.getMessage(null));
+            }
+        }
+        return messages;
+    }
+
+    private static JavaFileObject sourceFile(final String source) {
+        Matcher packageName = PACKAGE.matcher(source);
+        Matcher typeName = TYPE.matcher(source);
+        if(!typeName.find()) {
+            throw new IllegalArgumentException("No type declared in " + source);
+        }
+        String path = (packageName.find() ? packageName.group(1).replace('.', '/') + "/" : "") + typeName.group(1);
+        return new SimpleJavaFileObject(URI.create("mem:///" + path + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.compiler;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import javax.tools.Diagnostic;
+
+import static org.junit.Assert.*;
+
+public class SiestaProcessorTest {
+
+    private static final String IMPORTS = "package com.example;\n"
+            + "import com.rhoadster91.android.siesta.annotation.*;\n"
+            + "import com.rhoadster91.android.siesta.api.*;\n";
+
+    @Test
+    public void getMethodBuildsUrlFromPathAndQuery() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Users {\n"
+                + "    @Get(\"/users/{id}\") GettableApi<String> user(@Path(\"id\") String id, @Query(\"page size\") Integer pageSize, @Query(\"q\") String q);\n"
+                + "}");
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).toString(), compilation.success);
+        String source = compilation.source("com.example.SiestaUsers");
+        assertTrue(source, source.contains("public final class SiestaUsers implements com.example.Users {"));
+        assertTrue(source, source.contains("return new UserApi(id, pageSize, q);"));
+        assertTrue(source, source.contains("static final class UserApi extends com.rhoadster91.android.siesta.api.GettableApi<java.lang.String> {"));
+        assertTrue(source, source.contains("url.append(\"https://api.example.com/users/\");"));
+        assertTrue(source, source.contains("throw new IllegalArgumentException(\"@Path(\\\"id\\\") must not be null\");"));
+        assertTrue(source, source.contains("Encoders.appendPathSegment(url, id);"));
+        assertTrue(source, source.contains("url.append(separator).append(\"page+size=\");"));
+        assertTrue(source, source.contains("url.append(pageSize);"));
+        assertTrue(source, source.contains("Encoders.appendQueryValue(url, q);"));
+        assertTrue(source, source.contains("return new com.rhoadster91.android.siesta.http.SimpleHttpApiRequest();"));
+        assertFalse(source, source.contains("mBody"));
+    }
+
+    @Test
+    public void urlWithoutParametersIsAConstant() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com\")\n"
+                + "interface Status {\n"
+                + "    @Get(\"status\") GettableApi<String> status();\n"
+                + "}");
+        String source = compilation.source("com.example.SiestaStatus");
+        assertTrue(source, source.contains("mUrl = \"https://api.example.com/status\";"));
+        assertFalse(source, source.contains("StringBuilder url"));
+    }
+
+    @Test
+    public void postMethodWritesFieldsAsJsonBody() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Items {\n"
+                + "    @Post(\"items\") PostableApi<Item> create(@Field(\"name\") String name, @Field(\"count\") int count, @Header(\"X-Token\") String token);\n"
+                + "}\n"
+                + "class Item {}");
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).toString(), compilation.success);
+        String source = compilation.source("com.example.SiestaItems");
+        assertTrue(source, source.contains("CODEC = com.rhoadster91.android.siesta.json.JsonCodecs.get(com.example.Item.class);"));
+        assertTrue(source, source.contains("body.append(\"\\\"name\\\":\");"));
+        assertTrue(source, source.contains("Encoders.appendJsonString(body, name);"));
+        assertTrue(source, source.contains("body.append(count);"));
+        assertTrue(source, source.contains("mHeaders.put(\"X-Token\", token);"));
+        assertTrue(source, source.contains("public String processPutParams(Map<String, String> params) {"));
+        assertTrue(source, source.contains("return new com.rhoadster91.android.siesta.http.JsonHttpApiRequest<com.example.Item>(CODEC);"));
+    }
+
+    @Test
+    public void floatingPointFieldsMustBeFinite() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Points {\n"
+                + "    @Put(\"points\") PuttableApi<String> put(@Field(\"x\") double x, @Field(\"y\") Float y, @Query(\"z\") double z);\n"
+                + "}");
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).toString(), compilation.success);
+        String source = compilation.source("com.example.SiestaPoints");
+        assertTrue(source, source.contains("if(Double.isNaN(x) || Double.isInfinite(x)) {"));
+        assertTrue(source, source.contains("throw new IllegalArgumentException(\"@Field(\\\"x\\\") must be finite\");"));
+        assertTrue(source, source.indexOf("if(Float.isNaN(y) || Float.isInfinite(y)) {") > source.indexOf("if(y != null) {"));
+        assertFalse(source, source.contains("isNaN(z)"));
+    }
+
+    @Test
+    public void collectionResponsesUseComposedCodecs() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "import java.util.*;\n"
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Items {\n"
+                + "    @Get(\"items\") GettableApi<List<Map<String, Item>>> all();\n"
+                + "}\n"
+                + "class Item {}");
+        String source = compilation.source("com.example.SiestaItems");
+        assertTrue(source, source.contains("JsonCodecs.listOf(com.rhoadster91.android.siesta.json.JsonCodecs.mapOf(com.rhoadster91.android.siesta.json.JsonCodecs.get(com.example.Item.class)))"));
+    }
+
+    @Test
+    public void otherGenericResponsesAreAnError() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "import java.util.*;\n"
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Items {\n"
+                + "    @Get(\"items\") GettableApi<List<Collection<String>>> all();\n"
+                + "}");
+        assertFalse(compilation.success);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).toString(), compilation.messages(Diagnostic.Kind.ERROR)
+                .contains("Generic response types must be List<T> or Map<String, T>, not java.util.List<java.util.Collection<java.lang.String>>"));
+        assertTrue(compilation.generated.isEmpty());
+    }
+
+    @Test
+    public void overloadedMethodsGetDistinctClasses() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Search {\n"
+                + "    @Get(\"find\") GettableApi<String> find(@Query(\"q\") String q);\n"
+                + "    @Get(\"find\") GettableApi<String> find(@Query(\"q\") String q, @Query(\"page\") int page);\n"
+                + "}");
+        String source = compilation.source("com.example.SiestaSearch");
+        assertTrue(source, source.contains("static final class FindApi "));
+        assertTrue(source, source.contains("static final class FindApi2 "));
+    }
+
+    @Test
+    public void nestedServiceIsNamedAfterItsEnclosingTypes() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "class Outer {\n"
+                + "    @SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "    interface Inner {\n"
+                + "        @Delete(\"items/{id}\") DeletableApi<String> remove(@Path(\"id\") long id);\n"
+                + "    }\n"
+                + "}");
+        String source = compilation.source("com.example.SiestaOuter_Inner");
+        assertTrue(source, source.contains("implements com.example.Outer.Inner {"));
+        assertTrue(source, source.contains("url.append(id);"));
+        assertFalse(source, source.contains("if(id == null)"));
+    }
+
+    @Test
+    public void everyHandledAnnotationIsClaimed() throws Exception {
+        Compilation compilation = Compilation.compile(Collections.singletonList("-Xlint:processing"), IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Items {\n"
+                + "    @Get(\"items/{id}\") GettableApi<String> get(@Path(\"id\") int id, @Query(\"q\") String q, @Header(\"X-Token\") String token);\n"
+                + "    @Post(\"items\") PostableApi<String> create(@Field(\"name\") String name);\n"
+                + "    @Put(\"items\") PuttableApi<String> update(@Field(\"name\") String name);\n"
+                + "    @Delete(\"items/{id}\") DeletableApi<String> delete(@Path(\"id\") int id);\n"
+                + "}");
+        assertTrue(compilation.success);
+        assertEquals(Collections.emptyList(), compilation.messages(Diagnostic.Kind.WARNING));
+    }
+
+    @Test
+    public void missingPathParameterIsAnError() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Users {\n"
+                + "    @Get(\"users/{id}\") GettableApi<String> user();\n"
+                + "}");
+        assertFalse(compilation.success);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).contains("No @Path parameter for {id}"));
+        assertTrue(compilation.generated.isEmpty());
+    }
+
+    @Test
+    public void unusedPathParameterIsAnError() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Users {\n"
+                + "    @Get(\"users\") GettableApi<String> user(@Path(\"id\") String id);\n"
+                + "}");
+        assertFalse(compilation.success);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).contains("@Path(\"id\") does not appear in \"users\""));
+    }
+
+    @Test
+    public void fieldOnGetIsAnError() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Users {\n"
+                + "    @Get(\"users\") GettableApi<String> users(@Field(\"name\") String name);\n"
+                + "}");
+        assertFalse(compilation.success);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).contains("@Field can only be used on @Post and @Put methods"));
+    }
+
+    @Test
+    public void wrongReturnTypeIsAnError() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Users {\n"
+                + "    @Post(\"users\") GettableApi<String> create();\n"
+                + "}");
+        assertFalse(compilation.success);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).contains("@Post methods must return PostableApi<T> with a concrete T"));
+    }
+
+    @Test
+    public void serviceMustBeAnInterface() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "abstract class Users {}");
+        assertFalse(compilation.success);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).contains("@SiestaService can only be applied to interfaces"));
+    }
+
+    @Test
+    public void unannotatedParameterIsAnError() throws Exception {
+        Compilation compilation = Compilation.compile(IMPORTS
+                + "@SiestaService(baseUrl = \"https://api.example.com/\")\n"
+                + "interface Users {\n"
+                + "    @Get(\"users\") GettableApi<String> users(String name);\n"
+                + "}");
+        assertFalse(compilation.success);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).contains("Parameters must be annotated with @Path, @Query, @Field or @Header"));
+    }
+}
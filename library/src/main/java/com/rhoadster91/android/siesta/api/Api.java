@@ -24,6 +24,10 @@ import java.net.URLEncoder;
 import java.util.Map;
 
 public abstract class Api {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT = 30 * 1000;
+
     public abstract String getApiUrl();
 
     public String processGetParams(Map<String, String> params) {
@@ -61,4 +65,36 @@ public abstract class Api {
         return null;
     }
 
+    public int getConnectTimeout() {
+        return DEFAULT_CONNECT_TIMEOUT;
+    }
+
+    public int getReadTimeout() {
+        return DEFAULT_READ_TIMEOUT;
+    }
+
+    public long getTotalTimeout() {
+        return 0;
+    }
+
+    public boolean isResponseCompressionEnabled() {
+        return false;
+    }
+
+    public int getRequestCompressionThreshold() {
+        return -1;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return null;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return null;
+    }
+
+    public long getMaxStaleness() {
+        return Long.MAX_VALUE;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+// Stands in for the throwable of a request that failed with an error
+// response rather than an exception.
+public class ApiException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mResponseCode;
+    private final Object mResponse;
+
+    public ApiException(int responseCode, Object response) {
+        super("Request failed with response code " + responseCode);
+        mResponseCode = responseCode;
+        mResponse = response;
+    }
+
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    public Object getResponse() {
+        return mResponse;
+    }
+}
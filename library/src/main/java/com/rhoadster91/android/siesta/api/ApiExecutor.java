@@ -16,39 +16,52 @@
 
 package com.rhoadster91.android.siesta.api;
 
-import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
-import android.os.Messenger;
-
+import com.rhoadster91.android.siesta.api.capability.Cacheable;
 import com.rhoadster91.android.siesta.api.capability.Deletable;
 import com.rhoadster91.android.siesta.api.capability.Gettable;
+import com.rhoadster91.android.siesta.api.capability.Pageable;
 import com.rhoadster91.android.siesta.api.capability.Postable;
 import com.rhoadster91.android.siesta.api.capability.Puttable;
+import com.rhoadster91.android.siesta.cache.ResponseCache;
+import com.rhoadster91.android.siesta.metrics.MetricsRegistry;
+import com.rhoadster91.android.siesta.metrics.RequestMetrics;
+import com.rhoadster91.android.siesta.metrics.RequestTrace;
+import com.rhoadster91.android.siesta.metrics.Tracer;
 import com.rhoadster91.android.siesta.request.RESTApiRequest;
+import com.rhoadster91.android.siesta.response.ResponseTransformer;
 import com.rhoadster91.android.siesta.response.ResponseWrapper;
 
-import java.lang.ref.SoftReference;
-import java.util.ArrayList;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ApiExecutor {
 
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+
+    // Results no longer travel to the main thread as Messages and Bundles, so
+    // these are unused. They stay for source compatibility with callers that
+    // referenced them.
+    @Deprecated
     public static final int MESSAGE_API_SUCCESS = 1;
+    @Deprecated
     public static final int MESSAGE_API_FAILED = 2;
 
+    @Deprecated
     public static final String KEY_API_SIGNATURE = ":apiexecutor:key:api:signature";
+    @Deprecated
     public static final String KEY_API_RESPONSE_CODE = ":apiexecutor:key:api:response:code";
+    @Deprecated
     public static final String KEY_API_EXCEPTION = ":apiexecutor:key:api:exception";
 
-
     public interface ApiCallback<T> {
 
         void onSuccess(int responseCode, T response);
@@ -56,148 +69,741 @@ public class ApiExecutor {
 
     }
 
-    final Handler mUiHandler;
+    // Receives onSuccess(code, response, stale) instead of onSuccess(code, response).
+    public interface StaleAwareCallback<T> extends ApiCallback<T> {
+
+        void onSuccess(int responseCode, T response, boolean stale);
 
-    Map<String, List<SoftReference<ApiCallback>>> mApiBus = new HashMap<>();
-    final Object mWaitApiBus = new Object();
+    }
+
+    private static final ApiCallback<Object> PREFETCH_CALLBACK = new ApiCallback<Object>() {
+        @Override
+        public void onSuccess(int responseCode, Object response) {
+        }
+
+        @Override
+        public void onFailure(int responseCode, Object response, Throwable t) {
+        }
+    };
+
+    // Prefetching stops once the heap is this full, whatever the policy says.
+    private static final float PREFETCH_MAX_HEAP_USAGE = 0.75f;
+
+    final CallbackBus mApiBus = new CallbackBus();
 
     final ExecutorService mExecutorService;
+    final RequestScheduler mScheduler;
+    private final boolean mOwnsExecutorService;
+
+    volatile Executor mCallbackExecutor = CallbackExecutors.mainThread();
+
+    ResponseCache mResponseCache;
+
+    volatile MetricsRegistry mMetricsRegistry;
+    volatile Tracer mTracer;
+    volatile PrefetchPolicy mPrefetchPolicy;
+
+    private final ConcurrentHashMap<String, CircuitBreaker> mCircuitBreakers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ApiFuture<?>> mFutures = new ConcurrentHashMap<>();
+    private volatile int mCircuitBreakerThreshold;
+    private volatile long mCircuitBreakerOpenDuration;
 
     public ApiExecutor(int threadPoolSize) {
-        mExecutorService = Executors.newFixedThreadPool(threadPoolSize);
-        mUiHandler = initUiHandler();
+        this(RequestExecutors.adaptive(threadPoolSize), threadPoolSize, true);
     }
 
     public ApiExecutor() {
-        mExecutorService = Executors.newCachedThreadPool();
-        mUiHandler = initUiHandler();
-    }
-
-    private Handler initUiHandler() {
-        return new Handler(Looper.getMainLooper(), new Handler.Callback() {
-            @Override
-            public boolean handleMessage(Message msg) {
-                Bundle bundle = msg.getData();
-                String signature;
-                ResponseWrapper response;
-                int responseCode;
-                switch (msg.what) {
-
-                    case MESSAGE_API_FAILED:
-                        signature = bundle.getString(KEY_API_SIGNATURE);
-                        response = (ResponseWrapper) msg.obj;
-                        responseCode = bundle.getInt(KEY_API_RESPONSE_CODE);
-                        Throwable t = (Throwable) bundle.getSerializable(KEY_API_EXCEPTION);
-                        notifyListeners(signature, false, response, responseCode, t);
-                        break;
-
-                    case MESSAGE_API_SUCCESS:
-                        signature = bundle.getString(KEY_API_SIGNATURE);
-                        response = (ResponseWrapper) msg.obj;
-                        responseCode = bundle.getInt(KEY_API_RESPONSE_CODE);
-                        notifyListeners(signature, true, response, responseCode, null);
-                        break;
-                }
-                return false;
+        this(RequestExecutors.adaptive(DEFAULT_MAX_REQUESTS), DEFAULT_MAX_REQUESTS, true);
+    }
+
+    // Runs requests on the given executor, at most maxRequests at a time. The
+    // executor must accept that many tasks without rejecting; requests it
+    // rejects anyway fail through onFailure.
+    public ApiExecutor(ExecutorService executorService, int maxRequests) {
+        this(executorService, maxRequests, false);
+    }
+
+    private ApiExecutor(ExecutorService executorService, int maxRequests, boolean ownsExecutorService) {
+        if(maxRequests <= 0) {
+            throw new IllegalArgumentException("maxRequests must be positive");
+        }
+        mExecutorService = executorService;
+        mOwnsExecutorService = ownsExecutorService;
+        mScheduler = new RequestScheduler(mExecutorService, maxRequests);
+    }
+
+    // Fails every queued request and pending retry through onFailure and
+    // stops the scheduler's timer thread. Requests already running finish,
+    // and requests made afterwards fail straight away. An executor passed to
+    // the constructor is left running; the caller owns it.
+    public void shutdown() {
+        mScheduler.shutdown();
+        if(mOwnsExecutorService) {
+            mExecutorService.shutdown();
+        }
+    }
+
+    public boolean isShutdown() {
+        return mScheduler.isShutdown();
+    }
+
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        mCallbackExecutor = callbackExecutor != null ? callbackExecutor : CallbackExecutors.mainThread();
+    }
+
+    public Executor getCallbackExecutor() {
+        return mCallbackExecutor;
+    }
+
+    public void setResponseCache(ResponseCache responseCache) {
+        mResponseCache = responseCache;
+    }
+
+    public ResponseCache getResponseCache() {
+        return mResponseCache;
+    }
+
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        mMetricsRegistry = metricsRegistry;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return mMetricsRegistry;
+    }
+
+    public void setTracer(Tracer tracer) {
+        mTracer = tracer;
+    }
+
+    public Tracer getTracer() {
+        return mTracer;
+    }
+
+    public void setPrefetchPolicy(PrefetchPolicy prefetchPolicy) {
+        mPrefetchPolicy = prefetchPolicy;
+    }
+
+    public PrefetchPolicy getPrefetchPolicy() {
+        return mPrefetchPolicy;
+    }
+
+    public void enableCircuitBreakers(int failureThreshold, long openDuration) {
+        mCircuitBreakers.clear();
+        mCircuitBreakerOpenDuration = openDuration;
+        mCircuitBreakerThreshold = failureThreshold;
+    }
+
+    public void disableCircuitBreakers() {
+        mCircuitBreakerThreshold = 0;
+        mCircuitBreakers.clear();
+    }
+
+    public CircuitBreaker getCircuitBreaker(String host) {
+        return mCircuitBreakers.get(host);
+    }
+
+    CircuitBreaker obtainCircuitBreaker(String host) {
+        int threshold = mCircuitBreakerThreshold;
+        if(threshold <= 0 || host == null) {
+            return null;
+        }
+        CircuitBreaker circuitBreaker = mCircuitBreakers.get(host);
+        if(circuitBreaker == null) {
+            CircuitBreaker created = new CircuitBreaker(host, threshold, mCircuitBreakerOpenDuration);
+            circuitBreaker = mCircuitBreakers.putIfAbsent(host, created);
+            if(circuitBreaker == null) {
+                circuitBreaker = created;
             }
-        });
+        }
+        return circuitBreaker;
+    }
+
+    void scheduleRetry(ApiTask apiTask, long delay) {
+        apiTask.onQueued(delay);
+        mScheduler.enqueueDelayed(apiTask, apiTask.getPriority(), apiTask.getHost(), apiTask.getRateLimiter(), delay);
+    }
+
+    // There is no per-host limit until this is called; requests to a single
+    // host may take every one of the executor's maxRequests slots.
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if(maxRequestsPerHost <= 0) {
+            throw new IllegalArgumentException("maxRequestsPerHost must be positive");
+        }
+        mScheduler.setMaxRunningPerHost(maxRequestsPerHost);
     }
 
-    public <T, A extends Api & Gettable<T>> void get(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params) {
-        submitApiTask(api, apiCallback, headers, params, RESTApiRequest.METHOD_GET, new ResponseWrapper<T>());
+    public int getRunningRequestCount(String host) {
+        return mScheduler.runningCount(host);
     }
 
-    public <T, A extends Api & Gettable<T>> void get(A api, ApiCallback<T> apiCallback, Map<String, String> headers, String... params) {
-        get(api, apiCallback, headers, toMap(params));
+    public int getQueuedRequestCount() {
+        return mScheduler.queuedCount();
     }
 
-    public <T, A extends Api & Puttable<T>> void put(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params) {
-        submitApiTask(api, apiCallback, headers, params, RESTApiRequest.METHOD_PUT, new ResponseWrapper<T>());
+    public int getRunningRequestCount() {
+        return mScheduler.runningCount();
     }
 
-    public <T, A extends Api & Puttable<T>> void put(A api, ApiCallback<T> apiCallback, Map<String, String> headers, String... params) {
-        put(api, apiCallback, headers, toMap(params));
+    // Bounds the number of requests waiting to run. Retries of requests that
+    // were already admitted are not counted against the bound, and prefetches
+    // and stale-while-revalidate refreshes are dropped rather than blocked.
+    public void setMaxQueuedRequests(int maxQueuedRequests, OverflowPolicy overflowPolicy) {
+        if(maxQueuedRequests <= 0) {
+            throw new IllegalArgumentException("maxQueuedRequests must be positive");
+        }
+        mScheduler.setMaxQueued(maxQueuedRequests, overflowPolicy != null ? overflowPolicy : OverflowPolicy.FAIL_FAST);
+    }
+
+    public void clearMaxQueuedRequests() {
+        mScheduler.setMaxQueued(Integer.MAX_VALUE, OverflowPolicy.FAIL_FAST);
     }
 
-    public <T, A extends Api & Deletable<T>> void delete(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params) {
-        submitApiTask(api, apiCallback, headers, params, RESTApiRequest.METHOD_DELETE, new ResponseWrapper<T>());
+    public void setMaxBackgroundRequests(int maxBackgroundRequests) {
+        mScheduler.setMaxBackgroundRunning(maxBackgroundRequests);
     }
 
-    public <T, A extends Api & Deletable<T>> void delete(A api, ApiCallback<T> apiCallback, Map<String, String> headers, String... params) {
-        delete(api, apiCallback, headers, toMap(params));
+    public void setPriorityAgingInterval(long agingInterval) {
+        mScheduler.setAgingInterval(agingInterval);
     }
 
-    public <T, A extends Api & Postable<T>> void post(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params) {
-        submitApiTask(api, apiCallback, headers, params, RESTApiRequest.METHOD_POST, new ResponseWrapper<T>());
+    public <T, A extends Api & Gettable<T>> RequestHandle get(A api, ApiCallback<T> apiCallback) {
+        return get(api, apiCallback, null, Collections.<String, String>emptyMap());
     }
 
-    public <T, A extends Api & Postable<T>> void post(A api, ApiCallback<T> apiCallback, Map<String, String> headers, String... params) {
-        post(api, apiCallback, headers, toMap(params));
+    public <T, A extends Api & Gettable<T>> RequestHandle get(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params) {
+        return get(api, apiCallback, headers, params, Priority.NORMAL);
     }
 
-    private void submitApiTask(Api api, ApiCallback apiCallback, Map<String, String> headers, Map<String, String> params, int method, ResponseWrapper responseWrapper) {
-        boolean needRun = listenForCallback(api.getApiSignature(params), apiCallback);
-        if(needRun) {
-            ApiTask apiTask = new ApiTask(api, responseWrapper, method, new Messenger(mUiHandler));
-            apiTask.withParams(params).withHeaders(headers);
-            mExecutorService.submit(apiTask);
+    public <T, A extends Api & Gettable<T>> RequestHandle get(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority) {
+        return get(api, apiCallback, headers, params, priority, null);
+    }
+
+    public <T, A extends Api & Gettable<T>> RequestHandle get(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority, Executor callbackExecutor) {
+        return get(api, apiCallback, headers, params, priority, callbackExecutor, DeliveryMode.DEFAULT);
+    }
+
+    public <T, A extends Api & Gettable<T>> RequestHandle get(A api, ApiCallback<T> apiCallback, DeliveryMode deliveryMode) {
+        return get(api, apiCallback, null, Collections.<String, String>emptyMap(), Priority.NORMAL, null, deliveryMode);
+    }
+
+    public <T, A extends Api & Gettable<T>> RequestHandle get(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority, Executor callbackExecutor, DeliveryMode deliveryMode) {
+        String signature = api.getApiSignature(params);
+        ResponseCache responseCache = mResponseCache;
+        if(responseCache == null || !(api instanceof Cacheable)) {
+            return submitApiTask(api, signature, apiCallback, headers, params, RESTApiRequest.METHOD_GET, new ResponseWrapper<T>(), null, priority, callbackExecutor);
+        }
+        boolean revalidate = deliveryMode == DeliveryMode.STALE_WHILE_REVALIDATE;
+        ResponseCache.Entry entry = responseCache.get(signature, revalidate ? api.getMaxStaleness() : 0);
+        if(entry == null) {
+            return submitApiTask(api, signature, apiCallback, headers, params, RESTApiRequest.METHOD_GET, new ResponseWrapper<T>(), responseCache, priority, callbackExecutor);
+        }
+        CallbackBus.Subscriber subscriber = new CallbackBus.Subscriber(apiCallback, callbackExecutor != null ? callbackExecutor : mCallbackExecutor);
+        if(!revalidate || !entry.isStale()) {
+            deliverCachedResponse(subscriber, entry, false, null, priority);
+            return new RequestHandle(this, signature, subscriber);
         }
+        subscriber.staleEntry = entry;
+        Revalidation revalidation = new Revalidation(api, signature, subscriber, headers, params, responseCache, priority);
+        deliverCachedResponse(subscriber, entry, true, revalidation, priority);
+        return new RequestHandle(this, signature, subscriber);
     }
 
-    private boolean listenForCallback(String signature, ApiCallback apiCallback) {
-        synchronized (mWaitApiBus) {
-            List<SoftReference<ApiCallback>> registeredCallbacks = mApiBus.get(signature);
-            try {
-                if (registeredCallbacks == null) {
-                    registeredCallbacks = new ArrayList<>();
-                    registeredCallbacks.add(new SoftReference<>(apiCallback));
-                    mApiBus.put(signature, registeredCallbacks);
-                    return true;
+    public <T, A extends Api & Gettable<T>> RequestHandle get(A api, ApiCallback<T> apiCallback, Map<String, String> headers, String... params) {
+        return get(api, apiCallback, headers, toMap(params));
+    }
+
+    public <T, A extends Api & Gettable<T>> RequestHandle get(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Priority priority, String... params) {
+        return get(api, apiCallback, headers, toMap(params), priority);
+    }
+
+    public <T, A extends Api & Gettable<T>> ApiFuture<T> getAsync(A api, Map<String, String> params) {
+        return getAsync(api, null, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Gettable<T>> ApiFuture<T> getAsync(A api, Map<String, String> headers, Map<String, String> params) {
+        return getAsync(api, headers, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Gettable<T>> ApiFuture<T> getAsync(A api, Map<String, String> headers, Map<String, String> params, Priority priority) {
+        String signature = api.getApiSignature(params);
+        ApiFuture<T> future = obtainFuture(RESTApiRequest.METHOD_GET, signature);
+        if(future.markSubmitted()) {
+            future.setRequestHandle(get(api, future.asCallback(), headers, params, priority, CallbackExecutors.immediate()));
+        } else {
+            upgrade(signature, priority);
+        }
+        return future;
+    }
+
+    public <T, A extends Api & Gettable<T> & Pageable<T>> Pager<T> page(A api, Map<String, String> params, Pager.PageListener<T> listener) {
+        return page(api, null, params, Pager.DEFAULT_LOOKAHEAD, Priority.NORMAL, null, listener);
+    }
+
+    public <T, A extends Api & Gettable<T> & Pageable<T>> Pager<T> page(A api, Map<String, String> headers, Map<String, String> params, int lookahead, Pager.PageListener<T> listener) {
+        return page(api, headers, params, lookahead, Priority.NORMAL, null, listener);
+    }
+
+    // Starts fetching the first lookahead pages right away; call request(n)
+    // on the returned pager to have them delivered.
+    public <T, A extends Api & Gettable<T> & Pageable<T>> Pager<T> page(A api, Map<String, String> headers, Map<String, String> params, int lookahead, Priority priority, Executor callbackExecutor, Pager.PageListener<T> listener) {
+        Pager<T> pager = new Pager<>(this, api, headers, params, lookahead, priority, callbackExecutor != null ? callbackExecutor : mCallbackExecutor, listener);
+        pager.fill();
+        return pager;
+    }
+
+    public <T, A extends Api & Gettable<T> & Pageable<T>> ApiPublisher<T> pagePublisher(A api, Map<String, String> params) {
+        return pagePublisher(api, null, params, Pager.DEFAULT_LOOKAHEAD, Priority.NORMAL, null);
+    }
+
+    public <T, A extends Api & Gettable<T> & Pageable<T>> ApiPublisher<T> pagePublisher(A api, Map<String, String> headers, Map<String, String> params, int lookahead) {
+        return pagePublisher(api, headers, params, lookahead, Priority.NORMAL, null);
+    }
+
+    public <T, A extends Api & Gettable<T> & Pageable<T>> ApiPublisher<T> pagePublisher(A api, Map<String, String> headers, Map<String, String> params, int lookahead, Priority priority, Executor callbackExecutor) {
+        if(lookahead < 0) {
+            throw new IllegalArgumentException("lookahead must not be negative");
+        }
+        return new PagePublisher<>(this, api, headers, params, lookahead, priority, callbackExecutor != null ? callbackExecutor : mCallbackExecutor);
+    }
+
+    public <T, A extends Api & Gettable<T>> RequestHandle prefetch(A api, Map<String, String> params) {
+        return prefetch(api, null, params);
+    }
+
+    // Warms the response cache at PREFETCH priority. Returns null when there
+    // is nothing to do: no cache, an Api that isn't Cacheable, a fresh entry
+    // already cached, or the prefetch policy says no. A get for the same
+    // signature joins the prefetch and raises it to its own priority.
+    public <T, A extends Api & Gettable<T>> RequestHandle prefetch(A api, Map<String, String> headers, Map<String, String> params) {
+        ResponseCache responseCache = mResponseCache;
+        if(responseCache == null || !(api instanceof Cacheable) || !isPrefetchAllowed()) {
+            return null;
+        }
+        String signature = api.getApiSignature(params);
+        if(responseCache.contains(signature)) {
+            return null;
+        }
+        return submitApiTask(api, signature, PREFETCH_CALLBACK, headers, params, RESTApiRequest.METHOD_GET, new ResponseWrapper<T>(), responseCache, Priority.PREFETCH, CallbackExecutors.immediate());
+    }
+
+    public void cancelPrefetches() {
+        for(Runnable task : mScheduler.queuedTasks(Priority.PREFETCH)) {
+            ApiTask apiTask = (ApiTask) task;
+            if(apiTask.isPrefetch() && abandonPrefetch(apiTask)) {
+                if(mScheduler.dequeue(apiTask)) {
+                    apiTask.onDequeued();
                 } else {
-                    registeredCallbacks.add(new SoftReference<>(apiCallback));
-                    return false;
+                    apiTask.cancel();
                 }
-            } finally {
-                trimBus();
             }
         }
     }
 
+    boolean isPrefetchAllowed() {
+        Runtime runtime = Runtime.getRuntime();
+        if(runtime.totalMemory() - runtime.freeMemory() > runtime.maxMemory() * PREFETCH_MAX_HEAP_USAGE) {
+            return false;
+        }
+        PrefetchPolicy prefetchPolicy = mPrefetchPolicy;
+        return prefetchPolicy == null || prefetchPolicy.isPrefetchAllowed();
+    }
+
+    // Drops the prefetch's own subscriber. Returns true if nobody else had
+    // joined, in which case the request is no longer needed.
+    boolean abandonPrefetch(ApiTask apiTask) {
+        CallbackBus.Subscriber subscriber = apiTask.getPrefetchSubscriber();
+        subscriber.cancelled = true;
+        return mApiBus.unsubscribe(apiTask.getSignature(), subscriber) != null;
+    }
+
+    public <T, A extends Api & Puttable<T>> RequestHandle put(A api, ApiCallback<T> apiCallback) {
+        return put(api, apiCallback, null, Collections.<String, String>emptyMap());
+    }
+
+    public <T, A extends Api & Puttable<T>> RequestHandle put(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params) {
+        return put(api, apiCallback, headers, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Puttable<T>> RequestHandle put(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority) {
+        return put(api, apiCallback, headers, params, priority, null);
+    }
+
+    public <T, A extends Api & Puttable<T>> RequestHandle put(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority, Executor callbackExecutor) {
+        return submitApiTask(api, api.getApiSignature(params), apiCallback, headers, params, RESTApiRequest.METHOD_PUT, new ResponseWrapper<T>(), null, priority, callbackExecutor);
+    }
+
+    public <T, A extends Api & Puttable<T>> RequestHandle put(A api, ApiCallback<T> apiCallback, Map<String, String> headers, String... params) {
+        return put(api, apiCallback, headers, toMap(params));
+    }
+
+    public <T, A extends Api & Puttable<T>> RequestHandle put(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Priority priority, String... params) {
+        return put(api, apiCallback, headers, toMap(params), priority);
+    }
+
+    public <T, A extends Api & Puttable<T>> ApiFuture<T> putAsync(A api, Map<String, String> params) {
+        return putAsync(api, null, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Puttable<T>> ApiFuture<T> putAsync(A api, Map<String, String> headers, Map<String, String> params) {
+        return putAsync(api, headers, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Puttable<T>> ApiFuture<T> putAsync(A api, Map<String, String> headers, Map<String, String> params, Priority priority) {
+        String signature = api.getApiSignature(params);
+        ApiFuture<T> future = obtainFuture(RESTApiRequest.METHOD_PUT, signature);
+        if(future.markSubmitted()) {
+            future.setRequestHandle(put(api, future.asCallback(), headers, params, priority, CallbackExecutors.immediate()));
+        } else {
+            upgrade(signature, priority);
+        }
+        return future;
+    }
+
+    public <T, A extends Api & Deletable<T>> RequestHandle delete(A api, ApiCallback<T> apiCallback) {
+        return delete(api, apiCallback, null, Collections.<String, String>emptyMap());
+    }
+
+    public <T, A extends Api & Deletable<T>> RequestHandle delete(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params) {
+        return delete(api, apiCallback, headers, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Deletable<T>> RequestHandle delete(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority) {
+        return delete(api, apiCallback, headers, params, priority, null);
+    }
+
+    public <T, A extends Api & Deletable<T>> RequestHandle delete(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority, Executor callbackExecutor) {
+        return submitApiTask(api, api.getApiSignature(params), apiCallback, headers, params, RESTApiRequest.METHOD_DELETE, new ResponseWrapper<T>(), null, priority, callbackExecutor);
+    }
+
+    public <T, A extends Api & Deletable<T>> RequestHandle delete(A api, ApiCallback<T> apiCallback, Map<String, String> headers, String... params) {
+        return delete(api, apiCallback, headers, toMap(params));
+    }
+
+    public <T, A extends Api & Deletable<T>> RequestHandle delete(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Priority priority, String... params) {
+        return delete(api, apiCallback, headers, toMap(params), priority);
+    }
+
+    public <T, A extends Api & Deletable<T>> ApiFuture<T> deleteAsync(A api, Map<String, String> params) {
+        return deleteAsync(api, null, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Deletable<T>> ApiFuture<T> deleteAsync(A api, Map<String, String> headers, Map<String, String> params) {
+        return deleteAsync(api, headers, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Deletable<T>> ApiFuture<T> deleteAsync(A api, Map<String, String> headers, Map<String, String> params, Priority priority) {
+        String signature = api.getApiSignature(params);
+        ApiFuture<T> future = obtainFuture(RESTApiRequest.METHOD_DELETE, signature);
+        if(future.markSubmitted()) {
+            future.setRequestHandle(delete(api, future.asCallback(), headers, params, priority, CallbackExecutors.immediate()));
+        } else {
+            upgrade(signature, priority);
+        }
+        return future;
+    }
+
+    public <T, A extends Api & Postable<T>> RequestHandle post(A api, ApiCallback<T> apiCallback) {
+        return post(api, apiCallback, null, Collections.<String, String>emptyMap());
+    }
+
+    public <T, A extends Api & Postable<T>> RequestHandle post(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params) {
+        return post(api, apiCallback, headers, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Postable<T>> RequestHandle post(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority) {
+        return post(api, apiCallback, headers, params, priority, null);
+    }
+
+    public <T, A extends Api & Postable<T>> RequestHandle post(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Map<String, String> params, Priority priority, Executor callbackExecutor) {
+        return submitApiTask(api, api.getApiSignature(params), apiCallback, headers, params, RESTApiRequest.METHOD_POST, new ResponseWrapper<T>(), null, priority, callbackExecutor);
+    }
+
+    public <T, A extends Api & Postable<T>> RequestHandle post(A api, ApiCallback<T> apiCallback, Map<String, String> headers, String... params) {
+        return post(api, apiCallback, headers, toMap(params));
+    }
+
+    public <T, A extends Api & Postable<T>> RequestHandle post(A api, ApiCallback<T> apiCallback, Map<String, String> headers, Priority priority, String... params) {
+        return post(api, apiCallback, headers, toMap(params), priority);
+    }
+
+    public <T, A extends Api & Postable<T>> ApiFuture<T> postAsync(A api, Map<String, String> params) {
+        return postAsync(api, null, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Postable<T>> ApiFuture<T> postAsync(A api, Map<String, String> headers, Map<String, String> params) {
+        return postAsync(api, headers, params, Priority.NORMAL);
+    }
+
+    public <T, A extends Api & Postable<T>> ApiFuture<T> postAsync(A api, Map<String, String> headers, Map<String, String> params, Priority priority) {
+        String signature = api.getApiSignature(params);
+        ApiFuture<T> future = obtainFuture(RESTApiRequest.METHOD_POST, signature);
+        if(future.markSubmitted()) {
+            future.setRequestHandle(post(api, future.asCallback(), headers, params, priority, CallbackExecutors.immediate()));
+        } else {
+            upgrade(signature, priority);
+        }
+        return future;
+    }
+
+    // Callers asking for a request that is already in flight get its future
+    // instead of adding another subscriber. A future that is done is replaced,
+    // so a later call makes a fresh request.
     @SuppressWarnings("unchecked")
-    private void notifyListeners(String signature, boolean success, ResponseWrapper response, int responseCode, Throwable t) {
-        synchronized (mWaitApiBus) {
-            List<SoftReference<ApiCallback>> callbacks = mApiBus.get(signature);
-            if(callbacks == null) {
-                return;
-            }
-            SoftReference<ApiCallback> callbackRef;
-            for(Iterator<SoftReference<ApiCallback>> iterator = callbacks.iterator(); iterator.hasNext(); ) {
-                callbackRef = iterator.next();
-                ApiCallback callback = callbackRef.get();
-                if(callback!=null) {
-                    if (success) {
-                        callback.onSuccess(responseCode, response.getResponse());
-                    } else {
-                        callback.onFailure(responseCode, response.getResponse(), t);
+    private <T> ApiFuture<T> obtainFuture(int method, String signature) {
+        final String key = method + " " + signature;
+        while (true) {
+            ApiFuture<?> existing = mFutures.get(key);
+            if(existing != null && !existing.isDone()) {
+                return (ApiFuture<T>) existing;
+            }
+            final ApiFuture<T> created = new ApiFuture<>(mCallbackExecutor);
+            if(existing == null ? mFutures.putIfAbsent(key, created) == null : mFutures.replace(key, existing, created)) {
+                created.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        mFutures.remove(key, created);
                     }
-                } else {
-                    iterator.remove();
+                });
+                return created;
+            }
+        }
+    }
+
+    RequestHandle submitApiTask(Api api, String signature, ApiCallback apiCallback, Map<String, String> headers, Map<String, String> params, int method, ResponseWrapper responseWrapper, ResponseCache responseCache, Priority priority, Executor callbackExecutor) {
+        CallbackBus.Subscriber subscriber = new CallbackBus.Subscriber(apiCallback, callbackExecutor != null ? callbackExecutor : mCallbackExecutor);
+        submitApiTask(api, signature, subscriber, headers, params, method, responseWrapper, responseCache, priority, true);
+        return new RequestHandle(this, signature, subscriber);
+    }
+
+    private void submitApiTask(Api api, String signature, CallbackBus.Subscriber subscriber, Map<String, String> headers, Map<String, String> params, int method, ResponseWrapper responseWrapper, ResponseCache responseCache, Priority priority, boolean mayBlock) {
+        CallbackBus.Subscription subscription = mApiBus.subscribe(signature, subscriber);
+        MetricsRegistry metricsRegistry = mMetricsRegistry;
+        if(subscription != null) {
+            ApiTask apiTask = new ApiTask(this, api, subscription, responseWrapper, method);
+            apiTask.withParams(params).withHeaders(headers).withCache(responseCache).withPriority(priority).withMetrics(metricsRegistry);
+            Tracer tracer = mTracer;
+            if(tracer != null) {
+                apiTask.withTrace(tracer.newTrace(api.getClass(), method, signature));
+            }
+            if(subscriber.callbackRef.get() == PREFETCH_CALLBACK) {
+                apiTask.withPrefetchSubscriber(subscriber);
+                mayBlock = false;
+            }
+            subscription.apiTask = apiTask;
+            if(!subscription.isClosed()) {
+                apiTask.onQueued(0);
+                if(!mScheduler.offer(apiTask, priority, apiTask.getHost(), apiTask.getRateLimiter(), mayBlock)) {
+                    apiTask.reject(new RejectedExecutionException(mScheduler.isShutdown() ? "ApiExecutor is shut down" : "Request queue is full"));
                 }
             }
-            mApiBus.remove(signature);
+        } else {
+            upgrade(signature, priority);
+            if(metricsRegistry != null) {
+                metricsRegistry.getMetrics(api.getClass(), method).recordDedupHit();
+            }
         }
+    }
+
+    // A request that joins a queued one with a lower priority, such as a get
+    // joining a prefetch, pulls it forward instead of waiting behind it.
+    private void upgrade(String signature, Priority priority) {
+        CallbackBus.Subscription existing = mApiBus.get(signature);
+        ApiTask apiTask = existing != null ? existing.apiTask : null;
+        if(apiTask != null && priority.ordinal() < apiTask.getPriority().ordinal()) {
+            apiTask.withPriority(priority);
+            mScheduler.reprioritize(apiTask, priority);
+        }
+    }
 
+    void cancel(String signature, CallbackBus.Subscriber subscriber) {
+        CallbackBus.Subscription abandoned = mApiBus.unsubscribe(signature, subscriber);
+        ApiTask apiTask = abandoned != null ? abandoned.apiTask : null;
+        if(apiTask == null) {
+            return;
+        }
+        if(mScheduler.dequeue(apiTask)) {
+            apiTask.onDequeued();
+        } else {
+            apiTask.cancel();
+        }
+    }
+
+    private class Revalidation implements Runnable {
+
+        private final Api mApi;
+        private final String mSignature;
+        private final CallbackBus.Subscriber mSubscriber;
+        private final Map<String, String> mHeaders;
+        private final Map<String, String> mParams;
+        private final ResponseCache mResponseCache;
+        private final Priority mPriority;
+
+        Revalidation(Api api, String signature, CallbackBus.Subscriber subscriber, Map<String, String> headers, Map<String, String> params, ResponseCache responseCache, Priority priority) {
+            mApi = api;
+            mSignature = signature;
+            mSubscriber = subscriber;
+            mHeaders = headers;
+            mParams = params;
+            mResponseCache = responseCache;
+            mPriority = priority;
+        }
+
+        @Override
+        public void run() {
+            if(!mSubscriber.cancelled) {
+                submitApiTask(mApi, mSignature, mSubscriber, mHeaders, mParams, RESTApiRequest.METHOD_GET, new ResponseWrapper(), mResponseCache, mPriority, false);
+            }
+        }
+    }
+
+    // Transforms a cached response off the caller's thread. Goes through the
+    // scheduler like any request, so an executor that turns it away fails the
+    // subscriber instead of throwing at the caller.
+    private class CachedDelivery implements Runnable, RequestScheduler.Rejectable {
+
+        private final CallbackBus.Subscriber mSubscriber;
+        private final ResponseCache.Entry mEntry;
+        private final boolean mStale;
+        private final Runnable mRevalidation;
+
+        CachedDelivery(CallbackBus.Subscriber subscriber, ResponseCache.Entry entry, boolean stale, Runnable revalidation) {
+            mSubscriber = subscriber;
+            mEntry = entry;
+            mStale = stale;
+            mRevalidation = revalidation;
+        }
+
+        @Override
+        public void run() {
+            dispatch(new CallbackBus.Subscriber[] {mSubscriber}, true, mStale, mEntry.getCode(), mEntry.getResponse(), null, null, null, null);
+            if(mRevalidation != null) {
+                mRevalidation.run();
+            }
+        }
+
+        @Override
+        public void reject(Throwable throwable) {
+            dispatch(new CallbackBus.Subscriber[] {mSubscriber}, false, false, 0, null, throwable, null, null, null);
+        }
+    }
+
+    // The revalidation is only submitted after the cached response has been
+    // handed to the callback executor so the two are delivered in order.
+    private void deliverCachedResponse(CallbackBus.Subscriber subscriber, ResponseCache.Entry entry, boolean stale, Runnable revalidation, Priority priority) {
+        ApiCallback apiCallback = subscriber.callbackRef.get();
+        if(apiCallback instanceof ResponseTransformer) {
+            mScheduler.enqueue(new CachedDelivery(subscriber, entry, stale, revalidation), priority);
+            return;
+        }
+        if(apiCallback != null) {
+            dispatch(new CallbackBus.Subscriber[] {subscriber}, true, stale, entry.getCode(), entry.getResponse(), null, null, null, null);
+        }
+        if(revalidation != null) {
+            revalidation.run();
+        }
     }
 
-    private void trimBus() {
-        synchronized (mWaitApiBus) {
-            Iterator<Map.Entry<String, List<SoftReference<ApiCallback>>>> iterator = mApiBus.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<String, List<SoftReference<ApiCallback>>> entry = iterator.next();
-                if (entry.getValue() == null || entry.getValue().size() == 0) {
-                    iterator.remove();
+    void complete(CallbackBus.Subscription subscription, boolean success, ResponseWrapper response, RequestMetrics metrics) {
+        CallbackBus.Subscriber[] subscribers = mApiBus.complete(subscription);
+        if(subscribers != null) {
+            dispatch(subscribers, success, false, response.getCode(), response.getResponse(), response.getThrowable(), metrics, response.getTrace(), validatorOf(response));
+        }
+    }
+
+    private static class Transformed {
+        Object response;
+        Throwable throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(CallbackBus.Subscriber[] subscribers, boolean success, boolean stale, int responseCode, Object response, Throwable t, RequestMetrics metrics, RequestTrace trace, String validator) {
+        long completedAt = metrics != null ? System.nanoTime() : 0;
+        Map<Object, Transformed> transformedByKey = null;
+        for(CallbackBus.Subscriber subscriber : subscribers) {
+            ApiCallback callback = subscriber.callbackRef.get();
+            if(callback == null || subscriber.cancelled) {
+                continue;
+            }
+            ResponseCache.Entry staleEntry = subscriber.staleEntry;
+            if(staleEntry != null && !stale && !isChanged(staleEntry, success, responseCode, response, validator)) {
+                continue;
+            }
+            if(!(callback instanceof ResponseTransformer)) {
+                subscriber.executor.execute(ApiResult.obtain(subscriber, callback, success, false, stale, responseCode, response, t, metrics, completedAt, trace));
+                continue;
+            }
+            ResponseTransformer transformer = (ResponseTransformer) callback;
+            if(transformedByKey == null) {
+                transformedByKey = new HashMap<>();
+            }
+            Transformed transformed = transformedByKey.get(transformer.getTransformKey());
+            if(transformed == null) {
+                transformed = new Transformed();
+                try {
+                    transformed.response = transformer.transform(response);
+                } catch (Throwable throwable) {
+                    transformed.throwable = throwable;
                 }
+                transformedByKey.put(transformer.getTransformKey(), transformed);
             }
+            ApiResult result;
+            if(transformed.throwable == null) {
+                result = ApiResult.obtain(subscriber, callback, success, true, stale, responseCode, transformed.response, t, metrics, completedAt, trace);
+            } else if(success) {
+                result = ApiResult.obtain(subscriber, callback, false, true, false, responseCode, null, transformed.throwable, metrics, completedAt, trace);
+            } else {
+                result = ApiResult.obtain(subscriber, callback, false, true, false, responseCode, null, new Throwable(transformed.throwable.getMessage(), t), metrics, completedAt, trace);
+            }
+            subscriber.executor.execute(result);
+        }
+    }
+
+    // A failed revalidation is not delivered; the subscriber keeps the stale
+    // response it already has. Without validators on both sides only value
+    // types and byte arrays are compared by content; most response objects
+    // do not override equals, so anything else counts as changed.
+    static boolean isChanged(ResponseCache.Entry staleEntry, boolean success, int responseCode, Object response, String validator) {
+        if(!success) {
+            return false;
+        }
+        if(responseCode != staleEntry.getCode()) {
+            return true;
+        }
+        if(validator != null && staleEntry.getValidator() != null) {
+            return !validator.equals(staleEntry.getValidator());
+        }
+        Object staleResponse = staleEntry.getResponse();
+        if(staleResponse == response) {
+            return false;
+        }
+        if(staleResponse instanceof byte[] && response instanceof byte[]) {
+            return !Arrays.equals((byte[]) staleResponse, (byte[]) response);
+        }
+        if(isValueType(staleResponse) && isValueType(response)) {
+            return !staleResponse.equals(response);
+        }
+        return true;
+    }
+
+    private static boolean isValueType(Object object) {
+        return object instanceof String || object instanceof Number || object instanceof Boolean;
+    }
+
+    // The ETag, or failing that the Last-Modified date, of a response.
+    static String validatorOf(ResponseWrapper responseWrapper) {
+        String eTag = responseWrapper.getHeader("ETag");
+        if(eTag != null) {
+            return "ETag " + eTag;
+        }
+        String lastModified = responseWrapper.getHeader("Last-Modified");
+        return lastModified != null ? "Last-Modified " + lastModified : null;
+    }
+
+    static String hostOf(Api api) {
+        try {
+            return new URL(api.getApiUrl()).getHost();
+        } catch (MalformedURLException e) {
+            return null;
         }
     }
 
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// The result of an asynchronous request. Callers asking for the same request
+// while it is in flight share one ApiFuture, so cancelling it cancels it for
+// all of them; futures derived with map, then and allOf can be cancelled
+// without touching their sources. Derived futures complete on the thread
+// that completes their source, callbacks on the executor they are added
+// with.
+public class ApiFuture<T> implements Future<T> {
+
+    public interface Transform<T, R> {
+
+        R apply(T value) throws Exception;
+
+    }
+
+    public interface Chain<T, R> {
+
+        ApiFuture<R> apply(T value) throws Exception;
+
+    }
+
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final Executor mCallbackExecutor;
+    private final ApiExecutor.ApiCallback<T> mCallback = new ApiExecutor.ApiCallback<T>() {
+        @Override
+        public void onSuccess(int responseCode, T response) {
+            complete(SUCCEEDED, responseCode, response, null);
+        }
+
+        @Override
+        public void onFailure(int responseCode, T response, Throwable t) {
+            complete(FAILED, responseCode, response, t);
+        }
+    };
+
+    private int mState = PENDING;
+    private int mResponseCode;
+    private T mResponse;
+    private Throwable mThrowable;
+    private List<Runnable> mListeners;
+    private RequestHandle mRequestHandle;
+    private boolean mSubmitted;
+
+    ApiFuture(Executor callbackExecutor) {
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    public static <T> ApiFuture<T> succeeded(int responseCode, T response) {
+        ApiFuture<T> future = new ApiFuture<>(CallbackExecutors.immediate());
+        future.complete(SUCCEEDED, responseCode, response, null);
+        return future;
+    }
+
+    public static <T> ApiFuture<T> failed(Throwable t) {
+        ApiFuture<T> future = new ApiFuture<>(CallbackExecutors.immediate());
+        future.complete(FAILED, 0, null, t);
+        return future;
+    }
+
+    // Succeeds with every response in order once all the futures succeed, or
+    // fails as soon as one of them fails. The others are left running since
+    // they may be shared.
+    public static <T> ApiFuture<List<T>> allOf(final List<? extends ApiFuture<? extends T>> futures) {
+        final ApiFuture<List<T>> all = new ApiFuture<>(CallbackExecutors.immediate());
+        if(futures.isEmpty()) {
+            all.complete(SUCCEEDED, 0, Collections.<T>emptyList(), null);
+            return all;
+        }
+        final Object[] responses = new Object[futures.size()];
+        final int[] remaining = {futures.size()};
+        for(int i = 0; i < futures.size(); i++) {
+            final int index = i;
+            final ApiFuture<? extends T> future = futures.get(i);
+            future.addListener(new Runnable() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void run() {
+                    if(future.mState != SUCCEEDED) {
+                        all.completeFrom(future);
+                        return;
+                    }
+                    boolean last;
+                    synchronized (responses) {
+                        responses[index] = future.mResponse;
+                        last = --remaining[0] == 0;
+                    }
+                    if(last) {
+                        all.complete(SUCCEEDED, 0, (List<T>) Arrays.asList(responses), null);
+                    }
+                }
+            });
+        }
+        return all;
+    }
+
+    public static ApiFuture<List<Object>> allOf(ApiFuture<?>... futures) {
+        return ApiFuture.<Object>allOf(Arrays.<ApiFuture<?>>asList(futures));
+    }
+
+    public void addCallback(ApiExecutor.ApiCallback<? super T> callback) {
+        addCallback(callback, mCallbackExecutor);
+    }
+
+    public void addCallback(final ApiExecutor.ApiCallback<? super T> callback, final Executor executor) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(callback);
+                    }
+                });
+            }
+        });
+    }
+
+    public <R> ApiFuture<R> map(final Transform<? super T, ? extends R> transform) {
+        final ApiFuture<R> mapped = new ApiFuture<>(mCallbackExecutor);
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                if(mState != SUCCEEDED) {
+                    mapped.completeFrom(ApiFuture.this);
+                    return;
+                }
+                R response;
+                try {
+                    response = transform.apply(mResponse);
+                } catch (Throwable t) {
+                    mapped.complete(FAILED, mResponseCode, null, t);
+                    return;
+                }
+                mapped.complete(SUCCEEDED, mResponseCode, response, null);
+            }
+        });
+        return mapped;
+    }
+
+    public <R> ApiFuture<R> then(final Chain<? super T, R> chain) {
+        final ApiFuture<R> chained = new ApiFuture<>(mCallbackExecutor);
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                if(mState != SUCCEEDED) {
+                    chained.completeFrom(ApiFuture.this);
+                    return;
+                }
+                final ApiFuture<R> next;
+                try {
+                    next = chain.apply(mResponse);
+                } catch (Throwable t) {
+                    chained.complete(FAILED, mResponseCode, null, t);
+                    return;
+                }
+                next.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        chained.completeFrom(next);
+                    }
+                });
+            }
+        });
+        return chained;
+    }
+
+    public synchronized int getResponseCode() {
+        return mResponseCode;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        RequestHandle requestHandle;
+        synchronized (this) {
+            requestHandle = mRequestHandle;
+        }
+        if(!complete(CANCELLED, 0, null, null)) {
+            return false;
+        }
+        if(requestHandle != null) {
+            requestHandle.cancel();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        if(mState == CANCELLED) {
+            throw new CancellationException();
+        }
+        if(mState == FAILED) {
+            throw new ExecutionException(mThrowable != null ? mThrowable : new ApiException(mResponseCode, mResponse));
+        }
+        return mResponse;
+    }
+
+    // Only the first caller gets true and submits the request.
+    synchronized boolean markSubmitted() {
+        if(mSubmitted) {
+            return false;
+        }
+        mSubmitted = true;
+        return true;
+    }
+
+    void setRequestHandle(RequestHandle requestHandle) {
+        boolean cancelled;
+        synchronized (this) {
+            if(mState == PENDING) {
+                mRequestHandle = requestHandle;
+                return;
+            }
+            cancelled = mState == CANCELLED;
+        }
+        if(cancelled) {
+            requestHandle.cancel();
+        }
+    }
+
+    // The bus only holds callbacks softly, so the future keeps its own
+    // alive for as long as the future itself is reachable.
+    ApiExecutor.ApiCallback<T> asCallback() {
+        return mCallback;
+    }
+
+    // Runs once the future is done, on the thread that completes it.
+    void addListener(Runnable listener) {
+        synchronized (this) {
+            if(mState == PENDING) {
+                if(mListeners == null) {
+                    mListeners = new ArrayList<>(2);
+                }
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private void deliver(ApiExecutor.ApiCallback<? super T> callback) {
+        int state;
+        int responseCode;
+        T response;
+        Throwable throwable;
+        synchronized (this) {
+            state = mState;
+            responseCode = mResponseCode;
+            response = mResponse;
+            throwable = mThrowable;
+        }
+        if(state == SUCCEEDED) {
+            callback.onSuccess(responseCode, response);
+        } else if(state == CANCELLED) {
+            callback.onFailure(responseCode, null, new CancellationException());
+        } else {
+            callback.onFailure(responseCode, response, throwable);
+        }
+    }
+
+    // A failed or cancelled source fails this future with the same cause.
+    private void completeFrom(ApiFuture<?> source) {
+        int state;
+        int responseCode;
+        Throwable throwable;
+        Object response;
+        synchronized (source) {
+            state = source.mState;
+            responseCode = source.mResponseCode;
+            response = source.mResponse;
+            throwable = source.mThrowable;
+        }
+        if(state == SUCCEEDED) {
+            @SuppressWarnings("unchecked")
+            T result = (T) response;
+            complete(SUCCEEDED, responseCode, result, null);
+        } else if(state == CANCELLED) {
+            complete(FAILED, responseCode, null, new CancellationException());
+        } else {
+            complete(FAILED, responseCode, null, throwable != null ? throwable : new ApiException(responseCode, response));
+        }
+    }
+
+    private boolean complete(int state, int responseCode, T response, Throwable throwable) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if(mState != PENDING) {
+                return false;
+            }
+            mState = state;
+            mResponseCode = responseCode;
+            mResponse = response;
+            mThrowable = throwable;
+            listeners = mListeners;
+            mListeners = null;
+            mRequestHandle = null;
+            notifyAll();
+        }
+        if(listeners != null) {
+            for(Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+// The shape of java.util.concurrent.Flow, which is not available on Android
+// before API 30, so adapting to it or to another reactive library is a
+// one-line wrapper.
+public interface ApiPublisher<T> {
+
+    interface Subscriber<T> {
+
+        void onSubscribe(Subscription subscription);
+        void onNext(T item);
+        void onError(Throwable t);
+        void onComplete();
+
+    }
+
+    interface Subscription {
+
+        void request(long n);
+        void cancel();
+
+    }
+
+    void subscribe(Subscriber<? super T> subscriber);
+}
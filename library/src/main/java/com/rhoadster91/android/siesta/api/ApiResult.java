@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.metrics.RequestMetrics;
+import com.rhoadster91.android.siesta.metrics.RequestTrace;
+import com.rhoadster91.android.siesta.response.ResponseTransformer;
+
+final class ApiResult implements Runnable {
+
+    private static final int MAX_POOL_SIZE = 16;
+
+    private static final Object sPoolLock = new Object();
+    private static ApiResult sPool;
+    private static int sPoolSize;
+
+    private CallbackBus.Subscriber subscriber;
+    private ApiExecutor.ApiCallback callback;
+    private boolean success;
+    private boolean transformed;
+    private boolean stale;
+    private int code;
+    private Object response;
+    private Throwable throwable;
+    private RequestMetrics metrics;
+    private long completedAt;
+    private RequestTrace trace;
+
+    private ApiResult next;
+
+    private ApiResult() {
+    }
+
+    static ApiResult obtain(CallbackBus.Subscriber subscriber, ApiExecutor.ApiCallback callback, boolean success, boolean transformed, boolean stale, int code, Object response, Throwable throwable, RequestMetrics metrics, long completedAt, RequestTrace trace) {
+        ApiResult result = null;
+        synchronized (sPoolLock) {
+            if(sPool != null) {
+                result = sPool;
+                sPool = result.next;
+                result.next = null;
+                sPoolSize--;
+            }
+        }
+        if(result == null) {
+            result = new ApiResult();
+        }
+        result.subscriber = subscriber;
+        result.callback = callback;
+        result.success = success;
+        result.transformed = transformed;
+        result.stale = stale;
+        result.code = code;
+        result.response = response;
+        result.throwable = throwable;
+        result.metrics = metrics;
+        result.completedAt = completedAt;
+        result.trace = trace;
+        return result;
+    }
+
+    @Override
+    public void run() {
+        CallbackBus.Subscriber subscriber = this.subscriber;
+        ApiExecutor.ApiCallback callback = this.callback;
+        boolean success = this.success;
+        boolean transformed = this.transformed;
+        boolean stale = this.stale;
+        int code = this.code;
+        Object response = this.response;
+        Throwable throwable = this.throwable;
+        RequestMetrics metrics = this.metrics;
+        long completedAt = this.completedAt;
+        RequestTrace trace = this.trace;
+        recycle();
+
+        if(subscriber.cancelled) {
+            return;
+        }
+        if(metrics != null) {
+            metrics.recordDelivery((System.nanoTime() - completedAt) / 1000);
+        }
+        if(trace == null) {
+            deliver(callback, success, transformed, stale, code, response, throwable);
+            return;
+        }
+        trace.mark(RequestTrace.Phase.DISPATCHED);
+        trace.beginSection("siesta callback");
+        try {
+            deliver(callback, success, transformed, stale, code, response, throwable);
+        } finally {
+            trace.endSection();
+            trace.mark(RequestTrace.Phase.CALLBACK_COMPLETED);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void deliver(ApiExecutor.ApiCallback callback, boolean success, boolean transformed, boolean stale, int code, Object response, Throwable throwable) {
+        if(transformed) {
+            ResponseTransformer transformer = (ResponseTransformer) callback;
+            if(success && stale) {
+                transformer.onTransformedStaleSuccess(code, response);
+            } else if(success) {
+                transformer.onTransformedSuccess(code, response);
+            } else {
+                transformer.onTransformedFailure(code, response, throwable);
+            }
+        } else if(success && callback instanceof ApiExecutor.StaleAwareCallback) {
+            ((ApiExecutor.StaleAwareCallback) callback).onSuccess(code, response, stale);
+        } else if(success) {
+            callback.onSuccess(code, response);
+        } else {
+            callback.onFailure(code, response, throwable);
+        }
+    }
+
+    private void recycle() {
+        subscriber = null;
+        callback = null;
+        response = null;
+        throwable = null;
+        metrics = null;
+        trace = null;
+        synchronized (sPoolLock) {
+            if(sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+}
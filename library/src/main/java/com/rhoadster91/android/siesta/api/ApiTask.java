@@ -16,108 +16,315 @@
 
 package com.rhoadster91.android.siesta.api;
 
-import android.os.Bundle;
-import android.os.Message;
-import android.os.Messenger;
-import android.os.RemoteException;
-
+import com.rhoadster91.android.siesta.api.capability.Cacheable;
 import com.rhoadster91.android.siesta.api.capability.Deletable;
 import com.rhoadster91.android.siesta.api.capability.Gettable;
 import com.rhoadster91.android.siesta.api.capability.Postable;
 import com.rhoadster91.android.siesta.api.capability.Puttable;
+import com.rhoadster91.android.siesta.cache.ResponseCache;
+import com.rhoadster91.android.siesta.metrics.MetricsRegistry;
+import com.rhoadster91.android.siesta.metrics.RequestMetrics;
+import com.rhoadster91.android.siesta.metrics.RequestTrace;
 import com.rhoadster91.android.siesta.request.RESTApiRequest;
 import com.rhoadster91.android.siesta.response.ResponseWrapper;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
-class ApiTask implements Runnable {
+class ApiTask implements Runnable, RequestScheduler.Rejectable {
 
-    private Messenger mCallbackMessenger;
+    private ApiExecutor mApiExecutor;
+    private CallbackBus.Subscription subscription;
     private Api api;
     private int method;
-    private ResponseWrapper responseWrapper;
+    private volatile ResponseWrapper responseWrapper;
+    private ResponseCache responseCache;
+    private volatile Priority priority = Priority.NORMAL;
+    private final String host;
+    private final RateLimiter rateLimiter;
+    private int attempt;
+    private volatile boolean cancelled;
+    private MetricsRegistry metricsRegistry;
+    private RequestMetrics metrics;
+    private volatile long queuedAt;
+    private RequestTrace trace;
+    private CallbackBus.Subscriber prefetchSubscriber;
 
-    public ApiTask(Api api, ResponseWrapper responseWrapper, int method, Messenger callbackMessenger) {
-        mCallbackMessenger = callbackMessenger;
+    public ApiTask(ApiExecutor apiExecutor, Api api, CallbackBus.Subscription subscription, ResponseWrapper responseWrapper, int method) {
+        mApiExecutor = apiExecutor;
+        this.subscription = subscription;
         this.api = api;
         this.responseWrapper = responseWrapper;
         this.method = method;
-        if(api.getDefaultHeaders()!=null) {
-            headers.putAll(api.getDefaultHeaders());
-        }
+        this.host = ApiExecutor.hostOf(api);
+        this.rateLimiter = api.getRateLimiter();
+        withHeaders(api.getDefaultHeaders());
     }
 
-    Map<String, String> params = new TreeMap<>();
-    Map<String, String> headers = new TreeMap<>();
+    Map<String, String> params = Collections.emptyMap();
+    Map<String, String> headers = Collections.emptyMap();
 
     public ApiTask withParams(Map<String, String> params)  {
-        if(params!=null) {
+        if(params!=null && !params.isEmpty()) {
+            if(this.params.isEmpty()) {
+                this.params = new TreeMap<>();
+            }
             this.params.putAll(params);
         }
         return this;
     }
 
     public ApiTask withHeaders(Map<String, String> headers)  {
-        if(headers!=null) {
-            this.params.putAll(headers);
+        if(headers!=null && !headers.isEmpty()) {
+            if(this.headers.isEmpty()) {
+                this.headers = new TreeMap<>();
+            }
+            this.headers.putAll(headers);
         }
         return this;
     }
 
-    @SuppressWarnings("unchecked")
+    public ApiTask withCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    public ApiTask withPriority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public ApiTask withMetrics(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        this.metrics = metricsRegistry != null ? metricsRegistry.getMetrics(api.getClass(), method) : null;
+        return this;
+    }
+
+    public ApiTask withTrace(RequestTrace trace) {
+        this.trace = trace;
+        return this;
+    }
+
+    public ApiTask withPrefetchSubscriber(CallbackBus.Subscriber prefetchSubscriber) {
+        this.prefetchSubscriber = prefetchSubscriber;
+        return this;
+    }
+
+    // Only while no real request has joined and raised the priority.
+    boolean isPrefetch() {
+        return prefetchSubscriber != null && priority == Priority.PREFETCH;
+    }
+
+    CallbackBus.Subscriber getPrefetchSubscriber() {
+        return prefetchSubscriber;
+    }
+
+    String getSignature() {
+        return subscription.signature;
+    }
+
+    void onQueued(long delay) {
+        if(metricsRegistry != null) {
+            queuedAt = System.nanoTime() + delay * 1000000L;
+            metricsRegistry.onTaskQueued();
+        }
+    }
+
+    void onDequeued() {
+        if(metricsRegistry != null) {
+            metricsRegistry.onTaskDequeued();
+        }
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    Priority getPriority() {
+        return priority;
+    }
+
+    // Fails a task that was turned away before it ran.
+    @Override
+    public void reject(Throwable throwable) {
+        onDequeued();
+        if(cancelled) {
+            return;
+        }
+        ResponseWrapper responseWrapper = this.responseWrapper;
+        responseWrapper.setThrowable(throwable);
+        if(trace != null) {
+            trace.finish();
+        }
+        mApiExecutor.complete(subscription, false, responseWrapper, null);
+    }
+
+    void cancel() {
+        cancelled = true;
+        responseWrapper.cancel();
+    }
+
     @Override
     public void run() {
+        if(metricsRegistry == null) {
+            attempt(0);
+            return;
+        }
+        long startedAt = System.nanoTime();
+        metricsRegistry.onTaskStarted();
+        try {
+            attempt(startedAt);
+        } finally {
+            metricsRegistry.onTaskFinished();
+        }
+    }
+
+    private void attempt(long startedAt) {
+        if(cancelled) {
+            return;
+        }
+        if(isPrefetch() && !mApiExecutor.isPrefetchAllowed() && mApiExecutor.abandonPrefetch(this)) {
+            return;
+        }
+        ResponseWrapper responseWrapper = this.responseWrapper;
+        if(trace != null) {
+            trace.mark(RequestTrace.Phase.STARTED);
+            responseWrapper.setTrace(trace);
+        }
+        CircuitBreaker circuitBreaker = mApiExecutor.obtainCircuitBreaker(host);
+        boolean isSuccess = false;
+        if(circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            responseWrapper.setThrowable(new CircuitBreakerOpenException(circuitBreaker.getHost()));
+        } else {
+            isSuccess = trace != null ? traceExecute(responseWrapper) : execute(responseWrapper);
+            if(circuitBreaker != null) {
+                if(cancelled) {
+                    circuitBreaker.onAbandoned();
+                } else if(CircuitBreaker.isFailure(responseWrapper.getCode(), responseWrapper.getThrowable())) {
+                    circuitBreaker.onFailure();
+                } else {
+                    circuitBreaker.onSuccess();
+                }
+            }
+        }
+        if(cancelled) {
+            return;
+        }
+        if(metrics != null) {
+            metricsRegistry.recordRequest(metrics, responseWrapper.getCode(), isSuccess, (startedAt - queuedAt) / 1000,
+                    (System.nanoTime() - startedAt) / 1000, responseWrapper.getBytesSent(), responseWrapper.getBytesReceived());
+        }
+        if(!isSuccess && retry(responseWrapper)) {
+            return;
+        }
+        if(isSuccess && responseCache != null && api instanceof Cacheable) {
+            store(responseWrapper);
+        }
+        if(trace != null) {
+            trace.finish();
+        }
+        mApiExecutor.complete(subscription, isSuccess, responseWrapper, metrics);
+    }
+
+    // Everything between execute() and complete() runs user code. If any of it
+    // throws, the subscribers of this signature still have to hear back.
+    private boolean retry(ResponseWrapper responseWrapper) {
+        long delay;
+        try {
+            RetryPolicy retryPolicy = api.getRetryPolicy();
+            if(retryPolicy == null || !retryPolicy.shouldRetry(method, attempt, responseWrapper.getCode(), responseWrapper.getThrowable())) {
+                return false;
+            }
+            delay = retryPolicy.getDelay(attempt, responseWrapper.getHeader("Retry-After"));
+        } catch (Throwable t) {
+            if(responseWrapper.getThrowable() == null) {
+                responseWrapper.setThrowable(t);
+            }
+            return false;
+        }
+        attempt++;
+        this.responseWrapper = new ResponseWrapper();
+        mApiExecutor.scheduleRetry(this, delay);
+        return true;
+    }
+
+    // A Cacheable that throws costs the cache entry, not the response.
+    private void store(ResponseWrapper responseWrapper) {
+        try {
+            Cacheable<?> cacheable = (Cacheable<?>) api;
+            Object response = responseWrapper.getResponse();
+            responseCache.put(subscription.signature, responseWrapper.getCode(), response, cacheable.getCacheTtl(), sizeOf(cacheable, response), ApiExecutor.validatorOf(responseWrapper));
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    // The response type is erased by the time the response reaches the task.
+    // A Cacheable declared for another type fails in sizeOf with a
+    // ClassCastException.
+    @SuppressWarnings("unchecked")
+    private static <T> int sizeOf(Cacheable<T> cacheable, Object response) {
+        return cacheable.sizeOf((T) response);
+    }
+
+    private boolean traceExecute(ResponseWrapper responseWrapper) {
+        trace.beginSection("siesta " + api.getClass().getSimpleName());
+        try {
+            return execute(responseWrapper);
+        } finally {
+            trace.endSection();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean execute(ResponseWrapper responseWrapper) {
         boolean isSuccess = false;
         try {
             switch (method) {
                 case RESTApiRequest.METHOD_GET:
                     if(api instanceof Gettable) {
                         ((Gettable) api).newGetRequest().get(api, params, headers, responseWrapper);
+                        mark(RequestTrace.Phase.BODY_READ);
                         isSuccess = ((Gettable) api).isGetSuccess(responseWrapper.getCode(), responseWrapper.getResponse());
                     }
                     break;
                 case RESTApiRequest.METHOD_POST:
                     if(api instanceof Postable) {
                         ((Postable) api).newPostRequest().post(api, params, headers, responseWrapper);
+                        mark(RequestTrace.Phase.BODY_READ);
                         isSuccess = ((Postable) api).isPostSuccess(responseWrapper.getCode(), responseWrapper.getResponse());
                     }
                     break;
                 case RESTApiRequest.METHOD_PUT:
                     if(api instanceof Puttable) {
                         ((Puttable) api).newPutRequest().put(api, params, headers, responseWrapper);
+                        mark(RequestTrace.Phase.BODY_READ);
                         isSuccess = ((Puttable) api).isPutSuccess(responseWrapper.getCode(), responseWrapper.getResponse());
                     }
                     break;
                 case RESTApiRequest.METHOD_DELETE:
                     if(api instanceof Deletable) {
                         ((Deletable) api).newDeleteRequest().delete(api, params, headers, responseWrapper);
+                        mark(RequestTrace.Phase.BODY_READ);
                         isSuccess = ((Deletable) api).isDeleteSuccess(responseWrapper.getCode(), responseWrapper.getResponse());
                     }
                     break;
             }
+            mark(RequestTrace.Phase.SUCCESS_EVALUATED);
         } catch (Throwable t) {
             responseWrapper.setThrowable(t);
         }
-        postResponse(responseWrapper, isSuccess);
+        return isSuccess;
     }
 
-    private void postResponse(ResponseWrapper responseWrapper, boolean isSuccess) {
-        Message message = Message.obtain();
-        Bundle data = new Bundle();
-        data.putString(ApiExecutor.KEY_API_SIGNATURE, api.getApiSignature(params));
-        data.putInt(ApiExecutor.KEY_API_RESPONSE_CODE, responseWrapper.getCode());
-        data.putSerializable(ApiExecutor.KEY_API_EXCEPTION, responseWrapper.getThrowable());
-        message.what = isSuccess?ApiExecutor.MESSAGE_API_SUCCESS:ApiExecutor.MESSAGE_API_FAILED;
-        message.setData(data);
-        message.obj = responseWrapper;
-        try {
-            mCallbackMessenger.send(message);
-        } catch (RemoteException e) {
-            e.printStackTrace();
+    private void mark(RequestTrace.Phase phase) {
+        if(trace != null) {
+            trace.mark(phase);
         }
     }
-
-
-
 }
\ No newline at end of file
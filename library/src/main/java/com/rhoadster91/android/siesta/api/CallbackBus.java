@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.cache.ResponseCache;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+class CallbackBus {
+
+    static class Subscriber {
+
+        final SoftReference<ApiExecutor.ApiCallback> callbackRef;
+        final Executor executor;
+        volatile boolean cancelled;
+
+        // set when this subscriber already received a stale cached response
+        // and only wants the network result if it differs
+        volatile ResponseCache.Entry staleEntry;
+
+        Subscriber(ApiExecutor.ApiCallback callback, Executor executor) {
+            this.callbackRef = new SoftReference<>(callback);
+            this.executor = executor;
+        }
+    }
+
+    static class Subscription {
+
+        final String signature;
+        volatile ApiTask apiTask;
+
+        // null once the subscription has been completed or abandoned
+        private final AtomicReference<Subscriber[]> mSubscribers;
+
+        Subscription(String signature, Subscriber first) {
+            this.signature = signature;
+            mSubscribers = new AtomicReference<>(new Subscriber[] {first});
+        }
+
+        boolean isClosed() {
+            return mSubscribers.get() == null;
+        }
+
+        int subscriberCount() {
+            Subscriber[] current = mSubscribers.get();
+            return current != null ? current.length : 0;
+        }
+
+        private boolean join(Subscriber subscriber) {
+            while (true) {
+                Subscriber[] current = mSubscribers.get();
+                if(current == null) {
+                    return false;
+                }
+                Subscriber[] next = copyOf(current, current.length + 1);
+                next[current.length] = subscriber;
+                if(mSubscribers.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        // returns true if the subscription became empty and was closed by this call
+        private boolean leave(Subscriber subscriber) {
+            while (true) {
+                Subscriber[] current = mSubscribers.get();
+                if(current == null) {
+                    return false;
+                }
+                int index = -1;
+                for(int i = 0; i < current.length; i++) {
+                    if(current[i] == subscriber) {
+                        index = i;
+                        break;
+                    }
+                }
+                if(index == -1) {
+                    return false;
+                }
+                Subscriber[] next = null;
+                if(current.length > 1) {
+                    next = copyOf(current, current.length - 1);
+                    System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                }
+                if(mSubscribers.compareAndSet(current, next)) {
+                    return next == null;
+                }
+            }
+        }
+
+        private Subscriber[] close() {
+            return mSubscribers.getAndSet(null);
+        }
+
+        private static Subscriber[] copyOf(Subscriber[] source, int length) {
+            Subscriber[] copy = new Subscriber[length];
+            System.arraycopy(source, 0, copy, 0, Math.min(length, source.length));
+            return copy;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Subscription> mSubscriptions = new ConcurrentHashMap<>();
+
+    Subscription subscribe(String signature, Subscriber subscriber) {
+        while (true) {
+            Subscription existing = mSubscriptions.get(signature);
+            if(existing == null) {
+                Subscription created = new Subscription(signature, subscriber);
+                existing = mSubscriptions.putIfAbsent(signature, created);
+                if(existing == null) {
+                    return created;
+                }
+            }
+            if(existing.join(subscriber)) {
+                return null;
+            }
+            mSubscriptions.remove(signature, existing);
+        }
+    }
+
+    Subscription get(String signature) {
+        return mSubscriptions.get(signature);
+    }
+
+    Subscription unsubscribe(String signature, Subscriber subscriber) {
+        Subscription subscription = mSubscriptions.get(signature);
+        if(subscription == null || !subscription.leave(subscriber)) {
+            return null;
+        }
+        mSubscriptions.remove(signature, subscription);
+        return subscription;
+    }
+
+    Subscriber[] complete(Subscription subscription) {
+        mSubscriptions.remove(subscription.signature, subscription);
+        return subscription.close();
+    }
+
+    int size() {
+        return mSubscriptions.size();
+    }
+}
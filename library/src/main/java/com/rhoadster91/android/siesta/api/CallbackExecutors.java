@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+public final class CallbackExecutors {
+
+    private static Executor sMainThread;
+
+    private static final Executor IMMEDIATE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private CallbackExecutors() {
+    }
+
+    // Always posts, even from the main thread, so a callback never runs
+    // before the call that submitted it has returned its RequestHandle.
+    public static synchronized Executor mainThread() {
+        if(sMainThread == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sMainThread = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return sMainThread;
+    }
+
+    public static Executor immediate() {
+        return IMMEDIATE;
+    }
+}
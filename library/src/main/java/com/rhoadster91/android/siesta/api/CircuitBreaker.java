@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import android.os.SystemClock;
+
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String mHost;
+    private final int mFailureThreshold;
+    private final long mOpenDuration;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures;
+    private long mOpenedAt;
+    private boolean mProbeInFlight;
+
+    public CircuitBreaker(String host, int failureThreshold, long openDuration) {
+        if(failureThreshold <= 0 || openDuration <= 0) {
+            throw new IllegalArgumentException("failureThreshold and openDuration must be positive");
+        }
+        mHost = host;
+        mFailureThreshold = failureThreshold;
+        mOpenDuration = openDuration;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case OPEN:
+                if(SystemClock.elapsedRealtime() - mOpenedAt < mOpenDuration) {
+                    return false;
+                }
+                mState = State.HALF_OPEN;
+                mProbeInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if(mProbeInFlight) {
+                    return false;
+                }
+                mProbeInFlight = true;
+                return true;
+            default:
+            case CLOSED:
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        mState = State.CLOSED;
+        mConsecutiveFailures = 0;
+        mProbeInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        mConsecutiveFailures++;
+        if(mState == State.HALF_OPEN || mConsecutiveFailures >= mFailureThreshold) {
+            mState = State.OPEN;
+            mOpenedAt = SystemClock.elapsedRealtime();
+        }
+        mProbeInFlight = false;
+    }
+
+    public synchronized void onAbandoned() {
+        mProbeInFlight = false;
+    }
+
+    static boolean isFailure(int responseCode, Throwable t) {
+        return (t != null && !(t instanceof CircuitBreakerOpenException)) || RetryPolicy.isRetryableStatus(responseCode);
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+public enum DeliveryMode {
+    // Fresh cache entries are delivered, otherwise the request goes to the network.
+    DEFAULT,
+    // Stale cache entries within Api.getMaxStaleness() are delivered at once and
+    // revalidated in the background; the fresh result is only delivered if it differs.
+    STALE_WHILE_REVALIDATE
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.SystemClock;
+
+// Disallows prefetching while the system reports low memory, for a while
+// after a trim callback, and on metered networks. Reading network state
+// needs ACCESS_NETWORK_STATE; without it every network counts as metered.
+public class DevicePrefetchPolicy implements PrefetchPolicy, ComponentCallbacks2 {
+
+    public static final long DEFAULT_TRIM_COOLDOWN = 60 * 1000;
+
+    // getMemoryInfo and the connectivity lookups are binder calls
+    private static final long CHECK_INTERVAL = 1000;
+
+    private final ActivityManager mActivityManager;
+    private final ConnectivityManager mConnectivityManager;
+
+    private volatile long mTrimCooldown = DEFAULT_TRIM_COOLDOWN;
+    private volatile long mLowMemoryUntil;
+    private volatile boolean mAllowMetered;
+
+    private long mCheckedAt;
+    private boolean mAllowed;
+
+    public DevicePrefetchPolicy(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        mActivityManager = (ActivityManager) applicationContext.getSystemService(Context.ACTIVITY_SERVICE);
+        mConnectivityManager = (ConnectivityManager) applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        applicationContext.registerComponentCallbacks(this);
+    }
+
+    public DevicePrefetchPolicy withTrimCooldown(long trimCooldown) {
+        mTrimCooldown = trimCooldown;
+        return this;
+    }
+
+    public DevicePrefetchPolicy withMeteredAllowed(boolean allowMetered) {
+        mAllowMetered = allowMetered;
+        synchronized (this) {
+            mCheckedAt = 0;
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isPrefetchAllowed() {
+        long now = SystemClock.elapsedRealtime();
+        if(now < mLowMemoryUntil) {
+            return false;
+        }
+        synchronized (this) {
+            if(mCheckedAt == 0 || now - mCheckedAt >= CHECK_INTERVAL) {
+                mAllowed = !isSystemMemoryLow() && (mAllowMetered || !isMetered());
+                mCheckedAt = now;
+            }
+            return mAllowed;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if(level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+            mLowMemoryUntil = SystemClock.elapsedRealtime() + mTrimCooldown;
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        mLowMemoryUntil = SystemClock.elapsedRealtime() + mTrimCooldown;
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private boolean isSystemMemoryLow() {
+        if(mActivityManager == null) {
+            return false;
+        }
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        mActivityManager.getMemoryInfo(memoryInfo);
+        return memoryInfo.lowMemory;
+    }
+
+    private boolean isMetered() {
+        if(mConnectivityManager == null) {
+            return true;
+        }
+        try {
+            if(Build.VERSION.SDK_INT >= 16) {
+                return mConnectivityManager.isActiveNetworkMetered();
+            }
+            NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
+            if(networkInfo == null) {
+                return true;
+            }
+            int type = networkInfo.getType();
+            return type != ConnectivityManager.TYPE_WIFI && type != ConnectivityManager.TYPE_ETHERNET;
+        } catch (SecurityException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.api.capability.Gettable;
+
+public abstract class GettableApi<T> extends Api implements Gettable<T> {
+
+    @Override
+    public boolean isGetSuccess(int responseCode, T response) {
+        return responseCode >= 200 && responseCode < 300;
+    }
+}
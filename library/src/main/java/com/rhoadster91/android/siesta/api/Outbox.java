@@ -0,0 +1,425 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.api.capability.Deletable;
+import com.rhoadster91.android.siesta.api.capability.Postable;
+import com.rhoadster91.android.siesta.api.capability.Puttable;
+import com.rhoadster91.android.siesta.request.RESTApiRequest;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Durable queue for writes that must survive being offline or the process
+// dying. Submissions are journaled before they are sent and replayed in
+// submission order, at most maxParallelism at a time, never two with the
+// same signature at once and never two PUTs or DELETEs to one URL at once.
+// Transient failures pause the replay with exponential backoff until
+// setOnline(true) or the backoff expires; client errors drop the entry.
+public class Outbox {
+
+    public static final int DEFAULT_MAX_PARALLELISM = 4;
+    public static final long DEFAULT_MIN_BACKOFF = 1000;
+    public static final long DEFAULT_MAX_BACKOFF = 60 * 1000;
+
+    // Called on the thread that completed the request.
+    public interface Listener {
+
+        void onDelivered(long id, int responseCode, Object response);
+        void onDropped(long id, int responseCode, Throwable t);
+
+    }
+
+    // Recreates Apis for entries journaled by an earlier process.
+    public interface ApiFactory {
+
+        Api create(String apiClass) throws Exception;
+
+    }
+
+    // Credential headers are never written to the journal. Entries replayed
+    // by a later process get them back from here, on top of the Api's
+    // default headers.
+    public interface HeaderProvider {
+
+        Map<String, String> getHeaders(Api api);
+
+    }
+
+    private static final String[] CREDENTIAL_HEADERS = {"Authorization", "Proxy-Authorization", "Cookie"};
+
+    private static final ApiFactory REFLECTIVE_API_FACTORY = new ApiFactory() {
+        @Override
+        public Api create(String apiClass) throws Exception {
+            Constructor<?> constructor = Class.forName(apiClass).getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return (Api) constructor.newInstance();
+        }
+    };
+
+    private class Entry implements ApiExecutor.ApiCallback<Object> {
+
+        final OutboxJournal.Record record;
+        Api api;
+        Map<String, String> headers;
+        boolean inFlight;
+
+        Entry(OutboxJournal.Record record, Api api, Map<String, String> headers) {
+            this.record = record;
+            this.api = api;
+            this.headers = headers;
+        }
+
+        @Override
+        public void onSuccess(int responseCode, Object response) {
+            onDelivered(this, responseCode, response);
+        }
+
+        @Override
+        public void onFailure(int responseCode, Object response, Throwable t) {
+            onFailed(this, responseCode, t);
+        }
+    }
+
+    private final ApiExecutor mApiExecutor;
+    private final OutboxJournal mJournal;
+
+    private final LinkedHashMap<Long, Entry> mPending = new LinkedHashMap<>();
+    private final Set<String> mInFlightKeys = new HashSet<>();
+    private final Map<String, Entry> mQueuedPuts = new HashMap<>();
+    private int mInFlightCount;
+
+    private int mMaxParallelism = DEFAULT_MAX_PARALLELISM;
+    private boolean mStarted;
+    private boolean mOnline = true;
+    private boolean mPaused;
+    private boolean mClosed;
+    private long mBackoff;
+    private ScheduledExecutorService mTimer;
+
+    private volatile Listener mListener;
+    private volatile ApiFactory mApiFactory = REFLECTIVE_API_FACTORY;
+    private volatile HeaderProvider mHeaderProvider;
+
+    public Outbox(ApiExecutor apiExecutor, File directory) throws IOException {
+        mApiExecutor = apiExecutor;
+        mJournal = new OutboxJournal(directory);
+        for(OutboxJournal.Record record : mJournal.records()) {
+            Entry entry = new Entry(record, null, null);
+            mPending.put(record.id, entry);
+            if(record.method == RESTApiRequest.METHOD_PUT) {
+                mQueuedPuts.put(record.resource, entry);
+            }
+        }
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public void setApiFactory(ApiFactory apiFactory) {
+        mApiFactory = apiFactory != null ? apiFactory : REFLECTIVE_API_FACTORY;
+    }
+
+    public void setHeaderProvider(HeaderProvider headerProvider) {
+        mHeaderProvider = headerProvider;
+    }
+
+    public void setMaxParallelism(int maxParallelism) {
+        if(maxParallelism <= 0) {
+            throw new IllegalArgumentException("maxParallelism must be positive");
+        }
+        synchronized (this) {
+            mMaxParallelism = maxParallelism;
+        }
+        pump();
+    }
+
+    // Nothing is sent until start() so that the listener and api factory can
+    // be set before entries left over from an earlier process are replayed.
+    public void start() {
+        synchronized (this) {
+            mStarted = true;
+        }
+        pump();
+    }
+
+    public void setOnline(boolean online) {
+        synchronized (this) {
+            mOnline = online;
+            if(online) {
+                mPaused = false;
+                mBackoff = 0;
+            }
+        }
+        pump();
+    }
+
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    public <T, A extends Api & Postable<T>> long post(A api, Map<String, String> headers, Map<String, String> params) throws IOException {
+        return enqueue(api, RESTApiRequest.METHOD_POST, headers, params);
+    }
+
+    // A PUT replaces any PUT to the same URL that has not been sent yet.
+    public <T, A extends Api & Puttable<T>> long put(A api, Map<String, String> headers, Map<String, String> params) throws IOException {
+        return enqueue(api, RESTApiRequest.METHOD_PUT, headers, params);
+    }
+
+    public <T, A extends Api & Deletable<T>> long delete(A api, Map<String, String> headers, Map<String, String> params) throws IOException {
+        return enqueue(api, RESTApiRequest.METHOD_DELETE, headers, params);
+    }
+
+    // Blocks until every submission so far is on disk. Without it they are
+    // synced in batches within OutboxJournal.SYNC_INTERVAL.
+    public void flush() throws IOException {
+        mJournal.sync();
+    }
+
+    public void close() {
+        synchronized (this) {
+            mClosed = true;
+            if(mTimer != null) {
+                mTimer.shutdown();
+                mTimer = null;
+            }
+        }
+        mJournal.close();
+    }
+
+    private long enqueue(Api api, int method, Map<String, String> headers, Map<String, String> params) throws IOException {
+        Map<String, String> headersCopy = copyOf(headers);
+        Map<String, String> paramsCopy = copyOf(params);
+        String signature = api.getApiSignature(paramsCopy);
+        String resource = resourceOf(api, method, paramsCopy);
+        long id;
+        synchronized (this) {
+            if(mClosed) {
+                throw new IOException("Outbox is closed");
+            }
+            OutboxJournal.Record record = mJournal.add(method, api.getClass().getName(), signature, resource, withoutCredentials(headersCopy), paramsCopy);
+            Entry entry = new Entry(record, api, headersCopy);
+            mPending.put(record.id, entry);
+            if(method == RESTApiRequest.METHOD_PUT) {
+                Entry superseded = mQueuedPuts.put(resource, entry);
+                if(superseded != null) {
+                    mPending.remove(superseded.record.id);
+                    mJournal.remove(superseded.record.id);
+                }
+            }
+            id = record.id;
+        }
+        pump();
+        return id;
+    }
+
+    private void pump() {
+        List<Entry> starting = null;
+        synchronized (this) {
+            if(!mStarted || !mOnline || mPaused || mClosed) {
+                return;
+            }
+            for(Entry entry : mPending.values()) {
+                if(mInFlightCount >= mMaxParallelism) {
+                    break;
+                }
+                if(entry.inFlight || mInFlightKeys.contains(inFlightKey(entry.record))) {
+                    continue;
+                }
+                entry.inFlight = true;
+                mInFlightCount++;
+                mInFlightKeys.add(inFlightKey(entry.record));
+                if(mQueuedPuts.get(entry.record.resource) == entry) {
+                    mQueuedPuts.remove(entry.record.resource);
+                }
+                if(starting == null) {
+                    starting = new ArrayList<>();
+                }
+                starting.add(entry);
+            }
+        }
+        if(starting != null) {
+            for(Entry entry : starting) {
+                send(entry);
+            }
+        }
+    }
+
+    private void send(Entry entry) {
+        Api api = entry.api;
+        if(api == null) {
+            try {
+                api = mApiFactory.create(entry.record.apiClass);
+            } catch (Exception e) {
+                drop(entry, 0, e);
+                return;
+            }
+            entry.api = api;
+        }
+        OutboxJournal.Record record = entry.record;
+        if(entry.headers == null) {
+            Map<String, String> headers = new TreeMap<>(record.headers);
+            HeaderProvider headerProvider = mHeaderProvider;
+            Map<String, String> provided = headerProvider != null ? headerProvider.getHeaders(api) : null;
+            if(provided != null) {
+                headers.putAll(provided);
+            }
+            entry.headers = headers;
+        }
+        mApiExecutor.submitApiTask(api, record.signature, entry, entry.headers, record.params, record.method,
+                new ResponseWrapper(), null, Priority.BACKGROUND, CallbackExecutors.immediate());
+    }
+
+    private void onDelivered(Entry entry, int responseCode, Object response) {
+        synchronized (this) {
+            release(entry);
+            mPending.remove(entry.record.id);
+            mBackoff = 0;
+            if(!mClosed) {
+                mJournal.remove(entry.record.id);
+            }
+        }
+        Listener listener = mListener;
+        if(listener != null) {
+            listener.onDelivered(entry.record.id, responseCode, response);
+        }
+        pump();
+    }
+
+    private void onFailed(Entry entry, int responseCode, Throwable t) {
+        if(!isTransient(responseCode, t)) {
+            drop(entry, responseCode, t);
+            return;
+        }
+        synchronized (this) {
+            release(entry);
+            entry.inFlight = false;
+            if(mClosed || mPaused) {
+                return;
+            }
+            mPaused = true;
+            mBackoff = mBackoff == 0 ? DEFAULT_MIN_BACKOFF : Math.min(mBackoff * 2, DEFAULT_MAX_BACKOFF);
+            getTimer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (Outbox.this) {
+                        mPaused = false;
+                    }
+                    pump();
+                }
+            }, mBackoff, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drop(Entry entry, int responseCode, Throwable t) {
+        synchronized (this) {
+            release(entry);
+            mPending.remove(entry.record.id);
+            if(!mClosed) {
+                mJournal.remove(entry.record.id);
+            }
+        }
+        Listener listener = mListener;
+        if(listener != null) {
+            listener.onDropped(entry.record.id, responseCode, t);
+        }
+        pump();
+    }
+
+    private void release(Entry entry) {
+        if(entry.inFlight) {
+            mInFlightCount--;
+            mInFlightKeys.remove(inFlightKey(entry.record));
+        }
+    }
+
+    // Anything thrown other than an IOException, such as a response that
+    // failed to parse, will fail the same way on every replay.
+    private static boolean isTransient(int responseCode, Throwable t) {
+        return t instanceof IOException || responseCode == 408 || responseCode == 429 || responseCode >= 500;
+    }
+
+    // The method and URL the request targets, as HttpApiRequest.buildUrl
+    // builds it. Unlike the signature this leaves out the request body.
+    private static String resourceOf(Api api, int method, Map<String, String> params) {
+        String url = method == RESTApiRequest.METHOD_DELETE ? api.processGetParams(params) : api.getApiUrl();
+        return method + " " + url;
+    }
+
+    // POSTs to one collection may run side by side; writes to one resource
+    // must land in order.
+    private static String inFlightKey(OutboxJournal.Record record) {
+        return record.method == RESTApiRequest.METHOD_POST ? record.signature : record.resource;
+    }
+
+    private static Map<String, String> withoutCredentials(Map<String, String> headers) {
+        Map<String, String> stripped = new TreeMap<>();
+        for(Map.Entry<String, String> header : headers.entrySet()) {
+            if(!isCredential(header.getKey())) {
+                stripped.put(header.getKey(), header.getValue());
+            }
+        }
+        return stripped;
+    }
+
+    private static boolean isCredential(String header) {
+        for(String credential : CREDENTIAL_HEADERS) {
+            if(credential.equalsIgnoreCase(header)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, String> copyOf(Map<String, String> map) {
+        Map<String, String> copy = new TreeMap<>();
+        if(map != null) {
+            copy.putAll(map);
+        }
+        return copy;
+    }
+
+    private ScheduledExecutorService getTimer() {
+        if(mTimer == null) {
+            mTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "siesta-outbox-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mTimer;
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Append-only log of outbox submissions. Every record is framed as
+// [length][payload][crc32] so a write torn by a crash is detected and cut
+// off on the next load. Appends only reach the page cache; a single fsync
+// covers every append made within SYNC_INTERVAL of the first unsynced one.
+class OutboxJournal {
+
+    static final long SYNC_INTERVAL = 25;
+
+    private static final String JOURNAL_FILE = "outbox";
+    private static final String JOURNAL_FILE_TMP = "outbox.tmp";
+    private static final String JOURNAL_MAGIC = "siesta.Outbox";
+    private static final int JOURNAL_VERSION = 1;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    static class Record {
+
+        final long id;
+        final int method;
+        final String apiClass;
+        final String signature;
+        final String resource;
+        final Map<String, String> headers;
+        final Map<String, String> params;
+
+        Record(long id, int method, String apiClass, String signature, String resource, Map<String, String> headers, Map<String, String> params) {
+            this.id = id;
+            this.method = method;
+            this.apiClass = apiClass;
+            this.signature = signature;
+            this.resource = resource;
+            this.headers = headers;
+            this.params = params;
+        }
+    }
+
+    private static class Scratch extends ByteArrayOutputStream {
+
+        Scratch() {
+            super(256);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private final File mDirectory;
+    private final LinkedHashMap<Long, Record> mRecords = new LinkedHashMap<>();
+    private final Scratch mScratch = new Scratch();
+    private final DataOutputStream mScratchOut = new DataOutputStream(mScratch);
+    private final CRC32 mCrc = new CRC32();
+
+    private FileOutputStream mFileOut;
+    private DataOutputStream mJournalOut;
+    private int mRedundantOpCount;
+    private long mLastId;
+    private boolean mSyncScheduled;
+    private ScheduledExecutorService mTimer;
+
+    OutboxJournal(File directory) throws IOException {
+        mDirectory = directory;
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create outbox directory " + directory);
+        }
+        File journal = new File(directory, JOURNAL_FILE);
+        if(journal.exists()) {
+            long validLength = readJournal(journal);
+            if(validLength < 0) {
+                mRecords.clear();
+                rebuildJournal();
+            } else {
+                truncate(journal, validLength);
+                openWriter(journal);
+            }
+        } else {
+            rebuildJournal();
+        }
+        if(mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && mRedundantOpCount >= mRecords.size()) {
+            rebuildJournal();
+        }
+    }
+
+    synchronized List<Record> records() {
+        return new ArrayList<>(mRecords.values());
+    }
+
+    synchronized int size() {
+        return mRecords.size();
+    }
+
+    synchronized Record add(int method, String apiClass, String signature, String resource, Map<String, String> headers, Map<String, String> params) throws IOException {
+        Record record = new Record(++mLastId, method, apiClass, signature, resource, headers, params);
+        encodeAdd(record);
+        append();
+        mRecords.put(record.id, record);
+        return record;
+    }
+
+    synchronized void remove(long id) {
+        if(mRecords.remove(id) == null) {
+            return;
+        }
+        try {
+            mScratch.reset();
+            mScratchOut.writeByte(REMOVE);
+            mScratchOut.writeLong(id);
+            append();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mRedundantOpCount += 2;
+        if(mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && mRedundantOpCount >= mRecords.size()) {
+            rebuildJournal();
+        }
+    }
+
+    void sync() throws IOException {
+        FileOutputStream fileOut;
+        synchronized (this) {
+            mSyncScheduled = false;
+            if(mJournalOut == null) {
+                return;
+            }
+            mJournalOut.flush();
+            fileOut = mFileOut;
+        }
+        // Outside the lock so appends keep going while the disk catches up.
+        fileOut.getFD().sync();
+    }
+
+    synchronized void close() {
+        if(mJournalOut != null) {
+            try {
+                mJournalOut.flush();
+                mFileOut.getFD().sync();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        closeQuietly(mJournalOut);
+        mJournalOut = null;
+        mFileOut = null;
+        if(mTimer != null) {
+            mTimer.shutdown();
+            mTimer = null;
+        }
+    }
+
+    private void encodeAdd(Record record) throws IOException {
+        mScratch.reset();
+        mScratchOut.writeByte(ADD);
+        mScratchOut.writeLong(record.id);
+        mScratchOut.writeByte(record.method);
+        writeString(mScratchOut, record.apiClass);
+        writeString(mScratchOut, record.signature);
+        writeMap(mScratchOut, record.headers);
+        writeMap(mScratchOut, record.params);
+        writeString(mScratchOut, record.resource);
+    }
+
+    private void writeFrame(DataOutputStream out) throws IOException {
+        mCrc.reset();
+        mCrc.update(mScratch.buffer(), 0, mScratch.size());
+        out.writeInt(mScratch.size());
+        mScratch.writeTo(out);
+        out.writeInt((int) mCrc.getValue());
+    }
+
+    private void append() throws IOException {
+        if(mJournalOut == null) {
+            throw new IOException("Outbox journal is closed");
+        }
+        writeFrame(mJournalOut);
+        scheduleSync();
+    }
+
+    private void scheduleSync() {
+        if(mSyncScheduled) {
+            return;
+        }
+        mSyncScheduled = true;
+        if(mTimer == null) {
+            mTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "siesta-outbox-journal");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        mTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sync();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    // Returns the length of the intact prefix, or -1 if the header is
+    // unreadable. Records that pass the checksum but fail to decode are
+    // skipped.
+    private long readJournal(File journal) {
+        DataInputStream in = null;
+        long validLength;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+            if(!JOURNAL_MAGIC.equals(in.readUTF()) || in.readInt() != JOURNAL_VERSION) {
+                return -1;
+            }
+            validLength = JOURNAL_MAGIC.length() + 2 + 4;
+            byte[] payload = new byte[256];
+            int opCount = 0;
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if(length <= 0 || length > journal.length()) {
+                    break;
+                }
+                if(payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                try {
+                    in.readFully(payload, 0, length);
+                    mCrc.reset();
+                    mCrc.update(payload, 0, length);
+                    if(in.readInt() != (int) mCrc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    apply(new DataInputStream(new ByteArrayInputStream(payload, 0, length)));
+                } catch (IOException | RuntimeException e) {
+                    // Intact but undecodable. Skip it rather than throw away
+                    // every write around it.
+                    e.printStackTrace();
+                }
+                validLength += 4 + length + 4;
+                opCount++;
+            }
+            mRedundantOpCount = opCount - mRecords.size();
+            return validLength;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        long id = in.readLong();
+        mLastId = Math.max(mLastId, id);
+        if(op == ADD) {
+            int method = in.readByte();
+            String apiClass = readString(in);
+            String signature = readString(in);
+            Map<String, String> headers = readMap(in);
+            Map<String, String> params = readMap(in);
+            // Records written before the resource was journaled end here.
+            String resource = in.available() > 0 ? readString(in) : signature;
+            mRecords.put(id, new Record(id, method, apiClass, signature, resource, headers, params));
+        } else if(op == REMOVE) {
+            mRecords.remove(id);
+        }
+    }
+
+    private void rebuildJournal() {
+        closeQuietly(mJournalOut);
+        mJournalOut = null;
+        mFileOut = null;
+        File tmp = new File(mDirectory, JOURNAL_FILE_TMP);
+        FileOutputStream fileOut = null;
+        try {
+            fileOut = new FileOutputStream(tmp);
+            mJournalOut = new DataOutputStream(new BufferedOutputStream(fileOut));
+            mJournalOut.writeUTF(JOURNAL_MAGIC);
+            mJournalOut.writeInt(JOURNAL_VERSION);
+            for(Record record : mRecords.values()) {
+                encodeAdd(record);
+                writeFrame(mJournalOut);
+            }
+            mJournalOut.flush();
+            fileOut.getFD().sync();
+            mJournalOut.close();
+            mJournalOut = null;
+            File journal = new File(mDirectory, JOURNAL_FILE);
+            if(!tmp.renameTo(journal)) {
+                throw new IOException("Unable to replace journal " + journal);
+            }
+            openWriter(journal);
+            mRedundantOpCount = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeQuietly(mJournalOut);
+            mJournalOut = null;
+        }
+    }
+
+    private void openWriter(File journal) throws IOException {
+        mFileOut = new FileOutputStream(journal, true);
+        mJournalOut = new DataOutputStream(new BufferedOutputStream(mFileOut, 8192));
+    }
+
+    private static void truncate(File journal, long length) throws IOException {
+        if(journal.length() == length) {
+            return;
+        }
+        RandomAccessFile file = new RandomAccessFile(journal, "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+
+    // writeUTF caps strings at 64KB, which request bodies can exceed.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0) {
+            return null;
+        }
+        if(length > in.available()) {
+            throw new EOFException("String length " + length + " runs past the record");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for(Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, String> map = new TreeMap<>();
+        for(int i = 0; i < size; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if(closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.api.capability.Gettable;
+import com.rhoadster91.android.siesta.api.capability.Pageable;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+// Publishes the pages of a Pageable endpoint. Every subscriber walks the
+// pages from the start through its own Pager, so request(n) and the pager's
+// lookahead bound how far the fetches run ahead of the subscriber.
+class PagePublisher<T, A extends Api & Gettable<T> & Pageable<T>> implements ApiPublisher<T> {
+
+    private final ApiExecutor mApiExecutor;
+    private final A mApi;
+    private final Map<String, String> mHeaders;
+    private final Map<String, String> mParams;
+    private final int mLookahead;
+    private final Priority mPriority;
+    private final Executor mCallbackExecutor;
+
+    PagePublisher(ApiExecutor apiExecutor, A api, Map<String, String> headers, Map<String, String> params, int lookahead, Priority priority, Executor callbackExecutor) {
+        mApiExecutor = apiExecutor;
+        mApi = api;
+        mHeaders = headers;
+        mParams = params;
+        mLookahead = lookahead;
+        mPriority = priority;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscription.mPager = new Pager<>(mApiExecutor, mApi, mHeaders, mParams, mLookahead, mPriority, mCallbackExecutor, subscription);
+        subscriber.onSubscribe(subscription);
+        subscription.mPager.fill();
+    }
+
+    // Signals go out on the callback executor, like the pager's own.
+    private class PageSubscription implements Subscription, Pager.PageListener<T> {
+
+        private final Subscriber<? super T> mSubscriber;
+        private Pager<T> mPager;
+        private volatile boolean mDone;
+
+        PageSubscription(Subscriber<? super T> subscriber) {
+            mSubscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if(n <= 0) {
+                mPager.cancel();
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        terminate(new IllegalArgumentException("Requested " + n + " items, must be positive"));
+                    }
+                });
+                return;
+            }
+            if(!mDone) {
+                mPager.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mDone = true;
+            mPager.cancel();
+        }
+
+        @Override
+        public void onPage(int index, int responseCode, T page) {
+            if(!mDone) {
+                mSubscriber.onNext(page);
+            }
+        }
+
+        @Override
+        public void onEnd() {
+            if(!mDone) {
+                mDone = true;
+                mSubscriber.onComplete();
+            }
+        }
+
+        // A failed page ends the stream; subscribe again to start over.
+        @Override
+        public void onError(int index, int responseCode, T response, Throwable t) {
+            mPager.cancel();
+            terminate(t != null ? t : new ApiException(responseCode, response));
+        }
+
+        private void terminate(Throwable t) {
+            if(!mDone) {
+                mDone = true;
+                mSubscriber.onError(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.api.capability.Gettable;
+import com.rhoadster91.android.siesta.api.capability.Pageable;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+// Walks a Pageable endpoint one page at a time. Pages are fetched until
+// lookahead pages are waiting beyond what the consumer has asked for with
+// request(n), then fetching pauses until the consumer catches up. Pages are
+// not kept once delivered. Lookahead fetches run at BACKGROUND priority and
+// are raised to the pager's priority when the consumer starts waiting on
+// them.
+public class Pager<T> {
+
+    public static final int DEFAULT_LOOKAHEAD = 1;
+
+    public interface PageListener<T> {
+
+        void onPage(int index, int responseCode, T page);
+        void onEnd();
+        void onError(int index, int responseCode, T response, Throwable t);
+
+    }
+
+    private static class Page<T> {
+
+        final int index;
+        final int code;
+        final T response;
+
+        Page(int index, int code, T response) {
+            this.index = index;
+            this.code = code;
+            this.response = response;
+        }
+    }
+
+    private class Fetch implements ApiExecutor.ApiCallback<T> {
+
+        final int index;
+        final Map<String, String> params;
+        RequestHandle handle;
+        RequestHandle upgradeHandle;
+        boolean background;
+        boolean done;
+
+        Fetch(int index, Map<String, String> params) {
+            this.index = index;
+            this.params = params;
+        }
+
+        @Override
+        public void onSuccess(int responseCode, T response) {
+            onFetched(this, responseCode, response, null, true);
+        }
+
+        @Override
+        public void onFailure(int responseCode, T response, Throwable t) {
+            onFetched(this, responseCode, response, t, false);
+        }
+
+        void cancel() {
+            if(handle != null) {
+                handle.cancel();
+            }
+            if(upgradeHandle != null) {
+                upgradeHandle.cancel();
+            }
+        }
+    }
+
+    private final ApiExecutor mApiExecutor;
+    private final Api mApi;
+    private final Map<String, String> mHeaders;
+    private final int mLookahead;
+    private final Priority mPriority;
+    private final Executor mCallbackExecutor;
+    private final PageListener<T> mListener;
+
+    private final ArrayDeque<Page<T>> mBuffer = new ArrayDeque<>();
+    private Map<String, String> mNextParams;
+    private int mNextIndex;
+    private long mDemand;
+    private Fetch mFetch;
+    private Page<T> mFailure;
+    private Throwable mFailureThrowable;
+    private boolean mFailureDelivered;
+    private boolean mEndDelivered;
+    private boolean mCancelled;
+    private boolean mDraining;
+
+    <A extends Api & Gettable<T> & Pageable<T>> Pager(ApiExecutor apiExecutor, A api, Map<String, String> headers, Map<String, String> params, int lookahead, Priority priority, Executor callbackExecutor, PageListener<T> listener) {
+        if(lookahead < 0) {
+            throw new IllegalArgumentException("lookahead must not be negative");
+        }
+        mApiExecutor = apiExecutor;
+        mApi = api;
+        mHeaders = headers;
+        mNextParams = params;
+        mLookahead = lookahead;
+        mPriority = priority;
+        mCallbackExecutor = callbackExecutor;
+        mListener = listener;
+    }
+
+    public void request(long pages) {
+        if(pages <= 0) {
+            throw new IllegalArgumentException("pages must be positive");
+        }
+        synchronized (this) {
+            mDemand = mDemand + pages < 0 ? Long.MAX_VALUE : mDemand + pages;
+        }
+        drain();
+        fill();
+    }
+
+    // Refetches the page that failed; pages before it are not fetched again.
+    public void retry() {
+        synchronized (this) {
+            if(mFailure == null || mCancelled) {
+                return;
+            }
+            mFailure = null;
+            mFailureThrowable = null;
+            mFailureDelivered = false;
+        }
+        fill();
+    }
+
+    public void cancel() {
+        Fetch fetch;
+        synchronized (this) {
+            mCancelled = true;
+            mBuffer.clear();
+            fetch = mFetch;
+            mFetch = null;
+        }
+        if(fetch != null) {
+            fetch.cancel();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public synchronized boolean hasMore() {
+        return !mCancelled && (!mBuffer.isEmpty() || mFetch != null || mNextParams != null);
+    }
+
+    public synchronized int getBufferedCount() {
+        return mBuffer.size();
+    }
+
+    void fill() {
+        Fetch fetch;
+        Fetch upgrade = null;
+        synchronized (this) {
+            if(mCancelled || mFailure != null) {
+                return;
+            }
+            fetch = mFetch;
+            if(fetch != null) {
+                if(fetch.background && mDemand > mBuffer.size()) {
+                    fetch.background = false;
+                    upgrade = fetch;
+                }
+                fetch = null;
+            } else if(mNextParams != null && mBuffer.size() < Math.max(mLookahead, mDemand)) {
+                fetch = new Fetch(mNextIndex, mNextParams);
+                fetch.background = mDemand <= mBuffer.size();
+                mFetch = fetch;
+            }
+        }
+        if(upgrade != null) {
+            // joins the queued request and raises its priority
+            RequestHandle handle = submit(upgrade, mPriority);
+            synchronized (this) {
+                if(upgrade.done || mFetch != upgrade) {
+                    handle.cancel();
+                } else {
+                    upgrade.upgradeHandle = handle;
+                }
+            }
+        }
+        if(fetch != null) {
+            RequestHandle handle = submit(fetch, fetch.background ? Priority.BACKGROUND : mPriority);
+            synchronized (this) {
+                if(fetch.done || mFetch != fetch) {
+                    handle.cancel();
+                } else {
+                    fetch.handle = handle;
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <A extends Api & Gettable<T>> RequestHandle submit(Fetch fetch, Priority priority) {
+        return mApiExecutor.get((A) mApi, fetch, mHeaders, fetch.params, priority, CallbackExecutors.immediate());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onFetched(Fetch fetch, int responseCode, T response, Throwable t, boolean success) {
+        synchronized (this) {
+            if(fetch.done) {
+                return;
+            }
+            fetch.done = true;
+            if(mFetch != fetch) {
+                return;
+            }
+            mFetch = null;
+            Page<T> page = new Page<>(fetch.index, responseCode, response);
+            if(success) {
+                mBuffer.addLast(page);
+                mNextIndex = fetch.index + 1;
+                mNextParams = ((Pageable<T>) mApi).getNextPageParams(fetch.params, response);
+            } else {
+                mFailure = page;
+                mFailureThrowable = t;
+            }
+        }
+        // an upgraded fetch has two subscribers on the same request; only the
+        // first one to be called back counts
+        fetch.cancel();
+        drain();
+        fill();
+    }
+
+    private void drain() {
+        synchronized (this) {
+            if(mDraining) {
+                return;
+            }
+            mDraining = true;
+        }
+        while (true) {
+            Runnable delivery;
+            synchronized (this) {
+                delivery = nextDelivery();
+                if(delivery == null) {
+                    mDraining = false;
+                    return;
+                }
+            }
+            mCallbackExecutor.execute(delivery);
+        }
+    }
+
+    private Runnable nextDelivery() {
+        if(mCancelled || mListener == null) {
+            return null;
+        }
+        if(!mBuffer.isEmpty()) {
+            if(mDemand == 0) {
+                return null;
+            }
+            mDemand--;
+            final Page<T> page = mBuffer.pollFirst();
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if(!isCancelled()) {
+                        mListener.onPage(page.index, page.code, page.response);
+                    }
+                }
+            };
+        }
+        if(mFailure != null && !mFailureDelivered && mDemand > 0) {
+            mFailureDelivered = true;
+            final Page<T> failure = mFailure;
+            final Throwable throwable = mFailureThrowable;
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if(!isCancelled()) {
+                        mListener.onError(failure.index, failure.code, failure.response, throwable);
+                    }
+                }
+            };
+        }
+        if(mNextParams == null && mFetch == null && mFailure == null && !mEndDelivered) {
+            mEndDelivered = true;
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if(!isCancelled()) {
+                        mListener.onEnd();
+                    }
+                }
+            };
+        }
+        return null;
+    }
+}
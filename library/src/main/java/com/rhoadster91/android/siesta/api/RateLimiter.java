@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import android.os.SystemClock;
+
+public class RateLimiter {
+
+    private final double mPermitsPerMilli;
+    private final int mBurst;
+
+    private double mTokens;
+    private long mRefilledAt;
+
+    // Api implementations are usually created per call, so keep a single
+    // RateLimiter instance (e.g. a static field) for every Api that should
+    // draw from the same budget.
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if(permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        mPermitsPerMilli = permitsPerSecond / 1000d;
+        mBurst = burst;
+        mTokens = burst;
+        mRefilledAt = SystemClock.elapsedRealtime();
+    }
+
+    public double getPermitsPerSecond() {
+        return mPermitsPerMilli * 1000d;
+    }
+
+    public int getBurst() {
+        return mBurst;
+    }
+
+    public synchronized boolean tryAcquire() {
+        long now = SystemClock.elapsedRealtime();
+        if(getDelay(now) > 0) {
+            return false;
+        }
+        acquire(now);
+        return true;
+    }
+
+    synchronized long getDelay(long now) {
+        refill(now);
+        if(mTokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - mTokens) / mPermitsPerMilli);
+    }
+
+    synchronized void acquire(long now) {
+        refill(now);
+        mTokens--;
+    }
+
+    private void refill(long now) {
+        if(now > mRefilledAt) {
+            mTokens = Math.min(mBurst, mTokens + (now - mRefilledAt) * mPermitsPerMilli);
+            mRefilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class RequestExecutors {
+
+    public static final long DEFAULT_KEEP_ALIVE = 60000;
+
+    private RequestExecutors() {
+    }
+
+    public static ExecutorService adaptive(int maxThreads) {
+        return adaptive(maxThreads, DEFAULT_KEEP_ALIVE);
+    }
+
+    // Starts threads on demand up to maxThreads and reaps them after keepAlive
+    // milliseconds idle. The queue never holds more than the scheduler lets
+    // run at once, so it is left unbounded; the request backlog is bounded by
+    // ApiExecutor.setMaxQueuedRequests instead.
+    public static ExecutorService adaptive(int maxThreads, long keepAlive) {
+        if(maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be positive");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, keepAlive, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "siesta-worker-" + mCount.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
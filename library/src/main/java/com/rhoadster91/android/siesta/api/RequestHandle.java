@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+public class RequestHandle {
+
+    private final ApiExecutor mApiExecutor;
+    private final String mSignature;
+    private final CallbackBus.Subscriber mSubscriber;
+
+    RequestHandle(ApiExecutor apiExecutor, String signature, CallbackBus.Subscriber subscriber) {
+        mApiExecutor = apiExecutor;
+        mSignature = signature;
+        mSubscriber = subscriber;
+    }
+
+    public String getSignature() {
+        return mSignature;
+    }
+
+    public boolean isCancelled() {
+        return mSubscriber.cancelled;
+    }
+
+    public void cancel() {
+        if(mSubscriber.cancelled) {
+            return;
+        }
+        mSubscriber.cancelled = true;
+        mApiExecutor.cancel(mSignature, mSubscriber);
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+class RequestScheduler {
+
+    static final long DEFAULT_AGING_INTERVAL = 2000;
+
+    // Tasks that have to be told when the executor turns them away.
+    interface Rejectable {
+
+        void reject(Throwable throwable);
+
+    }
+
+    private static final ThreadLocal<Boolean> sWorker = new ThreadLocal<>();
+
+    class Entry implements Runnable {
+
+        final Runnable task;
+        final Priority priority;
+        final String host;
+        final RateLimiter rateLimiter;
+        final long enqueuedAt;
+
+        Entry(Runnable task, Priority priority, String host, RateLimiter rateLimiter, long enqueuedAt) {
+            this.task = task;
+            this.priority = priority;
+            this.host = host;
+            this.rateLimiter = rateLimiter;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            sWorker.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                sWorker.remove();
+                finished(this);
+            }
+        }
+    }
+
+    private final Executor mExecutor;
+    private final int mMaxRunning;
+    private final List<ArrayDeque<Entry>> mQueues = new ArrayList<>();
+    private final Map<String, Integer> mHostRunning = new HashMap<>();
+    private final Set<Entry> mDelayed = new HashSet<>();
+
+    private int mMaxBackgroundRunning = Integer.MAX_VALUE;
+    private int mMaxRunningPerHost = Integer.MAX_VALUE;
+    private long mAgingInterval = DEFAULT_AGING_INTERVAL;
+    private int mMaxQueued = Integer.MAX_VALUE;
+    private OverflowPolicy mOverflowPolicy = OverflowPolicy.FAIL_FAST;
+
+    private int mRunning;
+    private int mBackgroundRunning;
+
+    private ScheduledExecutorService mTimer;
+    private long mRateLimitDelay;
+    private long mWakeUpAt;
+    private boolean mShutdown;
+
+    RequestScheduler(Executor executor, int maxRunning) {
+        mExecutor = executor;
+        mMaxRunning = maxRunning;
+        for(int i = 0; i < Priority.values().length; i++) {
+            mQueues.add(new ArrayDeque<Entry>());
+        }
+    }
+
+    void setMaxBackgroundRunning(int maxBackgroundRunning) {
+        synchronized (this) {
+            mMaxBackgroundRunning = maxBackgroundRunning;
+        }
+        promote();
+    }
+
+    synchronized void setAgingInterval(long agingInterval) {
+        mAgingInterval = agingInterval;
+    }
+
+    void setMaxRunningPerHost(int maxRunningPerHost) {
+        synchronized (this) {
+            mMaxRunningPerHost = maxRunningPerHost;
+        }
+        promote();
+    }
+
+    synchronized void setMaxQueued(int maxQueued, OverflowPolicy overflowPolicy) {
+        mMaxQueued = maxQueued;
+        mOverflowPolicy = overflowPolicy;
+        notifyAll();
+    }
+
+    // Like enqueue, but honours the queue bound. Returns false if the task
+    // was rejected. Only waits for room if the policy is BLOCK, mayBlock is
+    // set and the caller is not one of the scheduler's own tasks: those are
+    // what drain the queue, so a task blocking on it could deadlock.
+    boolean offer(Runnable task, Priority priority, String host, RateLimiter rateLimiter, boolean mayBlock) {
+        synchronized (this) {
+            if(queuedCount() >= mMaxQueued && !mShutdown) {
+                if(!mayBlock || mOverflowPolicy != OverflowPolicy.BLOCK || sWorker.get() != null) {
+                    return false;
+                }
+                try {
+                    while (queuedCount() >= mMaxQueued && !mShutdown) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if(mShutdown) {
+                return false;
+            }
+            mQueues.get(priority.ordinal()).addLast(new Entry(task, priority, host, rateLimiter, SystemClock.elapsedRealtime()));
+        }
+        promote();
+        return true;
+    }
+
+    void enqueue(Runnable task, Priority priority) {
+        enqueue(task, priority, null, null);
+    }
+
+    void enqueue(Runnable task, Priority priority, String host, RateLimiter rateLimiter) {
+        boolean shutdown;
+        synchronized (this) {
+            shutdown = mShutdown;
+            if(!shutdown) {
+                mQueues.get(priority.ordinal()).addLast(new Entry(task, priority, host, rateLimiter, SystemClock.elapsedRealtime()));
+            }
+        }
+        if(shutdown) {
+            reject(task);
+            return;
+        }
+        promote();
+    }
+
+    void enqueueDelayed(Runnable task, Priority priority, String host, RateLimiter rateLimiter, long delay) {
+        final Entry entry = new Entry(task, priority, host, rateLimiter, 0);
+        try {
+            synchronized (this) {
+                getTimer().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (RequestScheduler.this) {
+                            if(!mDelayed.remove(entry)) {
+                                return;
+                            }
+                        }
+                        enqueue(entry.task, entry.priority, entry.host, entry.rateLimiter);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                mDelayed.add(entry);
+            }
+        } catch (RejectedExecutionException e) {
+            reject(task);
+        }
+    }
+
+    // Fails everything still queued, including delayed retries that have not
+    // come due, and stops the wake-up timer. Tasks already running finish;
+    // anything enqueued from now on is failed straight away.
+    void shutdown() {
+        List<Entry> dropped = new ArrayList<>();
+        synchronized (this) {
+            if(mShutdown) {
+                return;
+            }
+            mShutdown = true;
+            for(ArrayDeque<Entry> queue : mQueues) {
+                dropped.addAll(queue);
+                queue.clear();
+            }
+            dropped.addAll(mDelayed);
+            mDelayed.clear();
+            if(mTimer != null) {
+                mTimer.shutdownNow();
+                mTimer = null;
+            }
+            notifyAll();
+        }
+        for(Entry entry : dropped) {
+            reject(entry.task);
+        }
+    }
+
+    synchronized boolean isShutdown() {
+        return mShutdown;
+    }
+
+    private static void reject(Runnable task) {
+        if(task instanceof Rejectable) {
+            ((Rejectable) task).reject(new RejectedExecutionException("Scheduler is shut down"));
+        }
+    }
+
+    synchronized boolean dequeue(Runnable task) {
+        for(ArrayDeque<Entry> queue : mQueues) {
+            for(Iterator<Entry> iterator = queue.iterator(); iterator.hasNext(); ) {
+                if(iterator.next().task == task) {
+                    iterator.remove();
+                    notifyAll();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Moves a queued task to another priority, keeping its enqueue time so it
+    // lines up behind whatever was queued there before it. Returns false if
+    // the task is not queued.
+    boolean reprioritize(Runnable task, Priority priority) {
+        synchronized (this) {
+            Entry found = null;
+            for(ArrayDeque<Entry> queue : mQueues) {
+                for(Iterator<Entry> iterator = queue.iterator(); iterator.hasNext(); ) {
+                    Entry entry = iterator.next();
+                    if(entry.task == task) {
+                        iterator.remove();
+                        found = entry;
+                        break;
+                    }
+                }
+                if(found != null) {
+                    break;
+                }
+            }
+            if(found == null) {
+                return false;
+            }
+            Entry moved = new Entry(task, priority, found.host, found.rateLimiter, found.enqueuedAt);
+            ArrayDeque<Entry> target = mQueues.get(priority.ordinal());
+            if(target.isEmpty() || target.peekLast().enqueuedAt <= moved.enqueuedAt) {
+                target.addLast(moved);
+            } else {
+                ArrayDeque<Entry> reordered = new ArrayDeque<>(target.size() + 1);
+                for(Entry entry : target) {
+                    if(moved != null && entry.enqueuedAt > moved.enqueuedAt) {
+                        reordered.addLast(moved);
+                        moved = null;
+                    }
+                    reordered.addLast(entry);
+                }
+                target.clear();
+                target.addAll(reordered);
+            }
+        }
+        promote();
+        return true;
+    }
+
+    synchronized List<Runnable> queuedTasks(Priority priority) {
+        ArrayDeque<Entry> queue = mQueues.get(priority.ordinal());
+        List<Runnable> tasks = new ArrayList<>(queue.size());
+        for(Entry entry : queue) {
+            tasks.add(entry.task);
+        }
+        return tasks;
+    }
+
+    synchronized int queuedCount() {
+        int queued = 0;
+        for(ArrayDeque<Entry> queue : mQueues) {
+            queued += queue.size();
+        }
+        return queued;
+    }
+
+    synchronized int runningCount() {
+        return mRunning;
+    }
+
+    synchronized int runningCount(String host) {
+        Integer running = mHostRunning.get(host);
+        return running != null ? running : 0;
+    }
+
+    private void finished(Entry entry) {
+        release(entry);
+        promote();
+    }
+
+    private synchronized void release(Entry entry) {
+        mRunning--;
+        if(entry.priority.isBackground()) {
+            mBackgroundRunning--;
+        }
+        if(entry.host != null) {
+            int running = mHostRunning.get(entry.host) - 1;
+            if(running == 0) {
+                mHostRunning.remove(entry.host);
+            } else {
+                mHostRunning.put(entry.host, running);
+            }
+        }
+    }
+
+    // A rejected entry frees its slot for whatever is still queued, so keep
+    // promoting until a pass hands everything it took to the executor.
+    private void promote() {
+        boolean rejected;
+        do {
+            rejected = promoteReady();
+        } while (rejected);
+    }
+
+    private boolean promoteReady() {
+        List<Entry> ready = null;
+        boolean rejected = false;
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            Entry next = null;
+            mRateLimitDelay = Long.MAX_VALUE;
+            while (mRunning < mMaxRunning && (next = pollNext(now)) != null) {
+                mRunning++;
+                if(next.priority.isBackground()) {
+                    mBackgroundRunning++;
+                }
+                if(next.host != null) {
+                    mHostRunning.put(next.host, runningCount(next.host) + 1);
+                }
+                if(next.rateLimiter != null) {
+                    next.rateLimiter.acquire(now);
+                }
+                if(ready == null) {
+                    ready = new ArrayList<>();
+                }
+                ready.add(next);
+            }
+            if(next == null && mRateLimitDelay != Long.MAX_VALUE) {
+                scheduleWakeUp(now, mRateLimitDelay);
+            }
+            if(ready != null) {
+                notifyAll();
+            }
+        }
+        if(ready != null) {
+            for(Entry entry : ready) {
+                try {
+                    mExecutor.execute(entry);
+                } catch (RejectedExecutionException e) {
+                    // A caller-supplied executor that is saturated or shut
+                    // down. Fail the request rather than leak its slot.
+                    release(entry);
+                    if(entry.task instanceof Rejectable) {
+                        ((Rejectable) entry.task).reject(e);
+                    }
+                    rejected = true;
+                }
+            }
+        }
+        return rejected;
+    }
+
+    private Entry pollNext(long now) {
+        ArrayDeque<Entry> best = null;
+        Entry bestEntry = null;
+        long bestRank = Long.MAX_VALUE;
+        mRateLimitDelay = Long.MAX_VALUE;
+        for(ArrayDeque<Entry> queue : mQueues) {
+            Entry candidate = nextAdmissible(queue, now);
+            if(candidate == null) {
+                continue;
+            }
+            long rank = candidate.priority.ordinal();
+            if(mAgingInterval > 0) {
+                rank = Math.max(0, rank - (now - candidate.enqueuedAt) / mAgingInterval);
+            }
+            if(rank < bestRank) {
+                best = queue;
+                bestEntry = candidate;
+                bestRank = rank;
+            }
+        }
+        if(best != null) {
+            best.removeFirstOccurrence(bestEntry);
+        }
+        return bestEntry;
+    }
+
+    private Entry nextAdmissible(ArrayDeque<Entry> queue, long now) {
+        for(Entry entry : queue) {
+            if(entry.priority.isBackground() && mBackgroundRunning >= mMaxBackgroundRunning) {
+                return null;
+            }
+            if(entry.host != null && runningCount(entry.host) >= mMaxRunningPerHost) {
+                continue;
+            }
+            if(entry.rateLimiter != null) {
+                long delay = entry.rateLimiter.getDelay(now);
+                if(delay > 0) {
+                    mRateLimitDelay = Math.min(mRateLimitDelay, delay);
+                    continue;
+                }
+            }
+            return entry;
+        }
+        return null;
+    }
+
+    private void scheduleWakeUp(long now, long delay) {
+        if(mShutdown) {
+            return;
+        }
+        long wakeUpAt = now + delay;
+        if(mWakeUpAt != 0 && mWakeUpAt <= wakeUpAt) {
+            return;
+        }
+        mWakeUpAt = wakeUpAt;
+        getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (RequestScheduler.this) {
+                    mWakeUpAt = 0;
+                }
+                promote();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized ScheduledExecutorService getTimer() {
+        if(mShutdown) {
+            throw new RejectedExecutionException("Scheduler is shut down");
+        }
+        if(mTimer == null) {
+            mTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "siesta-scheduler-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mTimer;
+    }
+}
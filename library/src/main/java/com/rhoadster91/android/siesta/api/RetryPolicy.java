@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.request.RESTApiRequest;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+
+public class RetryPolicy {
+
+    public static final long DEFAULT_BASE_DELAY = 500;
+    public static final long DEFAULT_MAX_DELAY = 30 * 1000;
+
+    private static final Random sRandom = new Random();
+
+    private final int mMaxRetries;
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    private final Set<Integer> mRetryableMethods = new HashSet<>();
+    private boolean mRespectRetryAfter = true;
+
+    public RetryPolicy(int maxRetries) {
+        this(maxRetries, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+        if(maxRetries < 0 || baseDelay <= 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("Invalid retry policy: maxRetries=" + maxRetries + ", baseDelay=" + baseDelay + ", maxDelay=" + maxDelay);
+        }
+        mMaxRetries = maxRetries;
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+        withMethods(RESTApiRequest.METHOD_GET, RESTApiRequest.METHOD_PUT, RESTApiRequest.METHOD_DELETE);
+    }
+
+    public RetryPolicy withMethods(int... methods) {
+        mRetryableMethods.clear();
+        for(int method : methods) {
+            mRetryableMethods.add(method);
+        }
+        return this;
+    }
+
+    public RetryPolicy withRetryAfter(boolean respectRetryAfter) {
+        mRespectRetryAfter = respectRetryAfter;
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    public boolean shouldRetry(int method, int attempt, int responseCode, Throwable t) {
+        if(attempt >= mMaxRetries || !mRetryableMethods.contains(method)) {
+            return false;
+        }
+        if(t instanceof CircuitBreakerOpenException) {
+            return false;
+        }
+        return t != null || isRetryableStatus(responseCode);
+    }
+
+    public long getDelay(int attempt, String retryAfter) {
+        if(mRespectRetryAfter && retryAfter != null) {
+            // A server asking for more than maxDelay still gets retried at
+            // maxDelay rather than parking the request indefinitely.
+            long delay = parseRetryAfter(retryAfter);
+            if(delay >= 0) {
+                return Math.min(delay, mMaxDelay);
+            }
+        }
+        long ceiling = mBaseDelay << Math.min(attempt, 30);
+        if(ceiling <= 0 || ceiling > mMaxDelay) {
+            ceiling = mMaxDelay;
+        }
+        synchronized (sRandom) {
+            return (long) (sRandom.nextDouble() * ceiling);
+        }
+    }
+
+    static boolean isRetryableStatus(int responseCode) {
+        return responseCode == 408 || responseCode == 429 || responseCode >= 500;
+    }
+
+    static long parseRetryAfter(String retryAfter) {
+        retryAfter = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(retryAfter);
+            if(seconds <= 0) {
+                return 0;
+            }
+            return seconds > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : seconds * 1000;
+        } catch (NumberFormatException ignored) {
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(retryAfter).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
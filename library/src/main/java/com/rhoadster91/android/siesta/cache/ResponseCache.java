@@ -0,0 +1,219 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.cache;
+
+import android.os.SystemClock;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ResponseCache {
+
+    public static class Entry {
+
+        private final int code;
+        private final Object response;
+        private final int size;
+        private final long expiresAt;
+        private final String validator;
+
+        Entry(int code, Object response, int size, long expiresAt, String validator) {
+            this.code = code;
+            this.response = response;
+            this.size = size;
+            this.expiresAt = expiresAt;
+            this.validator = validator;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public Object getResponse() {
+            return response;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        // Identifies the version of the response, such as its ETag, or null
+        // if the server sent nothing to tell versions apart.
+        public String getValidator() {
+            return validator;
+        }
+
+        public boolean isStale() {
+            return isExpired(SystemClock.elapsedRealtime());
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private final int mMaxEntries;
+    private final long mMaxSize;
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSize;
+    private long mMaxStaleness = Long.MAX_VALUE;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mPutCount;
+    private long mEvictionCount;
+    private long mExpiredCount;
+
+    public ResponseCache(int maxEntries, long maxSize) {
+        if(maxEntries <= 0 || maxSize <= 0) {
+            throw new IllegalArgumentException("maxEntries and maxSize must be positive");
+        }
+        mMaxEntries = maxEntries;
+        mMaxSize = maxSize;
+    }
+
+    // How long past its ttl an entry is kept for callers willing to accept
+    // stale responses. Until then expired entries only leave through LRU
+    // and size eviction.
+    public synchronized void setMaxStaleness(long maxStaleness) {
+        if(maxStaleness < 0) {
+            throw new IllegalArgumentException("maxStaleness must not be negative");
+        }
+        mMaxStaleness = maxStaleness;
+    }
+
+    public Entry get(String key) {
+        return get(key, 0);
+    }
+
+    // Returns entries up to maxStaleness past their ttl; callers can tell
+    // them apart with Entry.isStale(). An entry too stale for this caller is
+    // kept for callers that accept more staleness.
+    public synchronized Entry get(String key, long maxStaleness) {
+        Entry entry = mEntries.get(key);
+        if(entry == null) {
+            mMissCount++;
+            return null;
+        }
+        long staleness = SystemClock.elapsedRealtime() - entry.expiresAt;
+        if(staleness >= mMaxStaleness) {
+            mEntries.remove(key);
+            mSize -= entry.size;
+            mExpiredCount++;
+            mMissCount++;
+            return null;
+        }
+        if(staleness >= maxStaleness) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return entry;
+    }
+
+    // Unlike get, does not count towards the hit and miss statistics.
+    public synchronized boolean contains(String key) {
+        Entry entry = mEntries.get(key);
+        return entry != null && !entry.isExpired(SystemClock.elapsedRealtime());
+    }
+
+    public void put(String key, int code, Object response, long ttl, int size) {
+        put(key, code, response, ttl, size, null);
+    }
+
+    public synchronized void put(String key, int code, Object response, long ttl, int size, String validator) {
+        if(ttl <= 0 || size < 0 || size > mMaxSize) {
+            remove(key);
+            return;
+        }
+        Entry previous = mEntries.put(key, new Entry(code, response, size, SystemClock.elapsedRealtime() + ttl, validator));
+        if(previous != null) {
+            mSize -= previous.size;
+        }
+        mSize += size;
+        mPutCount++;
+        trimToBounds();
+    }
+
+    public synchronized void remove(String key) {
+        Entry previous = mEntries.remove(key);
+        if(previous != null) {
+            mSize -= previous.size;
+        }
+    }
+
+    public synchronized void evictAll() {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    private void trimToBounds() {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while ((mEntries.size() > mMaxEntries || mSize > mMaxSize) && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            mSize -= eldest.size;
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized int entryCount() {
+        return mEntries.size();
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public int maxEntries() {
+        return mMaxEntries;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized long hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long missCount() {
+        return mMissCount;
+    }
+
+    public synchronized long putCount() {
+        return mPutCount;
+    }
+
+    public synchronized long evictionCount() {
+        return mEvictionCount;
+    }
+
+    public synchronized long expiredCount() {
+        return mExpiredCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long accesses = mHitCount + mMissCount;
+        int hitPercent = accesses != 0 ? (int) (100 * mHitCount / accesses) : 0;
+        return String.format("ResponseCache[entries=%d/%d,size=%d/%d,hits=%d,misses=%d,evictions=%d,hitRate=%d%%]",
+                mEntries.size(), mMaxEntries, mSize, mMaxSize, mHitCount, mMissCount, mEvictionCount, hitPercent);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import java.util.ArrayDeque;
+
+class BufferPool {
+
+    static final int SEGMENT_SIZE = 8192;
+    private static final int MAX_POOLED_SEGMENTS = 32;
+
+    private static final ArrayDeque<byte[]> sPool = new ArrayDeque<>(MAX_POOLED_SEGMENTS);
+
+    private BufferPool() {
+    }
+
+    static byte[] acquire() {
+        synchronized (sPool) {
+            byte[] segment = sPool.pollFirst();
+            if(segment != null) {
+                return segment;
+            }
+        }
+        return new byte[SEGMENT_SIZE];
+    }
+
+    static void release(byte[] segment) {
+        if(segment == null || segment.length != SEGMENT_SIZE) {
+            return;
+        }
+        synchronized (sPool) {
+            if(sPool.size() < MAX_POOLED_SEGMENTS) {
+                sPool.offerFirst(segment);
+            }
+        }
+    }
+}
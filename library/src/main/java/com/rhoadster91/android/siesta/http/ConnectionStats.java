@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counts the connections a UrlConnectionTransport opens and releases. It does
+// not pool anything itself: HttpURLConnection keeps its own process-wide pool,
+// which UrlConnectionTransport.setKeepAlive configures.
+public class ConnectionStats {
+
+    private final ConcurrentHashMap<String, AtomicInteger> mActiveByHost = new ConcurrentHashMap<>();
+    private final AtomicInteger mActiveCount = new AtomicInteger();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mReusableCount = new AtomicLong();
+    private final AtomicLong mDiscardedCount = new AtomicLong();
+    private final AtomicLong mTimeoutCount = new AtomicLong();
+
+    void onOpen(String host) {
+        mRequestCount.incrementAndGet();
+        mActiveCount.incrementAndGet();
+        AtomicInteger active = mActiveByHost.get(host);
+        if(active == null) {
+            AtomicInteger created = new AtomicInteger();
+            active = mActiveByHost.putIfAbsent(host, created);
+            if(active == null) {
+                active = created;
+            }
+        }
+        active.incrementAndGet();
+    }
+
+    void onRelease(String host, boolean reusable) {
+        mActiveCount.decrementAndGet();
+        AtomicInteger active = mActiveByHost.get(host);
+        if(active != null) {
+            active.decrementAndGet();
+        }
+        if(reusable) {
+            mReusableCount.incrementAndGet();
+        } else {
+            mDiscardedCount.incrementAndGet();
+        }
+    }
+
+    void onTimeout() {
+        mTimeoutCount.incrementAndGet();
+    }
+
+    public int getActiveCount() {
+        return mActiveCount.get();
+    }
+
+    public int getActiveCount(String host) {
+        AtomicInteger active = mActiveByHost.get(host);
+        return active != null ? active.get() : 0;
+    }
+
+    public Map<String, Integer> getActiveCountsByHost() {
+        Map<String, Integer> counts = new HashMap<>();
+        for(Map.Entry<String, AtomicInteger> entry : mActiveByHost.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getReusableCount() {
+        return mReusableCount.get();
+    }
+
+    public long getDiscardedCount() {
+        return mDiscardedCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return mTimeoutCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionStats[requests=%d,active=%d,reusable=%d,discarded=%d,timeouts=%d]",
+                getRequestCount(), getActiveCount(), getReusableCount(), getDiscardedCount(), getTimeoutCount());
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.api.Api;
+import com.rhoadster91.android.siesta.metrics.RequestTrace;
+import com.rhoadster91.android.siesta.request.Cancellable;
+import com.rhoadster91.android.siesta.request.RESTApiRequest;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+import com.rhoadster91.android.siesta.api.capability.Deletable;
+import com.rhoadster91.android.siesta.api.capability.Gettable;
+import com.rhoadster91.android.siesta.api.capability.Postable;
+import com.rhoadster91.android.siesta.api.capability.Puttable;
+import com.rhoadster91.android.siesta.request.DeleteRequest;
+import com.rhoadster91.android.siesta.request.GetRequest;
+import com.rhoadster91.android.siesta.request.PostRequest;
+import com.rhoadster91.android.siesta.request.PutRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public abstract class HttpApiRequest<T> extends RESTApiRequest implements GetRequest<T>, PostRequest<T>, PutRequest<T>, DeleteRequest<T> {
+
+    private static volatile HttpTransport sDefaultTransport = new UrlConnectionTransport();
+
+    public static HttpTransport getDefaultTransport() {
+        return sDefaultTransport;
+    }
+
+    public static void setDefaultTransport(HttpTransport transport) {
+        sDefaultTransport = transport;
+    }
+
+    protected final HttpTransport mTransport;
+
+    protected HttpApiRequest() {
+        this(null);
+    }
+
+    protected HttpApiRequest(HttpTransport transport) {
+        mTransport = transport != null ? transport : sDefaultTransport;
+    }
+
+    protected abstract void doRequest(Api api, Map<String, String> params, Map<String, String> headers, int method, ResponseWrapper<T> responseWrapper) throws Throwable;
+
+    protected URL buildUrl(Api api, Map<String, String> params, int method) throws IOException {
+        if (method == METHOD_GET || method == METHOD_DELETE) {
+            return new URL(api.processGetParams(params));
+        } else {
+            return new URL(api.getApiUrl());
+        }
+    }
+
+    protected HttpURLConnection openConnection(Api api, URL url, Map<String, String> headers, int method, ResponseWrapper<T> responseWrapper) throws IOException {
+        final HttpURLConnection urlConnection = mTransport.open(api, url);
+        responseWrapper.setCancellable(new Cancellable() {
+            @Override
+            public void cancel() {
+                urlConnection.disconnect();
+            }
+        });
+
+        try {
+            for(Map.Entry<String, String> header : headers.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            if(api.isResponseCompressionEnabled() && urlConnection.getRequestProperty("Accept-Encoding") == null) {
+                urlConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            }
+
+            urlConnection.setRequestMethod(getMethodAsString(method));
+        } catch (IOException | RuntimeException e) {
+            abort(urlConnection, responseWrapper);
+            throw e;
+        }
+        return urlConnection;
+    }
+
+    protected int execute(HttpURLConnection urlConnection, Api api, Map<String, String> params, int method, ResponseWrapper<T> responseWrapper) throws IOException {
+        RequestTrace trace = responseWrapper.getTrace();
+        byte[] body = null;
+        if (method == METHOD_POST || method == METHOD_PUT) {
+            urlConnection.setDoInput(true);
+            urlConnection.setDoOutput(true);
+            body = api.processPutParams(params).getBytes("UTF-8");
+            int compressionThreshold = api.getRequestCompressionThreshold();
+            if(compressionThreshold >= 0 && body.length >= compressionThreshold) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2);
+                GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                gzip.write(body);
+                gzip.close();
+                body = compressed.toByteArray();
+                urlConnection.setRequestProperty("Content-Encoding", "gzip");
+            }
+        }
+        if(trace != null) {
+            urlConnection.connect();
+            trace.mark(RequestTrace.Phase.CONNECTED);
+        }
+        if(body != null) {
+            OutputStream os = urlConnection.getOutputStream();
+            os.write(body);
+            os.flush();
+            os.close();
+            responseWrapper.setBytesSent(body.length);
+        }
+        int responseCode = urlConnection.getResponseCode();
+        if(trace != null) {
+            trace.mark(RequestTrace.Phase.FIRST_BYTE);
+        }
+        responseWrapper.setHeaders(urlConnection.getHeaderFields());
+        return responseCode;
+    }
+
+    protected InputStream getResponseStream(HttpURLConnection urlConnection, int responseCode, ResponseWrapper<T> responseWrapper) throws IOException {
+        InputStream in = responseCode >= HttpURLConnection.HTTP_BAD_REQUEST ? urlConnection.getErrorStream() : urlConnection.getInputStream();
+        if(in != null) {
+            in = new CountingInputStream(in, responseWrapper);
+        }
+        String contentEncoding = urlConnection.getContentEncoding();
+        if(in == null || contentEncoding == null || responseCode == HttpURLConnection.HTTP_NO_CONTENT
+                || responseCode == HttpURLConnection.HTTP_NOT_MODIFIED || urlConnection.getContentLength() == 0) {
+            return in;
+        }
+        if("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(in, BufferPool.SEGMENT_SIZE);
+        } else if("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    protected int getDecodedContentLength(HttpURLConnection urlConnection) {
+        String contentEncoding = urlConnection.getContentEncoding();
+        if(contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding)) {
+            return -1;
+        }
+        return urlConnection.getContentLength();
+    }
+
+    protected void release(HttpURLConnection urlConnection, InputStream body, ResponseWrapper<T> responseWrapper) {
+        responseWrapper.setCancellable(null);
+        if(responseWrapper.isCancelled()) {
+            mTransport.abort(urlConnection);
+        } else {
+            mTransport.release(urlConnection, body);
+        }
+    }
+
+    protected void abort(HttpURLConnection urlConnection, ResponseWrapper<T> responseWrapper) {
+        responseWrapper.setCancellable(null);
+        mTransport.abort(urlConnection);
+    }
+
+    protected String getMethodAsString(int method) {
+        switch (method) {
+            case METHOD_DELETE:
+                return "DELETE";
+            case METHOD_PUT:
+                return "PUT";
+            case METHOD_POST:
+                return "POST";
+            default:
+            case METHOD_GET:
+                return "GET";
+        }
+    }
+
+
+    @Override
+    public <A extends Api & Gettable<T>> void get(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<T> responseWrapper) throws Throwable {
+        doRequest(api, params, headers, METHOD_GET, responseWrapper);
+    }
+
+    @Override
+    public <A extends Api & Deletable<T>> void delete(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<T> responseWrapper) throws Throwable {
+        doRequest(api, params, headers, METHOD_DELETE, responseWrapper);
+    }
+
+    @Override
+    public <A extends Api & Postable<T>> void post(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<T> responseWrapper) throws Throwable {
+        doRequest(api, params, headers, METHOD_POST, responseWrapper);
+    }
+
+    @Override
+    public <A extends Api & Puttable<T>> void put(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<T> responseWrapper) throws Throwable {
+        doRequest(api, params, headers, METHOD_PUT, responseWrapper);
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class HttpDiskCache {
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+    private static final String JOURNAL_MAGIC = "siesta.HttpDiskCache";
+    private static final int JOURNAL_VERSION = 1;
+
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    public static class Entry {
+
+        private final int code;
+        private final String etag;
+        private final String lastModified;
+        private final String contentType;
+        private final long storedAt;
+        private final long maxAge;
+        private final byte[] body;
+
+        public Entry(int code, String etag, String lastModified, String contentType, long storedAt, long maxAge, byte[] body) {
+            this.code = code;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.storedAt = storedAt;
+            this.maxAge = maxAge;
+            this.body = body;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public long getStoredAt() {
+            return storedAt;
+        }
+
+        public long getMaxAge() {
+            return maxAge;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public boolean isFresh(long now) {
+            return maxAge > 0 && now - storedAt < maxAge;
+        }
+
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        Entry refresh(long storedAt, long maxAge) {
+            return new Entry(code, etag, lastModified, contentType, storedAt, maxAge, body);
+        }
+    }
+
+    private final File mDirectory;
+    private final long mMaxSize;
+
+    private final LinkedHashMap<String, Long> mIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<File> mWriting = new HashSet<>();
+    private long mSize;
+    private int mRedundantOpCount;
+    private Writer mJournalWriter;
+
+    public HttpDiskCache(File directory, long maxSize) throws IOException {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + directory);
+        }
+        File journal = new File(directory, JOURNAL_FILE);
+        if(journal.exists()) {
+            try {
+                readJournal(journal);
+                mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), "UTF-8"));
+                deleteOrphans();
+            } catch (IOException e) {
+                mIndex.clear();
+                mSize = 0;
+            }
+        }
+        if(mJournalWriter == null) {
+            rebuildJournal();
+        }
+        trimToSize();
+    }
+
+    public Entry get(String url) {
+        String key = keyFor(url);
+        synchronized (this) {
+            if(mIndex.get(key) == null) {
+                return null;
+            }
+            journal(READ, key, null);
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(entryFile(key)));
+            if(!url.equals(in.readUTF())) {
+                return null;
+            }
+            int code = in.readInt();
+            String etag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            String contentType = emptyToNull(in.readUTF());
+            long storedAt = in.readLong();
+            long maxAge = in.readLong();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(code, etag, lastModified, contentType, storedAt, maxAge, body);
+        } catch (FileNotFoundException e) {
+            // Deleted behind our back; stop counting it towards the size.
+            synchronized (this) {
+                if(!entryFile(key).exists()) {
+                    removeKey(key);
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            remove(url);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    public void put(String url, Entry entry) {
+        String key = keyFor(url);
+        File tmp = null;
+        DataOutputStream out = null;
+        try {
+            synchronized (this) {
+                tmp = File.createTempFile(key, TMP_SUFFIX, mDirectory);
+                mWriting.add(tmp);
+            }
+            out = new DataOutputStream(new FileOutputStream(tmp));
+            out.writeUTF(url);
+            out.writeInt(entry.code);
+            out.writeUTF(nullToEmpty(entry.etag));
+            out.writeUTF(nullToEmpty(entry.lastModified));
+            out.writeUTF(nullToEmpty(entry.contentType));
+            out.writeLong(entry.storedAt);
+            out.writeLong(entry.maxAge);
+            out.writeInt(entry.body.length);
+            out.write(entry.body);
+            out.close();
+            out = null;
+            synchronized (this) {
+                // Making room for an entry larger than the whole cache would
+                // evict everything else before evicting the entry itself.
+                if(tmp.length() > mMaxSize) {
+                    removeKey(key);
+                    return;
+                }
+                File target = entryFile(key);
+                if(!tmp.renameTo(target)) {
+                    throw new IOException("Unable to commit cache entry " + target);
+                }
+                mWriting.remove(tmp);
+                tmp = null;
+                Long previous = mIndex.put(key, target.length());
+                if(previous != null) {
+                    mSize -= previous;
+                    mRedundantOpCount++;
+                }
+                mSize += target.length();
+                journal(CLEAN, key, target.length());
+                trimToSize();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(out);
+            if(tmp != null) {
+                tmp.delete();
+                synchronized (this) {
+                    mWriting.remove(tmp);
+                }
+            }
+        }
+    }
+
+    public void update(String url, Entry entry, long storedAt, long maxAge) {
+        put(url, entry.refresh(storedAt, maxAge));
+    }
+
+    public synchronized void remove(String url) {
+        removeKey(keyFor(url));
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int entryCount() {
+        return mIndex.size();
+    }
+
+    public synchronized void close() {
+        closeQuietly(mJournalWriter);
+        mJournalWriter = null;
+    }
+
+    private void removeKey(String key) {
+        Long previous = mIndex.remove(key);
+        if(previous != null) {
+            mSize -= previous;
+            entryFile(key).delete();
+            journal(REMOVE, key, null);
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mIndex.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            mSize -= eldest.getValue();
+            entryFile(eldest.getKey()).delete();
+            journal(REMOVE, eldest.getKey(), null);
+        }
+    }
+
+    private void readJournal(File journal) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8"));
+        try {
+            if(!JOURNAL_MAGIC.equals(reader.readLine()) || !String.valueOf(JOURNAL_VERSION).equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header");
+            }
+            String line;
+            int lineCount = 0;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                String[] parts = line.split(" ");
+                if(parts.length < 2) {
+                    continue;
+                }
+                String key = parts[1];
+                if(CLEAN.equals(parts[0]) && parts.length == 3) {
+                    try {
+                        long size = Long.parseLong(parts[2]);
+                        Long previous = mIndex.put(key, size);
+                        if(previous != null) {
+                            mSize -= previous;
+                        }
+                        mSize += size;
+                    } catch (NumberFormatException ignored) {
+                    }
+                } else if(READ.equals(parts[0])) {
+                    mIndex.get(key);
+                } else if(REMOVE.equals(parts[0])) {
+                    Long previous = mIndex.remove(key);
+                    if(previous != null) {
+                        mSize -= previous;
+                    }
+                }
+            }
+            mRedundantOpCount = lineCount - mIndex.size();
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private void rebuildJournal() {
+        closeQuietly(mJournalWriter);
+        mJournalWriter = null;
+        File tmp = new File(mDirectory, JOURNAL_FILE_TMP);
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+            writer.write(JOURNAL_MAGIC + "\n" + JOURNAL_VERSION + "\n");
+            for(Map.Entry<String, Long> entry : mIndex.entrySet()) {
+                writer.write(CLEAN + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+            writer.close();
+            writer = null;
+            File journal = new File(mDirectory, JOURNAL_FILE);
+            if(!tmp.renameTo(journal)) {
+                throw new IOException("Unable to replace journal " + journal);
+            }
+            mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), "UTF-8"));
+            mRedundantOpCount = 0;
+            deleteOrphans();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    // Temp files and entries left behind by a process that died mid-put.
+    private void deleteOrphans() {
+        File[] files = mDirectory.listFiles();
+        if(files == null) {
+            return;
+        }
+        for(File file : files) {
+            String name = file.getName();
+            if(name.endsWith(ENTRY_SUFFIX)) {
+                if(!mIndex.containsKey(name.substring(0, name.length() - ENTRY_SUFFIX.length()))) {
+                    file.delete();
+                }
+            } else if(name.endsWith(TMP_SUFFIX) && !name.equals(JOURNAL_FILE_TMP) && !mWriting.contains(file)) {
+                file.delete();
+            }
+        }
+    }
+
+    private void journal(String op, String key, Long size) {
+        if(mJournalWriter == null) {
+            return;
+        }
+        try {
+            mJournalWriter.write(size == null ? op + " " + key + "\n" : op + " " + key + " " + size + "\n");
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if(!CLEAN.equals(op)) {
+            mRedundantOpCount++;
+        }
+        if(mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && mRedundantOpCount >= mIndex.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private File entryFile(String key) {
+        return new File(mDirectory, key + ENTRY_SUFFIX);
+    }
+
+    static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for(byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return String.valueOf(url.hashCode());
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.length() == 0 ? null : value;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if(closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
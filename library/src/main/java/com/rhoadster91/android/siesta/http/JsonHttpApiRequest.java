@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.json.JsonCodec;
+import com.rhoadster91.android.siesta.json.JsonCodecs;
+import com.rhoadster91.android.siesta.json.JsonResponseHandler;
+
+public class JsonHttpApiRequest<T> extends StreamingHttpApiRequest<T> {
+
+    public JsonHttpApiRequest(Class<T> type) {
+        this(null, JsonCodecs.get(type));
+    }
+
+    public JsonHttpApiRequest(JsonCodec<T> codec) {
+        this(null, codec);
+    }
+
+    public JsonHttpApiRequest(HttpTransport transport, JsonCodec<T> codec) {
+        super(transport, new JsonResponseHandler<>(codec));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public final class ResponseBodyReader {
+
+    public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    private static final int MAX_PRESIZE = 16 * 1024 * 1024;
+
+    private ResponseBodyReader() {
+    }
+
+    public static byte[] readBytes(InputStream in, long contentLength) throws IOException {
+        if(in == null) {
+            return new byte[0];
+        }
+        if(contentLength >= 0 && contentLength <= MAX_PRESIZE) {
+            return readKnownLength(in, (int) contentLength);
+        }
+        return readUnknownLength(in);
+    }
+
+    public static String readString(InputStream in, long contentLength, String contentType) throws IOException {
+        byte[] bytes = readBytes(in, contentLength);
+        return new String(bytes, charsetOf(contentType));
+    }
+
+    public static Charset charsetOf(String contentType) {
+        if(contentType != null) {
+            for(String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if(parameter.regionMatches(true, 0, "charset=", 0, "charset=".length())) {
+                    String name = parameter.substring("charset=".length()).trim();
+                    if(name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+                        name = name.substring(1, name.length() - 1);
+                    }
+                    try {
+                        return Charset.forName(name.toUpperCase(Locale.US));
+                    } catch (IllegalArgumentException e) {
+                        return DEFAULT_CHARSET;
+                    }
+                }
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+
+    private static byte[] readKnownLength(InputStream in, int contentLength) throws IOException {
+        byte[] body = new byte[contentLength];
+        int offset = 0;
+        while (offset < contentLength) {
+            int read = in.read(body, offset, contentLength - offset);
+            if(read == -1) {
+                throw new EOFException("Expected " + contentLength + " bytes but received " + offset);
+            }
+            offset += read;
+        }
+        return body;
+    }
+
+    private static byte[] readUnknownLength(InputStream in) throws IOException {
+        List<byte[]> segments = new ArrayList<>();
+        int total = 0;
+        int lastSegmentLength = BufferPool.SEGMENT_SIZE;
+        try {
+            while (true) {
+                if(lastSegmentLength == BufferPool.SEGMENT_SIZE) {
+                    segments.add(BufferPool.acquire());
+                    lastSegmentLength = 0;
+                }
+                int read = in.read(segments.get(segments.size() - 1), lastSegmentLength, BufferPool.SEGMENT_SIZE - lastSegmentLength);
+                if(read == -1) {
+                    break;
+                }
+                lastSegmentLength += read;
+                total += read;
+            }
+            byte[] body = new byte[total];
+            int offset = 0;
+            for(byte[] segment : segments) {
+                int length = Math.min(BufferPool.SEGMENT_SIZE, total - offset);
+                System.arraycopy(segment, 0, body, offset, length);
+                offset += length;
+            }
+            return body;
+        } finally {
+            for(byte[] segment : segments) {
+                BufferPool.release(segment);
+            }
+        }
+    }
+}
@@ -17,105 +17,162 @@
 package com.rhoadster91.android.siesta.http;
 
 import com.rhoadster91.android.siesta.api.Api;
-import com.rhoadster91.android.siesta.request.RESTApiRequest;
 import com.rhoadster91.android.siesta.response.ResponseWrapper;
-import com.rhoadster91.android.siesta.api.capability.Deletable;
-import com.rhoadster91.android.siesta.api.capability.Gettable;
-import com.rhoadster91.android.siesta.api.capability.Postable;
-import com.rhoadster91.android.siesta.api.capability.Puttable;
-import com.rhoadster91.android.siesta.request.DeleteRequest;
-import com.rhoadster91.android.siesta.request.GetRequest;
-import com.rhoadster91.android.siesta.request.PostRequest;
-import com.rhoadster91.android.siesta.request.PutRequest;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Locale;
 import java.util.Map;
 
-public class SimpleHttpApiRequest extends RESTApiRequest implements GetRequest<String>, PostRequest<String>, PutRequest<String>, DeleteRequest<String> {
+public class SimpleHttpApiRequest extends HttpApiRequest<String> {
 
-    private void doRequest(Api api, Map<String, String> params, Map<String, String> headers, int method, ResponseWrapper<String> responseWrapper) throws IOException {
-        int responseCode;
-        URL url;
-        HttpURLConnection urlConnection;
+    private static final String[] CREDENTIAL_HEADERS = {"Authorization", "Cookie"};
 
-        if (method == METHOD_GET || method == METHOD_DELETE) {
-            url = new URL(api.processGetParams(params));
-        } else {
-            url = new URL(api.getApiUrl());
-        }
-
-
-        urlConnection = (HttpURLConnection) url
-                .openConnection();
+    private final HttpDiskCache mDiskCache;
 
+    public SimpleHttpApiRequest() {
+        this(null);
+    }
 
-        for(Map.Entry<String, String> header : headers.entrySet()) {
-            urlConnection.setRequestProperty(header.getKey(), header.getValue());
-        }
+    public SimpleHttpApiRequest(HttpDiskCache diskCache) {
+        this(null, diskCache);
+    }
 
-        urlConnection.setRequestMethod(getMethodAsString(method));
+    public SimpleHttpApiRequest(HttpTransport transport, HttpDiskCache diskCache) {
+        super(transport);
+        mDiskCache = diskCache;
+    }
 
-        if (method == METHOD_POST || method == METHOD_PUT) {
-            urlConnection.setDoInput(true);
-            urlConnection.setDoOutput(true);
-            OutputStream os = urlConnection.getOutputStream();
-            os.write(api.processPutParams(params).getBytes("UTF-8"));
-            os.flush();
-            os.close();
+    @Override
+    protected void doRequest(Api api, Map<String, String> params, Map<String, String> headers, int method, ResponseWrapper<String> responseWrapper) throws IOException {
+        URL url = buildUrl(api, params, method);
+
+        HttpDiskCache diskCache = method == METHOD_GET ? mDiskCache : null;
+        String cacheKey = diskCache != null ? cacheKey(url, headers) : null;
+        HttpDiskCache.Entry cached = diskCache != null ? diskCache.get(cacheKey) : null;
+        if(cached != null && cached.isFresh(System.currentTimeMillis())) {
+            responseWrapper.setCode(cached.getCode());
+            responseWrapper.setResponse(new String(cached.getBody(), ResponseBodyReader.charsetOf(cached.getContentType())));
+            return;
         }
 
-        responseCode = urlConnection.getResponseCode();
-        responseWrapper.setCode(responseCode);
-        InputStream in = urlConnection.getInputStream();
-
-        InputStreamReader isw = new InputStreamReader(in);
-        StringBuilder stringBuilder = new StringBuilder();
-        int data = isw.read();
-        while (data != -1) {
-            char current = (char) data;
-            data = isw.read();
-            stringBuilder.append(current);
+        HttpURLConnection urlConnection = openConnection(api, url, headers, method, responseWrapper);
+        boolean released = false;
+        try {
+            if(cached != null) {
+                if(cached.getEtag() != null) {
+                    urlConnection.setRequestProperty("If-None-Match", cached.getEtag());
+                }
+                if(cached.getLastModified() != null) {
+                    urlConnection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+                }
+            }
+
+            int responseCode = execute(urlConnection, api, params, method, responseWrapper);
+
+            if(responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                long maxAge = getMaxAge(urlConnection);
+                if(maxAge >= 0) {
+                    diskCache.update(cacheKey, cached, System.currentTimeMillis(), maxAge);
+                } else {
+                    diskCache.remove(cacheKey);
+                }
+                release(urlConnection, getResponseStream(urlConnection, responseCode, responseWrapper), responseWrapper);
+                released = true;
+                responseWrapper.setCode(cached.getCode());
+                responseWrapper.setResponse(new String(cached.getBody(), ResponseBodyReader.charsetOf(cached.getContentType())));
+                return;
+            }
+
+            responseWrapper.setCode(responseCode);
+            InputStream in = getResponseStream(urlConnection, responseCode, responseWrapper);
+            byte[] body = ResponseBodyReader.readBytes(in, getDecodedContentLength(urlConnection));
+            release(urlConnection, in, responseWrapper);
+            released = true;
+
+            if(diskCache != null) {
+                storeInCache(diskCache, cacheKey, urlConnection, responseCode, body);
+            }
+            responseWrapper.setResponse(new String(body, ResponseBodyReader.charsetOf(urlConnection.getContentType())));
+        } finally {
+            if(!released) {
+                abort(urlConnection, responseWrapper);
+            }
         }
-        responseWrapper.setResponse(stringBuilder.toString());
     }
 
-    private String getMethodAsString(int method) {
-        switch (method) {
-            case METHOD_DELETE:
-                return "DELETE";
-            case METHOD_PUT:
-                return "PUT";
-            case METHOD_POST:
-                return "POST";
-            default:
-            case METHOD_GET:
-                return "GET";
+    private void storeInCache(HttpDiskCache diskCache, String cacheKey, HttpURLConnection urlConnection, int responseCode, byte[] body) {
+        long maxAge = getMaxAge(urlConnection);
+        String etag = urlConnection.getHeaderField("ETag");
+        String lastModified = urlConnection.getHeaderField("Last-Modified");
+        if(responseCode != HttpURLConnection.HTTP_OK || maxAge < 0 || (maxAge == 0 && etag == null && lastModified == null)) {
+            diskCache.remove(cacheKey);
+            return;
         }
+        diskCache.put(cacheKey, new HttpDiskCache.Entry(responseCode, etag, lastModified, urlConnection.getContentType(),
+                System.currentTimeMillis(), maxAge, body));
     }
 
-
-    @Override
-    public <A extends Api & Gettable<String>> void get(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<String> responseWrapper) throws Throwable {
-        doRequest(api, params, headers, METHOD_GET, responseWrapper);
-    }
-
-    @Override
-    public <A extends Api & Deletable<String>> void delete(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<String> responseWrapper) throws Throwable {
-        doRequest(api, params, headers, METHOD_DELETE, responseWrapper);
-    }
-
-    @Override
-    public <A extends Api & Postable<String>> void post(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<String> responseWrapper) throws Throwable {
-        doRequest(api, params, headers, METHOD_POST, responseWrapper);
+    // Keys the cache on the URL and the credentials sent with it, so a
+    // response fetched for one user is never served to another. Entries store
+    // their key, so credentials go in as digests.
+    static String cacheKey(URL url, Map<String, String> headers) {
+        StringBuilder key = new StringBuilder(url.toString());
+        if(headers != null) {
+            for(String name : CREDENTIAL_HEADERS) {
+                for(Map.Entry<String, String> header : headers.entrySet()) {
+                    if(name.equalsIgnoreCase(header.getKey())) {
+                        key.append('\n').append(name).append(": ").append(HttpDiskCache.keyFor(header.getValue()));
+                    }
+                }
+            }
+        }
+        return key.toString();
     }
 
-    @Override
-    public <A extends Api & Puttable<String>> void put(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<String> responseWrapper) throws Throwable {
-        doRequest(api, params, headers, METHOD_PUT, responseWrapper);
+    // Returns the freshness lifetime in milliseconds, 0 if the response must
+    // be revalidated before reuse, or -1 if it must not be stored at all.
+    // Every directive is read, so no-store and private win wherever they
+    // appear. The disk cache outlives the session, so private responses are
+    // not stored, and neither are responses that vary on request headers
+    // other than Accept-Encoding, which the cache key does not capture.
+    static long getMaxAge(HttpURLConnection urlConnection) {
+        String vary = urlConnection.getHeaderField("Vary");
+        if(vary != null) {
+            for(String header : vary.split(",")) {
+                header = header.trim();
+                if(!header.isEmpty() && !header.equalsIgnoreCase("Accept-Encoding")) {
+                    return -1;
+                }
+            }
+        }
+        String cacheControl = urlConnection.getHeaderField("Cache-Control");
+        if(cacheControl != null) {
+            long maxAge = 0;
+            boolean noCache = false;
+            for(String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase(Locale.US);
+                if(directive.equals("no-store") || directive.equals("private") || directive.startsWith("private=")) {
+                    return -1;
+                } else if(directive.equals("no-cache") || directive.startsWith("no-cache=")) {
+                    noCache = true;
+                } else if(directive.startsWith("max-age=")) {
+                    try {
+                        long seconds = Long.parseLong(directive.substring("max-age=".length()).trim());
+                        maxAge = seconds > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : Math.max(0, seconds * 1000);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+            return noCache ? 0 : maxAge;
+        }
+        long expiration = urlConnection.getExpiration();
+        if(expiration > 0) {
+            long date = urlConnection.getDate();
+            return Math.max(0, expiration - (date > 0 ? date : System.currentTimeMillis()));
+        }
+        return 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.api.Api;
+import com.rhoadster91.android.siesta.response.ResponseStreamHandler;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+
+public class StreamingHttpApiRequest<T> extends HttpApiRequest<T> {
+
+    private final ResponseStreamHandler<T> mStreamHandler;
+
+    public StreamingHttpApiRequest(ResponseStreamHandler<T> streamHandler) {
+        this(null, streamHandler);
+    }
+
+    public StreamingHttpApiRequest(HttpTransport transport, ResponseStreamHandler<T> streamHandler) {
+        super(transport);
+        mStreamHandler = streamHandler;
+    }
+
+    @Override
+    protected void doRequest(Api api, Map<String, String> params, Map<String, String> headers, int method, ResponseWrapper<T> responseWrapper) throws Throwable {
+        HttpURLConnection urlConnection = openConnection(api, buildUrl(api, params, method), headers, method, responseWrapper);
+        boolean released = false;
+        try {
+            int responseCode = execute(urlConnection, api, params, method, responseWrapper);
+            responseWrapper.setCode(responseCode);
+            InputStream in = getResponseStream(urlConnection, responseCode, responseWrapper);
+            responseWrapper.setResponse(mStreamHandler.handleResponse(responseCode, in != null ? in : new ByteArrayInputStream(new byte[0]),
+                    ResponseBodyReader.charsetOf(urlConnection.getContentType())));
+            release(urlConnection, in, responseWrapper);
+            released = true;
+        } finally {
+            if(!released) {
+                abort(urlConnection, responseWrapper);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.api.Api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class UrlConnectionTransport implements HttpTransport {
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_DURATION = 5 * 60 * 1000;
+
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static ScheduledExecutorService sWatchdog;
+
+    private final ConnectionStats mConnectionStats;
+    private final ConcurrentHashMap<HttpURLConnection, ScheduledFuture<?>> mDeadlines = new ConcurrentHashMap<>();
+
+    public UrlConnectionTransport() {
+        this(new ConnectionStats());
+    }
+
+    public UrlConnectionTransport(ConnectionStats connectionStats) {
+        mConnectionStats = connectionStats;
+    }
+
+    // Sizes HttpURLConnection's own connection pool. The settings are system
+    // properties, so they apply to every HttpURLConnection in the process, and
+    // are read only when the pool is first used: call this once at startup,
+    // before any request is made. With no arguments the DEFAULT_ values are
+    // used.
+    public static void setKeepAlive() {
+        setKeepAlive(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_DURATION);
+    }
+
+    public static void setKeepAlive(int maxIdleConnections, long keepAliveDuration) {
+        if(maxIdleConnections < 0 || keepAliveDuration < 0) {
+            throw new IllegalArgumentException("maxIdleConnections and keepAliveDuration must not be negative");
+        }
+        System.setProperty("http.keepAlive", String.valueOf(maxIdleConnections > 0 && keepAliveDuration > 0));
+        System.setProperty("http.maxConnections", String.valueOf(maxIdleConnections));
+        System.setProperty("http.keepAliveDuration", String.valueOf(keepAliveDuration));
+    }
+
+    public ConnectionStats getConnectionStats() {
+        return mConnectionStats;
+    }
+
+    @Override
+    public HttpURLConnection open(Api api, URL url) throws IOException {
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(api.getConnectTimeout());
+        urlConnection.setReadTimeout(api.getReadTimeout());
+        mConnectionStats.onOpen(url.getHost());
+        long totalTimeout = api.getTotalTimeout();
+        if(totalTimeout > 0) {
+            mDeadlines.put(urlConnection, getWatchdog().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if(mDeadlines.remove(urlConnection) != null) {
+                        mConnectionStats.onTimeout();
+                        urlConnection.disconnect();
+                    }
+                }
+            }, totalTimeout, TimeUnit.MILLISECONDS));
+        }
+        return urlConnection;
+    }
+
+    @Override
+    public void release(HttpURLConnection urlConnection, InputStream body) {
+        cancelDeadline(urlConnection);
+        boolean reusable = drain(body);
+        if(!reusable) {
+            urlConnection.disconnect();
+        }
+        mConnectionStats.onRelease(urlConnection.getURL().getHost(), reusable);
+    }
+
+    @Override
+    public void abort(HttpURLConnection urlConnection) {
+        cancelDeadline(urlConnection);
+        urlConnection.disconnect();
+        mConnectionStats.onRelease(urlConnection.getURL().getHost(), false);
+    }
+
+    private void cancelDeadline(HttpURLConnection urlConnection) {
+        ScheduledFuture<?> deadline = mDeadlines.remove(urlConnection);
+        if(deadline != null) {
+            deadline.cancel(false);
+        }
+    }
+
+    private boolean drain(InputStream body) {
+        if(body == null) {
+            return true;
+        }
+        byte[] buffer = BufferPool.acquire();
+        try {
+            int drained = 0;
+            int read;
+            while (drained <= MAX_DRAIN_BYTES && (read = body.read(buffer)) != -1) {
+                drained += read;
+            }
+            if(drained > MAX_DRAIN_BYTES) {
+                return false;
+            }
+            body.close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getWatchdog() {
+        if(sWatchdog == null) {
+            ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "siesta-http-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sWatchdog = watchdog;
+        }
+        return sWatchdog;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.json;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class JsonCodecs {
+
+    private static final ConcurrentHashMap<Class<?>, JsonCodec<?>> sCodecs = new ConcurrentHashMap<>();
+
+    public static final JsonCodec<String> STRING = new JsonCodec<String>() {
+        @Override
+        public String read(JsonReader reader) throws IOException {
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return reader.nextString();
+        }
+    };
+
+    public static final JsonCodec<Boolean> BOOLEAN = new JsonCodec<Boolean>() {
+        @Override
+        public Boolean read(JsonReader reader) throws IOException {
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return reader.nextBoolean();
+        }
+    };
+
+    public static final JsonCodec<Integer> INTEGER = new JsonCodec<Integer>() {
+        @Override
+        public Integer read(JsonReader reader) throws IOException {
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return reader.nextInt();
+        }
+    };
+
+    public static final JsonCodec<Long> LONG = new JsonCodec<Long>() {
+        @Override
+        public Long read(JsonReader reader) throws IOException {
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return reader.nextLong();
+        }
+    };
+
+    public static final JsonCodec<Double> DOUBLE = new JsonCodec<Double>() {
+        @Override
+        public Double read(JsonReader reader) throws IOException {
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return reader.nextDouble();
+        }
+    };
+
+    public static final JsonCodec<Float> FLOAT = new JsonCodec<Float>() {
+        @Override
+        public Float read(JsonReader reader) throws IOException {
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return (float) reader.nextDouble();
+        }
+    };
+
+    public static final JsonCodec<Void> VOID = new JsonCodec<Void>() {
+        @Override
+        public Void read(JsonReader reader) throws IOException {
+            reader.skipValue();
+            return null;
+        }
+    };
+
+    static {
+        sCodecs.put(Void.class, VOID);
+        sCodecs.put(String.class, STRING);
+        sCodecs.put(Boolean.class, BOOLEAN);
+        sCodecs.put(boolean.class, BOOLEAN);
+        sCodecs.put(Integer.class, INTEGER);
+        sCodecs.put(int.class, INTEGER);
+        sCodecs.put(Long.class, LONG);
+        sCodecs.put(long.class, LONG);
+        sCodecs.put(Double.class, DOUBLE);
+        sCodecs.put(double.class, DOUBLE);
+        sCodecs.put(Float.class, FLOAT);
+        sCodecs.put(float.class, FLOAT);
+    }
+
+    private JsonCodecs() {
+    }
+
+    public static <T> void register(Class<T> type, JsonCodec<T> codec) {
+        sCodecs.put(type, codec);
+    }
+
+    // Codecs are built once per class and cached; reflective codecs resolve
+    // their field codecs on first use so self-referencing models work.
+    @SuppressWarnings("unchecked")
+    public static <T> JsonCodec<T> get(Class<T> type) {
+        JsonCodec<T> codec = (JsonCodec<T>) sCodecs.get(type);
+        if(codec == null) {
+            JsonCodec<T> created = newCodec(type);
+            codec = (JsonCodec<T>) sCodecs.putIfAbsent(type, created);
+            if(codec == null) {
+                codec = created;
+            }
+        }
+        return codec;
+    }
+
+    public static <E> JsonCodec<List<E>> listOf(final JsonCodec<E> elementCodec) {
+        return new JsonCodec<List<E>>() {
+            @Override
+            public List<E> read(JsonReader reader) throws IOException {
+                if(reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    return null;
+                }
+                List<E> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    list.add(elementCodec.read(reader));
+                }
+                reader.endArray();
+                return list;
+            }
+        };
+    }
+
+    public static <V> JsonCodec<Map<String, V>> mapOf(final JsonCodec<V> valueCodec) {
+        return new JsonCodec<Map<String, V>>() {
+            @Override
+            public Map<String, V> read(JsonReader reader) throws IOException {
+                if(reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    return null;
+                }
+                Map<String, V> map = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    map.put(name, valueCodec.read(reader));
+                }
+                reader.endObject();
+                return map;
+            }
+        };
+    }
+
+    static JsonCodec<?> forType(Type type) {
+        if(type instanceof Class) {
+            return get((Class<?>) type);
+        }
+        if(type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Type rawType = parameterizedType.getRawType();
+            Type[] arguments = parameterizedType.getActualTypeArguments();
+            if(rawType == List.class || rawType == Collection.class || rawType == ArrayList.class) {
+                return listOf(forType(arguments[0]));
+            }
+            if((rawType == Map.class || rawType == LinkedHashMap.class) && arguments[0] == String.class) {
+                return mapOf(forType(arguments[1]));
+            }
+        }
+        throw new IllegalArgumentException("Unsupported JSON type " + type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> JsonCodec<T> newCodec(Class<T> type) {
+        if(type.isEnum()) {
+            return new EnumCodec(type);
+        }
+        if(type.isPrimitive() || type.isArray() || type.isInterface()) {
+            throw new IllegalArgumentException("Unsupported JSON type " + type.getName());
+        }
+        return new ReflectiveJsonCodec<>(type);
+    }
+
+    private static class EnumCodec<E extends Enum<E>> implements JsonCodec<E> {
+
+        private final Class<E> mType;
+
+        EnumCodec(Class<E> type) {
+            mType = type;
+        }
+
+        @Override
+        public E read(JsonReader reader) throws IOException {
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            String name = reader.nextString();
+            try {
+                return Enum.valueOf(mType, name);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.json;
+
+import android.util.JsonReader;
+
+import com.rhoadster91.android.siesta.response.ResponseStreamHandler;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+public class JsonResponseHandler<T> implements ResponseStreamHandler<T> {
+
+    private final JsonCodec<T> mCodec;
+
+    public JsonResponseHandler(JsonCodec<T> codec) {
+        mCodec = codec;
+    }
+
+    // Only 2xx bodies are decoded; error bodies rarely have the shape of T and
+    // are left for the transport to drain.
+    @Override
+    public T handleResponse(int responseCode, InputStream body, Charset charset) throws Throwable {
+        if(responseCode < 200 || responseCode >= 300 || responseCode == 204) {
+            return null;
+        }
+        JsonReader reader = new JsonReader(new InputStreamReader(body, charset));
+        return mCodec.read(reader);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.json;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+class ReflectiveJsonCodec<T> implements JsonCodec<T> {
+
+    private static class Binding {
+
+        final Field field;
+        JsonCodec<?> codec;
+
+        Binding(Field field) {
+            this.field = field;
+        }
+    }
+
+    private final Class<T> mType;
+    private final Constructor<T> mConstructor;
+    private final Map<String, Binding> mBindings = new HashMap<>();
+    private volatile boolean mResolved;
+
+    ReflectiveJsonCodec(Class<T> type) {
+        mType = type;
+        try {
+            mConstructor = type.getDeclaredConstructor();
+            mConstructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " needs a no-argument constructor to be read from JSON", e);
+        }
+        for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for(Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                        || mBindings.containsKey(field.getName())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                mBindings.put(field.getName(), new Binding(field));
+            }
+        }
+    }
+
+    @Override
+    public T read(JsonReader reader) throws IOException {
+        if(reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if(!mResolved) {
+            resolve();
+        }
+        T instance;
+        try {
+            instance = mConstructor.newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not instantiate " + mType.getName(), e);
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            Binding binding = mBindings.get(reader.nextName());
+            if(binding == null) {
+                reader.skipValue();
+                continue;
+            }
+            Object value = binding.codec.read(reader);
+            if(value == null && binding.field.getType().isPrimitive()) {
+                continue;
+            }
+            try {
+                binding.field.set(instance, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        reader.endObject();
+        return instance;
+    }
+
+    private synchronized void resolve() {
+        if(mResolved) {
+            return;
+        }
+        for(Binding binding : mBindings.values()) {
+            binding.codec = JsonCodecs.forType(binding.field.getGenericType());
+        }
+        mResolved = true;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MetricsRegistry {
+
+    public interface Listener {
+
+        void onRequestCompleted(RequestMetrics metrics, int responseCode, boolean success, long queueWaitMicros, long networkMicros, long bytesSent, long bytesReceived);
+
+    }
+
+    private final ConcurrentHashMap<String, RequestMetrics> mMetrics = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger mActive = new AtomicInteger();
+    private final AtomicInteger mQueued = new AtomicInteger();
+
+    public RequestMetrics getMetrics(Class<?> apiClass, int method) {
+        String key = apiClass.getName() + '#' + method;
+        RequestMetrics metrics = mMetrics.get(key);
+        if(metrics == null) {
+            RequestMetrics created = new RequestMetrics(apiClass.getName(), method);
+            metrics = mMetrics.putIfAbsent(key, created);
+            if(metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    public List<RequestMetrics> getAllMetrics() {
+        return new ArrayList<>(mMetrics.values());
+    }
+
+    public int getActiveCount() {
+        return mActive.get();
+    }
+
+    public int getQueuedCount() {
+        return mQueued.get();
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    public void reset() {
+        mMetrics.clear();
+    }
+
+    public void onTaskQueued() {
+        mQueued.incrementAndGet();
+    }
+
+    public void onTaskDequeued() {
+        mQueued.decrementAndGet();
+    }
+
+    public void onTaskStarted() {
+        mQueued.decrementAndGet();
+        mActive.incrementAndGet();
+    }
+
+    public void onTaskFinished() {
+        mActive.decrementAndGet();
+    }
+
+    public void recordRequest(RequestMetrics metrics, int responseCode, boolean success, long queueWaitMicros, long networkMicros, long bytesSent, long bytesReceived) {
+        metrics.record(responseCode, success, queueWaitMicros, networkMicros, bytesSent, bytesReceived);
+        for(Listener listener : mListeners) {
+            listener.onRequestCompleted(metrics, responseCode, success, queueWaitMicros, networkMicros, bytesSent, bytesReceived);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class RequestMetrics {
+
+    private static final int MAX_STATUS_CODE = 599;
+
+    private final String mApiName;
+    private final int mMethod;
+
+    private final Histogram mQueueWait = new Histogram();
+    private final Histogram mNetworkTime = new Histogram();
+    private final Histogram mDeliveryTime = new Histogram();
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mFailureCount = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mDedupHits = new AtomicLong();
+    private final AtomicLongArray mStatusCodes = new AtomicLongArray(MAX_STATUS_CODE + 1);
+
+    RequestMetrics(String apiName, int method) {
+        mApiName = apiName;
+        mMethod = method;
+    }
+
+    public String getApiName() {
+        return mApiName;
+    }
+
+    public int getMethod() {
+        return mMethod;
+    }
+
+    public Histogram getQueueWait() {
+        return mQueueWait;
+    }
+
+    public Histogram getNetworkTime() {
+        return mNetworkTime;
+    }
+
+    public Histogram getDeliveryTime() {
+        return mDeliveryTime;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getFailureCount() {
+        return mFailureCount.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    public long getDedupHits() {
+        return mDedupHits.get();
+    }
+
+    public double getDedupHitRate() {
+        long hits = mDedupHits.get();
+        long total = hits + mRequestCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getStatusCount(int code) {
+        return code > 0 && code <= MAX_STATUS_CODE ? mStatusCodes.get(code) : mStatusCodes.get(0);
+    }
+
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> statusCounts = new TreeMap<>();
+        for(int code = 0; code <= MAX_STATUS_CODE; code++) {
+            long count = mStatusCodes.get(code);
+            if(count > 0) {
+                statusCounts.put(code, count);
+            }
+        }
+        return statusCounts;
+    }
+
+    public void recordDedupHit() {
+        mDedupHits.incrementAndGet();
+    }
+
+    public void recordDelivery(long deliveryMicros) {
+        mDeliveryTime.record(deliveryMicros);
+    }
+
+    void record(int code, boolean success, long queueWaitMicros, long networkMicros, long bytesSent, long bytesReceived) {
+        mRequestCount.incrementAndGet();
+        if(!success) {
+            mFailureCount.incrementAndGet();
+        }
+        mStatusCodes.incrementAndGet(code > 0 && code <= MAX_STATUS_CODE ? code : 0);
+        mQueueWait.record(queueWaitMicros);
+        mNetworkTime.record(networkMicros);
+        if(bytesSent > 0) {
+            mBytesSent.addAndGet(bytesSent);
+        }
+        if(bytesReceived > 0) {
+            mBytesReceived.addAndGet(bytesReceived);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mApiName + " method=" + mMethod + " requests=" + getRequestCount() + " failures=" + getFailureCount()
+                + " dedup=" + getDedupHits() + " sent=" + getBytesSent() + " received=" + getBytesReceived()
+                + " status=" + getStatusCounts() + " queueWait[" + mQueueWait + "] network[" + mNetworkTime
+                + "] delivery[" + mDeliveryTime + "]";
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class RequestTrace {
+
+    public enum Phase {
+        ENQUEUED,
+        STARTED,
+        CONNECTED,
+        FIRST_BYTE,
+        BODY_READ,
+        SUCCESS_EVALUATED,
+        DISPATCHED,
+        CALLBACK_COMPLETED
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final Tracer mTracer;
+    private final long mId;
+    private final String mApiName;
+    private final int mMethod;
+    private final String mSignature;
+    private final AtomicLongArray mTimestamps = new AtomicLongArray(PHASES.length);
+    private volatile int mAttempts;
+
+    RequestTrace(Tracer tracer, long id, String apiName, int method, String signature) {
+        mTracer = tracer;
+        mId = id;
+        mApiName = apiName;
+        mMethod = method;
+        mSignature = signature;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getApiName() {
+        return mApiName;
+    }
+
+    public int getMethod() {
+        return mMethod;
+    }
+
+    public String getSignature() {
+        return mSignature;
+    }
+
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    public void mark(Phase phase) {
+        if(phase == Phase.STARTED) {
+            mAttempts++;
+        }
+        mTimestamps.set(phase.ordinal(), System.nanoTime());
+    }
+
+    public void beginSection(String name) {
+        mTracer.beginSection(name);
+    }
+
+    public void endSection() {
+        mTracer.endSection();
+    }
+
+    public void finish() {
+        mTracer.record(this);
+    }
+
+    public long getTimestamp(Phase phase) {
+        return mTimestamps.get(phase.ordinal());
+    }
+
+    public long getDuration(Phase from, Phase to) {
+        long start = getTimestamp(from);
+        long end = getTimestamp(to);
+        return start != 0 && end >= start ? end - start : -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(mApiName).append(" #").append(mId);
+        long previous = getTimestamp(Phase.ENQUEUED);
+        for(int i = 1; i < PHASES.length; i++) {
+            long timestamp = mTimestamps.get(i);
+            if(timestamp != 0 && previous != 0) {
+                builder.append(' ').append(PHASES[i].name().toLowerCase()).append('=').append((timestamp - previous) / 1000).append("us");
+                previous = timestamp;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.metrics;
+
+import android.os.Build;
+import android.os.Trace;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Tracer {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final String[] SPAN_NAMES = {
+            "queue", "connect", "wait", "download", "evaluate", "dispatch", "callback"
+    };
+
+    private final int mCapacity;
+    private final ArrayDeque<RequestTrace> mTraces;
+    private final AtomicLong mNextId = new AtomicLong();
+    private volatile boolean mSystemTraceEnabled;
+
+    public Tracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Tracer(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCapacity = capacity;
+        mTraces = new ArrayDeque<>(capacity);
+    }
+
+    public void setSystemTraceEnabled(boolean systemTraceEnabled) {
+        mSystemTraceEnabled = systemTraceEnabled && Build.VERSION.SDK_INT >= 18;
+    }
+
+    public boolean isSystemTraceEnabled() {
+        return mSystemTraceEnabled;
+    }
+
+    public RequestTrace newTrace(Class<?> apiClass, int method, String signature) {
+        RequestTrace trace = new RequestTrace(this, mNextId.incrementAndGet(), apiClass.getName(), method, signature);
+        trace.mark(RequestTrace.Phase.ENQUEUED);
+        return trace;
+    }
+
+    void record(RequestTrace trace) {
+        synchronized (mTraces) {
+            if(mTraces.size() == mCapacity) {
+                mTraces.pollFirst();
+            }
+            mTraces.addLast(trace);
+        }
+    }
+
+    public List<RequestTrace> getTraces() {
+        synchronized (mTraces) {
+            return new ArrayList<>(mTraces);
+        }
+    }
+
+    public void clear() {
+        synchronized (mTraces) {
+            mTraces.clear();
+        }
+    }
+
+    public void beginSection(String name) {
+        if(mSystemTraceEnabled) {
+            Trace.beginSection(name.length() > 127 ? name.substring(0, 127) : name);
+        }
+    }
+
+    public void endSection() {
+        if(mSystemTraceEnabled) {
+            Trace.endSection();
+        }
+    }
+
+    public String toChromeTraceJson() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeChromeTrace(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    // Each request becomes its own row (tid) with one complete ("X") event
+    // per phase transition, so chrome://tracing shows the request as a
+    // stacked timeline.
+    public void writeChromeTrace(Writer writer) throws IOException {
+        RequestTrace.Phase[] phases = RequestTrace.Phase.values();
+        writer.write("{\"traceEvents\":[");
+        boolean first = true;
+        for(RequestTrace trace : getTraces()) {
+            String args = "{\"signature\":" + JSONObject.quote(trace.getSignature()) + ",\"method\":" + trace.getMethod()
+                    + ",\"attempts\":" + trace.getAttempts() + "}";
+            long start = trace.getTimestamp(phases[0]);
+            for(int i = 1; i < phases.length && start != 0; i++) {
+                long end = trace.getTimestamp(phases[i]);
+                if(end == 0 || end < start) {
+                    continue;
+                }
+                if(!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writer.write("{\"name\":" + JSONObject.quote(SPAN_NAMES[i - 1]) + ",\"cat\":" + JSONObject.quote(trace.getApiName())
+                        + ",\"ph\":\"X\",\"pid\":1,\"tid\":" + trace.getId() + ",\"ts\":" + start / 1000
+                        + ",\"dur\":" + (end - start) / 1000 + ",\"args\":" + args + "}");
+                start = end;
+            }
+        }
+        writer.write("]}");
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.request;
+
+// Runtime support for code generated from @SiestaService interfaces. The
+// encoders append straight into the caller's StringBuilder instead of going
+// through URLEncoder or JSONObject.
+public final class Encoders {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final boolean[] QUERY_SAFE = new boolean[128];
+    private static final boolean[] PATH_SAFE = new boolean[128];
+
+    static {
+        for(char c = 'a'; c <= 'z'; c++) {
+            QUERY_SAFE[c] = true;
+            QUERY_SAFE[c - 'a' + 'A'] = true;
+        }
+        for(char c = '0'; c <= '9'; c++) {
+            QUERY_SAFE[c] = true;
+        }
+        for(char c : ".-*_".toCharArray()) {
+            QUERY_SAFE[c] = true;
+        }
+        System.arraycopy(QUERY_SAFE, 0, PATH_SAFE, 0, QUERY_SAFE.length);
+        PATH_SAFE['*'] = false;
+        for(char c : "~!$&'()*+,;=:@".toCharArray()) {
+            PATH_SAFE[c] = true;
+        }
+    }
+
+    private Encoders() {
+    }
+
+    // Same output as URLEncoder.encode(value, "UTF-8"), which also encodes
+    // an unpaired surrogate as '?'.
+    public static void appendQueryValue(StringBuilder builder, String value) {
+        int length = value.length();
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if(c < 128 && QUERY_SAFE[c]) {
+                builder.append(c);
+            } else if(c == ' ') {
+                builder.append('+');
+            } else {
+                i = appendEscaped(builder, value, i);
+            }
+        }
+    }
+
+    public static void appendPathSegment(StringBuilder builder, String value) {
+        int length = value.length();
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if(c < 128 && PATH_SAFE[c]) {
+                builder.append(c);
+            } else {
+                i = appendEscaped(builder, value, i);
+            }
+        }
+    }
+
+    public static void appendJsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        int length = value.length();
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        builder.append("\\u").append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xF])
+                                .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    // Percent-encodes the UTF-8 bytes of the code point at index and returns
+    // the index of its last char. An unpaired surrogate has no UTF-8 form and
+    // is replaced with '?', as String.getBytes does.
+    private static int appendEscaped(StringBuilder builder, String value, int index) {
+        int codePoint = value.codePointAt(index);
+        if(codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            appendByte(builder, '?');
+        } else if(codePoint < 0x80) {
+            appendByte(builder, codePoint);
+        } else if(codePoint < 0x800) {
+            appendByte(builder, 0xC0 | (codePoint >> 6));
+            appendByte(builder, 0x80 | (codePoint & 0x3F));
+        } else if(codePoint < 0x10000) {
+            appendByte(builder, 0xE0 | (codePoint >> 12));
+            appendByte(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+            appendByte(builder, 0x80 | (codePoint & 0x3F));
+        } else {
+            appendByte(builder, 0xF0 | (codePoint >> 18));
+            appendByte(builder, 0x80 | ((codePoint >> 12) & 0x3F));
+            appendByte(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+            appendByte(builder, 0x80 | (codePoint & 0x3F));
+            return index + 1;
+        }
+        return index;
+    }
+
+    private static void appendByte(StringBuilder builder, int b) {
+        builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.response;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+public abstract class ResponseReaderHandler<T> implements ResponseStreamHandler<T> {
+
+    public abstract T handleResponse(int responseCode, Reader body) throws Throwable;
+
+    @Override
+    public T handleResponse(int responseCode, InputStream body, Charset charset) throws Throwable {
+        return handleResponse(responseCode, new BufferedReader(new InputStreamReader(body, charset)));
+    }
+}
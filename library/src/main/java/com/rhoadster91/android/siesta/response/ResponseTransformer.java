@@ -28,25 +28,55 @@ public abstract class ResponseTransformer<EXPECTED, ACTUAL> implements ApiExecut
 
     public abstract EXPECTED transform(ACTUAL actual) throws Throwable;
 
+    // Sharing a transformed response is opt-in. Deduplicated subscribers
+    // share one transform only when their transformers return equal keys,
+    // and each transformer is its own key by default. A stateless
+    // transformer can return its class so that every instance shares one
+    // result per response.
+    public Object getTransformKey() {
+        return this;
+    }
+
     @Override
     public void onSuccess(int responseCode, ACTUAL response) {
-        if(mActualCallback!=null) {
-            try {
-                mActualCallback.onSuccess(responseCode, transform(response));
-            } catch (Throwable throwable) {
-                mActualCallback.onFailure(responseCode, null, throwable);
-            }
+        try {
+            onTransformedSuccess(responseCode, transform(response));
+        } catch (Throwable throwable) {
+            onTransformedFailure(responseCode, null, throwable);
         }
     }
 
     @Override
     public void onFailure(int responseCode, ACTUAL response, Throwable t) {
+        try {
+            onTransformedFailure(responseCode, transform(response), t);
+        } catch (Throwable throwable) {
+            onTransformedFailure(responseCode, null, new Throwable(throwable.getMessage(), t));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void onTransformedSuccess(int responseCode, EXPECTED response) {
+        if(mActualCallback instanceof ApiExecutor.StaleAwareCallback) {
+            ((ApiExecutor.StaleAwareCallback<EXPECTED>) mActualCallback).onSuccess(responseCode, response, false);
+        } else if(mActualCallback!=null) {
+            mActualCallback.onSuccess(responseCode, response);
+        }
+    }
+
+    // Only called for stale cached responses delivered in
+    // DeliveryMode.STALE_WHILE_REVALIDATE.
+    public void onTransformedStaleSuccess(int responseCode, EXPECTED response) {
+        if(mActualCallback instanceof ApiExecutor.StaleAwareCallback) {
+            ((ApiExecutor.StaleAwareCallback<EXPECTED>) mActualCallback).onSuccess(responseCode, response, true);
+        } else {
+            onTransformedSuccess(responseCode, response);
+        }
+    }
+
+    public void onTransformedFailure(int responseCode, EXPECTED response, Throwable t) {
         if(mActualCallback!=null) {
-            try {
-                mActualCallback.onFailure(responseCode, transform(response), t);
-            } catch (Throwable throwable) {
-                mActualCallback.onFailure(responseCode, null, new Throwable(throwable.getMessage(), t));
-            }
+            mActualCallback.onFailure(responseCode, response, t);
         }
     }
 }
@@ -16,11 +16,23 @@
 
 package com.rhoadster91.android.siesta.response;
 
+import com.rhoadster91.android.siesta.metrics.RequestTrace;
+import com.rhoadster91.android.siesta.request.Cancellable;
+
+import java.util.List;
+import java.util.Map;
+
 public class ResponseWrapper<R> {
 
     private int code;
     private R response;
     private Throwable throwable;
+    private Map<String, List<String>> headers;
+    private long bytesSent;
+    private volatile long bytesReceived;
+    private RequestTrace trace;
+    private Cancellable cancellable;
+    private volatile boolean cancelled;
 
     public int getCode() {
         return code;
@@ -45,4 +57,79 @@ public class ResponseWrapper<R> {
     public void setThrowable(Throwable throwable) {
         this.throwable = throwable;
     }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public void setHeaders(Map<String, List<String>> headers) {
+        this.headers = headers;
+    }
+
+    public String getHeader(String name) {
+        if(headers == null) {
+            return null;
+        }
+        for(Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if(name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public void setBytesSent(long bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public RequestTrace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(RequestTrace trace) {
+        this.trace = trace;
+    }
+
+    public void setCancellable(Cancellable cancellable) {
+        synchronized (this) {
+            if(!cancelled) {
+                this.cancellable = cancellable;
+                return;
+            }
+        }
+        if(cancellable != null) {
+            cancellable.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        Cancellable cancellable;
+        synchronized (this) {
+            if(cancelled) {
+                return;
+            }
+            cancelled = true;
+            cancellable = this.cancellable;
+            this.cancellable = null;
+        }
+        if(cancellable != null) {
+            cancellable.cancel();
+        }
+    }
 }
\ No newline at end of file
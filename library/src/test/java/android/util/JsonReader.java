@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Test classes come before the mockable android.jar on the unit test
+// classpath, so this stands in for its stub. It reads strict JSON through the
+// subset of the platform API the codecs use.
+public class JsonReader implements Closeable {
+
+    private enum Scope {
+        EMPTY_DOCUMENT,
+        NONEMPTY_DOCUMENT,
+        EMPTY_ARRAY,
+        NONEMPTY_ARRAY,
+        EMPTY_OBJECT,
+        DANGLING_NAME,
+        NONEMPTY_OBJECT
+    }
+
+    private final Reader mIn;
+    private final Deque<Scope> mScopes = new ArrayDeque<>();
+    private int mPushedBack = -2;
+    private JsonToken mToken;
+    private String mValue;
+
+    public JsonReader(Reader in) {
+        mIn = in;
+        mScopes.push(Scope.EMPTY_DOCUMENT);
+    }
+
+    public void setLenient(boolean lenient) {
+    }
+
+    public JsonToken peek() throws IOException {
+        if(mToken != null) {
+            return mToken;
+        }
+        int c;
+        switch (mScopes.peek()) {
+            case EMPTY_DOCUMENT:
+                replaceTop(Scope.NONEMPTY_DOCUMENT);
+                return readValue(nextNonWhitespace());
+            case NONEMPTY_DOCUMENT:
+                if(nextNonWhitespace() != -1) {
+                    throw syntaxError("Expected end of document");
+                }
+                return mToken = JsonToken.END_DOCUMENT;
+            case EMPTY_ARRAY:
+                replaceTop(Scope.NONEMPTY_ARRAY);
+                c = nextNonWhitespace();
+                return c == ']' ? (mToken = JsonToken.END_ARRAY) : readValue(c);
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if(c == ']') {
+                    return mToken = JsonToken.END_ARRAY;
+                }
+                if(c != ',') {
+                    throw syntaxError("Unterminated array");
+                }
+                return readValue(nextNonWhitespace());
+            case DANGLING_NAME:
+                replaceTop(Scope.NONEMPTY_OBJECT);
+                return readValue(nextNonWhitespace());
+            default:
+                c = nextNonWhitespace();
+                if(c == '}') {
+                    return mToken = JsonToken.END_OBJECT;
+                }
+                if(mScopes.peek() == Scope.NONEMPTY_OBJECT) {
+                    if(c != ',') {
+                        throw syntaxError("Unterminated object");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if(c != '"') {
+                    throw syntaxError("Expected name");
+                }
+                mValue = readString();
+                if(nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                replaceTop(Scope.DANGLING_NAME);
+                return mToken = JsonToken.NAME;
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT && token != JsonToken.END_DOCUMENT;
+    }
+
+    public void beginArray() throws IOException {
+        consume(JsonToken.BEGIN_ARRAY);
+        mScopes.push(Scope.EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        consume(JsonToken.END_ARRAY);
+        mScopes.pop();
+    }
+
+    public void beginObject() throws IOException {
+        consume(JsonToken.BEGIN_OBJECT);
+        mScopes.push(Scope.EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        consume(JsonToken.END_OBJECT);
+        mScopes.pop();
+    }
+
+    public String nextName() throws IOException {
+        return consume(JsonToken.NAME);
+    }
+
+    // Like the platform reader, numbers read as strings and quoted numbers
+    // read as numbers.
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        if(token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new IllegalStateException("Expected a string but was " + token);
+        }
+        return consume(token);
+    }
+
+    public boolean nextBoolean() throws IOException {
+        return Boolean.parseBoolean(consume(JsonToken.BOOLEAN));
+    }
+
+    public void nextNull() throws IOException {
+        consume(JsonToken.NULL);
+    }
+
+    public double nextDouble() throws IOException {
+        return Double.parseDouble(nextString());
+    }
+
+    public long nextLong() throws IOException {
+        return Long.parseLong(nextString());
+    }
+
+    public int nextInt() throws IOException {
+        return Integer.parseInt(nextString());
+    }
+
+    public void skipValue() throws IOException {
+        JsonToken token = peek();
+        if(token == JsonToken.BEGIN_ARRAY) {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+            endArray();
+        } else if(token == JsonToken.BEGIN_OBJECT) {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+            endObject();
+        } else {
+            consume(token);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    private String consume(JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if(token != expected) {
+            throw new IllegalStateException("Expected " + expected + " but was " + token);
+        }
+        mToken = null;
+        return mValue;
+    }
+
+    private void replaceTop(Scope scope) {
+        mScopes.pop();
+        mScopes.push(scope);
+    }
+
+    private JsonToken readValue(int c) throws IOException {
+        switch (c) {
+            case -1:
+                throw new EOFException("End of input");
+            case '[':
+                return mToken = JsonToken.BEGIN_ARRAY;
+            case '{':
+                return mToken = JsonToken.BEGIN_OBJECT;
+            case '"':
+                mValue = readString();
+                return mToken = JsonToken.STRING;
+        }
+        StringBuilder literal = new StringBuilder().append((char) c);
+        while (true) {
+            c = read();
+            if(c == -1 || ",:]}[{\" \t\r\n".indexOf(c) >= 0) {
+                mPushedBack = c;
+                break;
+            }
+            literal.append((char) c);
+        }
+        mValue = literal.toString();
+        if("true".equals(mValue) || "false".equals(mValue)) {
+            return mToken = JsonToken.BOOLEAN;
+        }
+        if("null".equals(mValue)) {
+            return mToken = JsonToken.NULL;
+        }
+        try {
+            Double.parseDouble(mValue);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Unexpected literal " + mValue);
+        }
+        return mToken = JsonToken.NUMBER;
+    }
+
+    private String readString() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            int c = read();
+            if(c == -1) {
+                throw new EOFException("Unterminated string");
+            }
+            if(c == '"') {
+                return builder.toString();
+            }
+            if(c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for(int i = 0; i < hex.length; i++) {
+                            hex[i] = (char) read();
+                        }
+                        c = Integer.parseInt(new String(hex), 16);
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        break;
+                    default:
+                        throw syntaxError("Invalid escape");
+                }
+            }
+            builder.append((char) c);
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t' || c == '\r' || c == '\n');
+        return c;
+    }
+
+    private int read() throws IOException {
+        if(mPushedBack != -2) {
+            int c = mPushedBack;
+            mPushedBack = -2;
+            return c;
+        }
+        return mIn.read();
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message);
+    }
+}
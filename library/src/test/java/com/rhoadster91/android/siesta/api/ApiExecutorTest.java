@@ -0,0 +1,404 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.api.capability.Cacheable;
+import com.rhoadster91.android.siesta.cache.ResponseCache;
+import com.rhoadster91.android.siesta.metrics.MetricsRegistry;
+import com.rhoadster91.android.siesta.metrics.RequestMetrics;
+import com.rhoadster91.android.siesta.metrics.RequestTrace;
+import com.rhoadster91.android.siesta.metrics.Tracer;
+import com.rhoadster91.android.siesta.request.RESTApiRequest;
+import com.rhoadster91.android.siesta.response.ResponseTransformer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ApiExecutorTest {
+
+    private ApiExecutor mApiExecutor;
+    private FakeApi mApi;
+
+    @Before
+    public void setUp() throws Exception {
+        mApiExecutor = new ApiExecutor(1);
+        mApiExecutor.setCallbackExecutor(CallbackExecutors.immediate());
+        mApi = new FakeApi("http://example.com/items");
+    }
+
+    @Test
+    public void concurrentGetsForOneSignatureShareOneRequest() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback[] callbacks = new RecordingCallback[5];
+        for(int i = 0; i < callbacks.length; i++) {
+            callbacks[i] = new RecordingCallback();
+            mApiExecutor.get(mApi, callbacks[i], null, mApiExecutor.toMap("k", "a"));
+        }
+        mApi.gate.countDown();
+        for(RecordingCallback callback : callbacks) {
+            assertEquals("success a", callback.next());
+        }
+        assertEquals(1, mApi.calls.get());
+    }
+
+    @Test
+    public void getsForDifferentSignaturesAreNotShared() throws Exception {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        mApiExecutor.get(mApi, first, null, mApiExecutor.toMap("k", "a"));
+        mApiExecutor.get(mApi, second, null, mApiExecutor.toMap("k", "b"));
+        assertEquals("success a", first.next());
+        assertEquals("success b", second.next());
+        assertEquals(2, mApi.calls.get());
+    }
+
+    @Test
+    public void cancelledSubscriberIsSkippedButOthersAreDelivered() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback kept = new RecordingCallback();
+        RecordingCallback cancelled = new RecordingCallback();
+        mApiExecutor.get(mApi, kept, null, mApiExecutor.toMap("k", "a"));
+        RequestHandle handle = mApiExecutor.get(mApi, cancelled, null, mApiExecutor.toMap("k", "a"));
+        handle.cancel();
+        assertTrue(handle.isCancelled());
+        mApi.gate.countDown();
+        assertEquals("success a", kept.next());
+        assertNull(cancelled.nextWithin(200));
+    }
+
+    @Test
+    public void cancellingOnlySubscriberOfQueuedRequestDequeuesIt() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback running = new RecordingCallback();
+        RecordingCallback queued = new RecordingCallback();
+        mApiExecutor.get(mApi, running, null, mApiExecutor.toMap("k", "a"));
+        assertTrue(mApi.started.await(5, TimeUnit.SECONDS));
+        RequestHandle handle = mApiExecutor.get(mApi, queued, null, mApiExecutor.toMap("k", "b"));
+        assertEquals(1, mApiExecutor.getQueuedRequestCount());
+        handle.cancel();
+        assertEquals(0, mApiExecutor.getQueuedRequestCount());
+        mApi.gate.countDown();
+        assertEquals("success a", running.next());
+        assertNull(queued.nextWithin(200));
+        assertEquals(1, mApi.calls.get());
+    }
+
+    @Test
+    public void shutdownFailsQueuedRequestsAndLetsRunningOnesFinish() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback running = new RecordingCallback();
+        RecordingCallback queued = new RecordingCallback();
+        mApiExecutor.get(mApi, running, null, mApiExecutor.toMap("k", "a"));
+        assertTrue(mApi.started.await(5, TimeUnit.SECONDS));
+        mApiExecutor.get(mApi, queued, null, mApiExecutor.toMap("k", "b"));
+        mApiExecutor.shutdown();
+        assertTrue(mApiExecutor.isShutdown());
+        assertEquals("failure 0", queued.next());
+        mApi.gate.countDown();
+        assertEquals("success a", running.next());
+
+        RecordingCallback late = new RecordingCallback();
+        mApiExecutor.get(mApi, late, null, mApiExecutor.toMap("k", "c"));
+        assertEquals("failure 0", late.next());
+        assertEquals(1, mApi.calls.get());
+    }
+
+    @Test
+    public void metricsRecordSharedRequestsAsDedupHits() throws Exception {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        mApiExecutor.setMetricsRegistry(metricsRegistry);
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        mApiExecutor.get(mApi, first, null, mApiExecutor.toMap("k", "a"));
+        mApiExecutor.get(mApi, second, null, mApiExecutor.toMap("k", "a"));
+        mApi.gate.countDown();
+        assertEquals("success a", first.next());
+        assertEquals("success a", second.next());
+        RequestMetrics metrics = metricsRegistry.getMetrics(FakeApi.class, RESTApiRequest.METHOD_GET);
+        assertEquals(1, metrics.getRequestCount());
+        assertEquals(1, metrics.getDedupHits());
+        assertEquals(1, metrics.getStatusCount(200));
+        assertEquals(0, metrics.getFailureCount());
+    }
+
+    @Test
+    public void tracerRecordsFinishedRequests() throws Exception {
+        Tracer tracer = new Tracer();
+        mApiExecutor.setTracer(tracer);
+        RecordingCallback callback = new RecordingCallback();
+        mApiExecutor.get(mApi, callback, null, mApiExecutor.toMap("k", "a"));
+        assertEquals("success a", callback.next());
+        List<RequestTrace> traces = tracer.getTraces();
+        assertEquals(1, traces.size());
+        RequestTrace trace = traces.get(0);
+        assertEquals(FakeApi.class.getName(), trace.getApiName());
+        assertEquals(RESTApiRequest.METHOD_GET, trace.getMethod());
+        assertEquals(1, trace.getAttempts());
+        assertTrue(trace.getDuration(RequestTrace.Phase.ENQUEUED, RequestTrace.Phase.SUCCESS_EVALUATED) >= 0);
+    }
+
+    @Test
+    public void failureIsDeliveredToEverySubscriber() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        mApiExecutor.get(mApi, first, null, mApiExecutor.toMap("k", "fail"));
+        mApiExecutor.get(mApi, second, null, mApiExecutor.toMap("k", "fail"));
+        mApi.gate.countDown();
+        assertEquals("failure 500", first.next());
+        assertEquals("failure 500", second.next());
+    }
+
+    @Test
+    public void requestsToOneHostAreNotCappedByDefault() throws Exception {
+        ApiExecutor apiExecutor = new ApiExecutor(16);
+        apiExecutor.setCallbackExecutor(CallbackExecutors.immediate());
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback callback = new RecordingCallback();
+        for(int i = 0; i < 10; i++) {
+            apiExecutor.get(mApi, callback, null, apiExecutor.toMap("k", String.valueOf(i)));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mApi.calls.get() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, apiExecutor.getRunningRequestCount("example.com"));
+        mApi.gate.countDown();
+        for(int i = 0; i < 10; i++) {
+            assertNotNull(callback.next());
+        }
+    }
+
+    @Test
+    public void distinctTransformerInstancesAreNotShared() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        mApiExecutor.get(mApi, new PrefixTransformer(first, "x-"), null, mApiExecutor.toMap("k", "a"));
+        mApiExecutor.get(mApi, new PrefixTransformer(second, "y-"), null, mApiExecutor.toMap("k", "a"));
+        mApi.gate.countDown();
+        assertEquals("success x-a", first.next());
+        assertEquals("success y-a", second.next());
+        assertEquals(1, mApi.calls.get());
+    }
+
+    @Test
+    public void transformersWithCommonKeyShareOneTransform() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        final AtomicInteger transforms = new AtomicInteger();
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        for(RecordingCallback callback : new RecordingCallback[] {first, second}) {
+            mApiExecutor.get(mApi, new PrefixTransformer(callback, "x-") {
+                @Override
+                public String transform(String s) {
+                    transforms.incrementAndGet();
+                    return super.transform(s);
+                }
+
+                @Override
+                public Object getTransformKey() {
+                    return PrefixTransformer.class;
+                }
+            }, null, mApiExecutor.toMap("k", "a"));
+        }
+        mApi.gate.countDown();
+        assertEquals("success x-a", first.next());
+        assertEquals("success x-a", second.next());
+        assertEquals(1, transforms.get());
+    }
+
+    @Test
+    public void cachedTransformIsFailedWhenExecutorRejectsIt() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        executorService.shutdown();
+        ApiExecutor apiExecutor = new ApiExecutor(executorService, 1);
+        apiExecutor.setCallbackExecutor(CallbackExecutors.immediate());
+        ResponseCache responseCache = new ResponseCache(8, 1024);
+        apiExecutor.setResponseCache(responseCache);
+        CachedFakeApi api = new CachedFakeApi("http://example.com/items");
+        responseCache.put(api.getApiSignature(apiExecutor.toMap("k", "a")), 200, "a", 60000, 1);
+        RecordingCallback callback = new RecordingCallback();
+        apiExecutor.get(api, new PrefixTransformer(callback, "x-"), null, apiExecutor.toMap("k", "a"));
+        assertEquals("failure 0", callback.next());
+        assertEquals(0, api.calls.get());
+    }
+
+    @Test
+    public void getJoinsAPrefetchForTheSameSignature() throws Exception {
+        collectGarbage();
+        ResponseCache responseCache = new ResponseCache(8, 1024);
+        mApiExecutor.setResponseCache(responseCache);
+        CachedFakeApi api = new CachedFakeApi("http://example.com/items");
+        api.gate = new CountDownLatch(1);
+        assertNotNull(mApiExecutor.prefetch(api, mApiExecutor.toMap("k", "a")));
+        RecordingCallback callback = new RecordingCallback();
+        mApiExecutor.get(api, callback, null, mApiExecutor.toMap("k", "a"));
+        api.gate.countDown();
+        assertEquals("success a", callback.next());
+        assertEquals(1, api.calls.get());
+        assertTrue(responseCache.contains(api.getApiSignature(mApiExecutor.toMap("k", "a"))));
+        assertNull(mApiExecutor.prefetch(api, mApiExecutor.toMap("k", "a")));
+    }
+
+    @Test
+    public void prefetchNeedsACacheableApiAndPermission() throws Exception {
+        collectGarbage();
+        CachedFakeApi api = new CachedFakeApi("http://example.com/items");
+        assertNull(mApiExecutor.prefetch(api, mApiExecutor.toMap("k", "a")));
+        mApiExecutor.setResponseCache(new ResponseCache(8, 1024));
+        assertNull(mApiExecutor.prefetch(mApi, mApiExecutor.toMap("k", "a")));
+        mApiExecutor.setPrefetchPolicy(new PrefetchPolicy() {
+            @Override
+            public boolean isPrefetchAllowed() {
+                return false;
+            }
+        });
+        assertNull(mApiExecutor.prefetch(api, mApiExecutor.toMap("k", "a")));
+        assertEquals(0, api.calls.get());
+    }
+
+    @Test
+    public void cancelledPrefetchNeverRuns() throws Exception {
+        collectGarbage();
+        mApiExecutor.setResponseCache(new ResponseCache(8, 1024));
+        mApi.gate = new CountDownLatch(1);
+        RecordingCallback blocker = new RecordingCallback();
+        mApiExecutor.get(mApi, blocker, null, mApiExecutor.toMap("k", "a"));
+        assertTrue(mApi.started.await(5, TimeUnit.SECONDS));
+        CachedFakeApi cancelled = new CachedFakeApi("http://example.com/cancelled");
+        assertNotNull(mApiExecutor.prefetch(cancelled, mApiExecutor.toMap("k", "a")));
+        mApiExecutor.cancelPrefetches();
+        CachedFakeApi kept = new CachedFakeApi("http://example.com/kept");
+        assertNotNull(mApiExecutor.prefetch(kept, mApiExecutor.toMap("k", "a")));
+        mApi.gate.countDown();
+        assertEquals("success a", blocker.next());
+        assertTrue(kept.started.await(5, TimeUnit.SECONDS));
+        assertEquals(0, cancelled.calls.get());
+    }
+
+    @Test
+    public void revalidationWithSameValidatorIsUnchanged() throws Exception {
+        ResponseCache.Entry entry = cachedEntry(new Object(), "ETag \"v1\"");
+        assertFalse(ApiExecutor.isChanged(entry, true, 200, new Object(), "ETag \"v1\""));
+        assertTrue(ApiExecutor.isChanged(entry, true, 200, new Object(), "ETag \"v2\""));
+        assertTrue(ApiExecutor.isChanged(entry, true, 201, new Object(), "ETag \"v1\""));
+        assertFalse(ApiExecutor.isChanged(entry, false, 500, null, null));
+    }
+
+    @Test
+    public void revalidationWithoutValidatorsComparesValues() throws Exception {
+        assertFalse(ApiExecutor.isChanged(cachedEntry("a", null), true, 200, "a", null));
+        assertTrue(ApiExecutor.isChanged(cachedEntry("a", null), true, 200, "b", null));
+        assertFalse(ApiExecutor.isChanged(cachedEntry(new byte[] {1, 2}, null), true, 200, new byte[] {1, 2}, "ETag \"v1\""));
+        assertTrue(ApiExecutor.isChanged(cachedEntry(new Object(), null), true, 200, new Object(), null));
+    }
+
+    @Test
+    public void throwingSizeOfSkipsCachingButDeliversResponse() throws Exception {
+        ResponseCache responseCache = new ResponseCache(8, 1024);
+        mApiExecutor.setResponseCache(responseCache);
+        CachedFakeApi api = new CachedFakeApi("http://example.com/items") {
+            @Override
+            public int sizeOf(String response) {
+                throw new NullPointerException();
+            }
+        };
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        api.gate = new CountDownLatch(1);
+        mApiExecutor.get(api, first, null, mApiExecutor.toMap("k", "a"));
+        mApiExecutor.get(api, second, null, mApiExecutor.toMap("k", "a"));
+        api.gate.countDown();
+        assertEquals("success a", first.next());
+        assertEquals("success a", second.next());
+        assertFalse(responseCache.contains(api.getApiSignature(mApiExecutor.toMap("k", "a"))));
+
+        RecordingCallback third = new RecordingCallback();
+        mApiExecutor.get(api, third, null, mApiExecutor.toMap("k", "a"));
+        assertEquals("success a", third.next());
+        assertEquals(2, api.calls.get());
+    }
+
+    @Test
+    public void throwingRetryPolicyFailsRequest() throws Exception {
+        FakeApi api = new FakeApi("http://example.com/items") {
+            @Override
+            public RetryPolicy getRetryPolicy() {
+                throw new IllegalStateException();
+            }
+        };
+        RecordingCallback callback = new RecordingCallback();
+        mApiExecutor.get(api, callback, null, mApiExecutor.toMap("k", "fail"));
+        assertEquals("failure 500", callback.next());
+    }
+
+    // Prefetches are refused while the heap looks full, and garbage left by
+    // earlier tests counts towards that.
+    private static void collectGarbage() {
+        System.gc();
+        System.runFinalization();
+    }
+
+    private static ResponseCache.Entry cachedEntry(Object response, String validator) {
+        ResponseCache responseCache = new ResponseCache(1, 1);
+        responseCache.put("key", 200, response, 60000, 1, validator);
+        return responseCache.get("key");
+    }
+
+    private static class PrefixTransformer extends ResponseTransformer<String, String> {
+
+        private final String mPrefix;
+
+        PrefixTransformer(ApiExecutor.ApiCallback<String> actualApiCallback, String prefix) {
+            super(actualApiCallback);
+            mPrefix = prefix;
+        }
+
+        @Override
+        public String transform(String s) {
+            return s == null ? null : mPrefix + s;
+        }
+    }
+
+    private static class CachedFakeApi extends FakeApi implements Cacheable<String> {
+
+        CachedFakeApi(String url) {
+            super(url);
+        }
+
+        @Override
+        public long getCacheTtl() {
+            return 60000;
+        }
+
+        @Override
+        public int sizeOf(String response) {
+            return 1;
+        }
+    }
+}
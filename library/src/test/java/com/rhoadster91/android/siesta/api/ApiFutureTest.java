@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ApiFutureTest {
+
+    private ApiExecutor mApiExecutor;
+    private FakeApi mApi;
+
+    @Before
+    public void setUp() throws Exception {
+        mApiExecutor = new ApiExecutor(4);
+        mApiExecutor.setCallbackExecutor(CallbackExecutors.immediate());
+        mApi = new FakeApi("http://example.com/items");
+    }
+
+    // The JVM clears every soft reference before it throws an
+    // OutOfMemoryError, so running out of memory clears the bus's references.
+    private static void clearSoftReferences() {
+        List<byte[]> hog = new ArrayList<>();
+        try {
+            while (true) {
+                hog.add(new byte[8 * 1024 * 1024]);
+            }
+        } catch (OutOfMemoryError e) {
+            hog.clear();
+        }
+    }
+
+    @Test
+    public void completesAfterSoftReferencesAreCleared() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        ApiFuture<String> future = mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a"));
+        assertTrue(mApi.started.await(5, TimeUnit.SECONDS));
+        clearSoftReferences();
+        mApi.gate.countDown();
+        assertEquals("a", future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void concurrentCallersShareOneFuture() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        ApiFuture<String> first = mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a"));
+        ApiFuture<String> second = mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a"));
+        assertSame(first, second);
+        mApi.gate.countDown();
+        assertEquals("a", first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, mApi.calls.get());
+        ApiFuture<String> later = mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a"));
+        assertNotSame(first, later);
+        assertEquals("a", later.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void allOfGathersResponsesInOrder() throws Exception {
+        ApiFuture<List<Object>> all = ApiFuture.allOf(
+                mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a")),
+                mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "b")),
+                mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "c")));
+        assertEquals("[a, b, c]", all.get(5, TimeUnit.SECONDS).toString());
+    }
+
+    @Test
+    public void allOfFailsWithFirstFailure() throws Exception {
+        ApiFuture<List<Object>> all = ApiFuture.allOf(
+                mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a")),
+                mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "fail")));
+        try {
+            all.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(500, ((ApiException) e.getCause()).getResponseCode());
+        }
+    }
+
+    @Test
+    public void mapAndThenCompose() throws Exception {
+        ApiFuture<String> chained = mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a")).then(new ApiFuture.Chain<String, String>() {
+            @Override
+            public ApiFuture<String> apply(String value) {
+                return mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", value + "b"));
+            }
+        }).map(new ApiFuture.Transform<String, String>() {
+            @Override
+            public String apply(String value) {
+                return value.toUpperCase();
+            }
+        });
+        assertEquals("AB", chained.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failingTransformFailsDerivedFuture() throws Exception {
+        ApiFuture<Integer> mapped = ApiFuture.succeeded(200, "x").map(new ApiFuture.Transform<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return Integer.parseInt(value);
+            }
+        });
+        try {
+            mapped.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NumberFormatException);
+        }
+    }
+
+    @Test
+    public void cancelCancelsRequestAndNotifiesCallbacks() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        ApiFuture<String> future = mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a"));
+        RecordingCallback callback = new RecordingCallback();
+        future.addCallback(callback);
+        assertTrue(future.cancel(false));
+        assertFalse(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertEquals("failure 0", callback.next());
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException expected) {
+        }
+        mApi.gate.countDown();
+    }
+
+    @Test
+    public void cancellingDerivedFutureLeavesSourceRunning() throws Exception {
+        mApi.gate = new CountDownLatch(1);
+        ApiFuture<String> source = mApiExecutor.getAsync(mApi, mApiExecutor.toMap("k", "a"));
+        ApiFuture<Integer> derived = source.map(new ApiFuture.Transform<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+        assertTrue(derived.cancel(false));
+        mApi.gate.countDown();
+        assertEquals("a", source.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class CallbackBusTest {
+
+    private static final Executor EXECUTOR = CallbackExecutors.immediate();
+
+    private static CallbackBus.Subscriber newSubscriber() {
+        return new CallbackBus.Subscriber(new RecordingCallback(), EXECUTOR);
+    }
+
+    @Test
+    public void laterSubscribersJoinTheFirst() throws Exception {
+        CallbackBus bus = new CallbackBus();
+        CallbackBus.Subscriber first = newSubscriber();
+        CallbackBus.Subscriber second = newSubscriber();
+        CallbackBus.Subscription subscription = bus.subscribe("s", first);
+        assertNotNull(subscription);
+        assertNull(bus.subscribe("s", second));
+        assertSame(subscription, bus.get("s"));
+        assertArrayEquals(new CallbackBus.Subscriber[] {first, second}, bus.complete(subscription));
+        assertTrue(subscription.isClosed());
+        assertEquals(0, bus.size());
+    }
+
+    @Test
+    public void differentSignaturesDoNotJoin() throws Exception {
+        CallbackBus bus = new CallbackBus();
+        assertNotNull(bus.subscribe("a", newSubscriber()));
+        assertNotNull(bus.subscribe("b", newSubscriber()));
+        assertEquals(2, bus.size());
+    }
+
+    @Test
+    public void lastSubscriberLeavingClosesSubscription() throws Exception {
+        CallbackBus bus = new CallbackBus();
+        CallbackBus.Subscriber first = newSubscriber();
+        CallbackBus.Subscriber second = newSubscriber();
+        CallbackBus.Subscription subscription = bus.subscribe("s", first);
+        bus.subscribe("s", second);
+        assertNull(bus.unsubscribe("s", first));
+        assertEquals(1, subscription.subscriberCount());
+        assertSame(subscription, bus.unsubscribe("s", second));
+        assertTrue(subscription.isClosed());
+        assertNotNull(bus.subscribe("s", newSubscriber()));
+    }
+
+    @Test
+    public void subscribingAfterCompletionStartsNewSubscription() throws Exception {
+        CallbackBus bus = new CallbackBus();
+        CallbackBus.Subscription subscription = bus.subscribe("s", newSubscriber());
+        bus.complete(subscription);
+        CallbackBus.Subscription next = bus.subscribe("s", newSubscriber());
+        assertNotNull(next);
+        assertNotSame(subscription, next);
+    }
+
+    // Every subscriber racing a completion either made it into the completed
+    // subscription or started a new one; none is lost.
+    @Test
+    public void noSubscriberIsLostWhenRacingCompletion() throws Exception {
+        final CallbackBus bus = new CallbackBus();
+        for(int round = 0; round < 200; round++) {
+            final CallbackBus.Subscription first = bus.subscribe("s", newSubscriber());
+            final List<CallbackBus.Subscriber> joined = Collections.synchronizedList(new ArrayList<CallbackBus.Subscriber>());
+            final List<CallbackBus.Subscription> created = Collections.synchronizedList(new ArrayList<CallbackBus.Subscription>());
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for(int i = 0; i < 4; i++) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for(int j = 0; j < 10; j++) {
+                            CallbackBus.Subscriber subscriber = newSubscriber();
+                            CallbackBus.Subscription subscription = bus.subscribe("s", subscriber);
+                            if(subscription != null) {
+                                created.add(subscription);
+                            } else {
+                                joined.add(subscriber);
+                            }
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            List<CallbackBus.Subscriber> delivered = new ArrayList<>();
+            Collections.addAll(delivered, bus.complete(first));
+            for(Thread thread : threads) {
+                thread.join();
+            }
+            for(CallbackBus.Subscription subscription : created) {
+                Collections.addAll(delivered, bus.complete(subscription));
+            }
+            for(CallbackBus.Subscriber subscriber : joined) {
+                assertTrue(delivered.contains(subscriber));
+            }
+            assertEquals(0, bus.size());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("h", 3, 10000);
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsFailureCount() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("h", 2, 10000);
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void letsOneProbeThroughAfterOpenDuration() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("h", 1, 20);
+        circuitBreaker.onFailure();
+        assertFalse(circuitBreaker.allowRequest());
+        Thread.sleep(50);
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbeReopens() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("h", 1, 20);
+        circuitBreaker.onFailure();
+        Thread.sleep(50);
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void abandonedProbeFreesTheSlot() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("h", 1, 20);
+        circuitBreaker.onFailure();
+        Thread.sleep(50);
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.onAbandoned();
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void openCircuitIsNotCountedAsFailure() throws Exception {
+        assertFalse(CircuitBreaker.isFailure(0, new CircuitBreakerOpenException("h")));
+        assertTrue(CircuitBreaker.isFailure(503, null));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.api.capability.Gettable;
+import com.rhoadster91.android.siesta.request.GetRequest;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Answers a get with the value of its "k" param, or a 500 if that is "fail".
+// Requests wait for the gate while it is set.
+class FakeApi extends GettableApi<String> {
+
+    final AtomicInteger calls = new AtomicInteger();
+    volatile CountDownLatch gate;
+    volatile CountDownLatch started = new CountDownLatch(1);
+
+    private final String mUrl;
+
+    FakeApi(String url) {
+        mUrl = url;
+    }
+
+    @Override
+    public String getApiUrl() {
+        return mUrl;
+    }
+
+    @Override
+    public GetRequest<String> newGetRequest() {
+        return new GetRequest<String>() {
+            @Override
+            public <A extends Api & Gettable<String>> void get(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<String> responseWrapper) throws Throwable {
+                calls.incrementAndGet();
+                started.countDown();
+                CountDownLatch gate = FakeApi.this.gate;
+                if(gate != null && !gate.await(5, TimeUnit.SECONDS)) {
+                    throw new AssertionError("gate was never opened");
+                }
+                String value = params.get("k");
+                responseWrapper.setCode("fail".equals(value) ? 500 : 200);
+                responseWrapper.setResponse(value);
+            }
+        };
+    }
+}
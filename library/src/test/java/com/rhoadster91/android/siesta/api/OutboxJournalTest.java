@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.request.RESTApiRequest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class OutboxJournalTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void recordsSurviveReopening() throws Exception {
+        File directory = mFolder.newFolder();
+        OutboxJournal journal = new OutboxJournal(directory);
+        add(journal, "a");
+        long removed = add(journal, "b").id;
+        add(journal, "c");
+        journal.remove(removed);
+        journal.close();
+
+        assertEquals("[a, c]", values(new OutboxJournal(directory).records()).toString());
+    }
+
+    @Test
+    public void replayStopsAtFrameTornMidWrite() throws Exception {
+        File directory = mFolder.newFolder();
+        OutboxJournal journal = new OutboxJournal(directory);
+        add(journal, "a");
+        add(journal, "b");
+        add(journal, "c");
+        journal.close();
+        File file = new File(directory, "outbox");
+        setLength(file, file.length() - 6);
+
+        journal = new OutboxJournal(directory);
+        assertEquals("[a, b]", values(journal.records()).toString());
+        add(journal, "d");
+        journal.close();
+
+        List<OutboxJournal.Record> records = new OutboxJournal(directory).records();
+        assertEquals("[a, b, d]", values(records).toString());
+        assertEquals(3, records.get(2).id);
+    }
+
+    @Test
+    public void replayStopsAtFrameWithBadChecksum() throws Exception {
+        File directory = mFolder.newFolder();
+        OutboxJournal journal = new OutboxJournal(directory);
+        add(journal, "a");
+        add(journal, "b");
+        journal.close();
+        File file = new File(directory, "outbox");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(file.length() - 1);
+            int last = raf.read();
+            raf.seek(file.length() - 1);
+            raf.write(last ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        journal = new OutboxJournal(directory);
+        assertEquals("[a]", values(journal.records()).toString());
+        add(journal, "c");
+        journal.close();
+
+        assertEquals("[a, c]", values(new OutboxJournal(directory).records()).toString());
+    }
+
+    @Test
+    public void undecodableRecordIsSkipped() throws Exception {
+        File directory = mFolder.newFolder();
+        OutboxJournal journal = new OutboxJournal(directory);
+        add(journal, "a");
+        journal.close();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        payloadOut.writeByte(1);
+        payloadOut.writeLong(2);
+        payloadOut.writeByte(RESTApiRequest.METHOD_PUT);
+        payloadOut.writeInt(Integer.MAX_VALUE);
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(directory, "outbox"), true));
+        try {
+            out.writeInt(payload.size());
+            payload.writeTo(out);
+            out.writeInt((int) crc.getValue());
+        } finally {
+            out.close();
+        }
+
+        journal = new OutboxJournal(directory);
+        assertEquals("[a]", values(journal.records()).toString());
+        add(journal, "b");
+        journal.close();
+
+        assertEquals("[a, b]", values(new OutboxJournal(directory).records()).toString());
+    }
+
+    @Test
+    public void unreadableHeaderStartsEmpty() throws Exception {
+        File directory = mFolder.newFolder();
+        OutboxJournal journal = new OutboxJournal(directory);
+        add(journal, "a");
+        journal.close();
+        setLength(new File(directory, "outbox"), 3);
+
+        journal = new OutboxJournal(directory);
+        assertEquals(0, journal.size());
+        add(journal, "b");
+        journal.close();
+
+        assertEquals("[b]", values(new OutboxJournal(directory).records()).toString());
+    }
+
+    @Test
+    public void removalsAreCompactedAway() throws Exception {
+        File reference = mFolder.newFolder();
+        OutboxJournal journal = new OutboxJournal(reference);
+        add(journal, "keep");
+        journal.close();
+
+        File directory = mFolder.newFolder();
+        journal = new OutboxJournal(directory);
+        add(journal, "keep");
+        for(int i = 0; i < 1000; i++) {
+            journal.remove(add(journal, "drop").id);
+        }
+        assertEquals(new File(reference, "outbox").length(), new File(directory, "outbox").length());
+        journal.close();
+
+        List<OutboxJournal.Record> records = new OutboxJournal(directory).records();
+        assertEquals("[keep]", values(records).toString());
+        assertEquals(1, records.get(0).id);
+    }
+
+    private static OutboxJournal.Record add(OutboxJournal journal, String value) throws Exception {
+        Map<String, String> params = Collections.singletonMap("v", value);
+        return journal.add(RESTApiRequest.METHOD_PUT, FakeApi.class.getName(), "sig " + value, "res", Collections.<String, String>emptyMap(), params);
+    }
+
+    private static List<String> values(List<OutboxJournal.Record> records) {
+        List<String> values = new ArrayList<>();
+        for(OutboxJournal.Record record : records) {
+            values.add(record.params.get("v"));
+        }
+        return values;
+    }
+
+    private static void setLength(File file, long length) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.api.capability.Puttable;
+import com.rhoadster91.android.siesta.request.PutRequest;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private ApiExecutor mApiExecutor;
+    private File mDirectory;
+    private Outbox mOutbox;
+    private final BlockingQueue<String> mEvents = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mApiExecutor = new ApiExecutor(2);
+        mDirectory = mFolder.newFolder();
+        mOutbox = open();
+    }
+
+    private Outbox open() throws IOException {
+        Outbox outbox = new Outbox(mApiExecutor, mDirectory);
+        outbox.setListener(new Outbox.Listener() {
+            @Override
+            public void onDelivered(long id, int responseCode, Object response) {
+                mEvents.add("delivered " + response);
+            }
+
+            @Override
+            public void onDropped(long id, int responseCode, Throwable t) {
+                mEvents.add("dropped " + responseCode);
+            }
+        });
+        return outbox;
+    }
+
+    @After
+    public void tearDown() {
+        mOutbox.close();
+    }
+
+    @Test
+    public void putReplacesUnsentPutToSameUrl() throws Exception {
+        FakePuttableApi api = new FakePuttableApi("http://example.com/items/1");
+        mOutbox.put(api, null, mApiExecutor.toMap("v", "first"));
+        mOutbox.put(api, null, mApiExecutor.toMap("v", "second"));
+        assertEquals(1, mOutbox.getPendingCount());
+        mOutbox.start();
+        assertEquals("delivered second", mEvents.poll(5, TimeUnit.SECONDS));
+        assertNull(mEvents.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals("[second]", api.bodies.toString());
+    }
+
+    @Test
+    public void putsToDifferentUrlsAreBothSent() throws Exception {
+        mOutbox.put(new FakePuttableApi("http://example.com/items/1"), null, mApiExecutor.toMap("v", "a"));
+        mOutbox.put(new FakePuttableApi("http://example.com/items/2"), null, mApiExecutor.toMap("v", "a"));
+        assertEquals(2, mOutbox.getPendingCount());
+        mOutbox.start();
+        assertEquals("delivered a", mEvents.poll(5, TimeUnit.SECONDS));
+        assertEquals("delivered a", mEvents.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void nonIoExceptionDropsEntry() throws Exception {
+        mOutbox.put(new FakePuttableApi("http://example.com/items/1"), null, mApiExecutor.toMap("v", "bug"));
+        mOutbox.start();
+        assertEquals("dropped 0", mEvents.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, mOutbox.getPendingCount());
+    }
+
+    @Test
+    public void clientErrorDropsEntry() throws Exception {
+        mOutbox.put(new FakePuttableApi("http://example.com/items/1"), null, mApiExecutor.toMap("v", "400"));
+        mOutbox.start();
+        assertEquals("dropped 400", mEvents.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, mOutbox.getPendingCount());
+    }
+
+    @Test
+    public void ioExceptionKeepsEntry() throws Exception {
+        FakePuttableApi api = new FakePuttableApi("http://example.com/items/1");
+        mOutbox.put(api, null, mApiExecutor.toMap("v", "offline"));
+        mOutbox.start();
+        assertNull(mEvents.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, api.bodies.size());
+        assertEquals(1, mOutbox.getPendingCount());
+    }
+
+    @Test
+    public void credentialsAreSentButNotJournaled() throws Exception {
+        FakePuttableApi api = new FakePuttableApi("http://example.com/items/1");
+        Map<String, String> headers = mApiExecutor.toMap("Authorization", "Bearer secret", "X-Trace", "t1");
+        mOutbox.put(api, headers, mApiExecutor.toMap("v", "offline"));
+        mOutbox.flush();
+        assertFalse(new String(readJournal(), "UTF-8").contains("secret"));
+
+        mOutbox.start();
+        assertTrue(waitFor(api.headers, 1));
+        assertEquals("Bearer secret", api.headers.get(0).get("Authorization"));
+        assertEquals("t1", api.headers.get(0).get("X-Trace"));
+    }
+
+    @Test
+    public void replayedEntriesGetCredentialsFromHeaderProvider() throws Exception {
+        mOutbox.put(new FakePuttableApi("http://example.com/items/1"), mApiExecutor.toMap("Cookie", "session=secret", "X-Trace", "t1"), mApiExecutor.toMap("v", "a"));
+        mOutbox.close();
+
+        final FakePuttableApi api = new FakePuttableApi("http://example.com/items/1");
+        mOutbox = open();
+        mOutbox.setApiFactory(new Outbox.ApiFactory() {
+            @Override
+            public Api create(String apiClass) {
+                return api;
+            }
+        });
+        mOutbox.setHeaderProvider(new Outbox.HeaderProvider() {
+            @Override
+            public Map<String, String> getHeaders(Api api) {
+                return mApiExecutor.toMap("Cookie", "session=fresh");
+            }
+        });
+        mOutbox.start();
+        assertEquals("delivered a", mEvents.poll(5, TimeUnit.SECONDS));
+        assertEquals("session=fresh", api.headers.get(0).get("Cookie"));
+        assertEquals("t1", api.headers.get(0).get("X-Trace"));
+    }
+
+    private byte[] readJournal() throws IOException {
+        File journal = new File(mDirectory, "outbox");
+        byte[] bytes = new byte[(int) journal.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(journal));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static boolean waitFor(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return list.size() >= size;
+    }
+
+    // Answers a put with its "v" param. "bug" throws an IllegalStateException,
+    // "offline" an IOException and a number is returned as the response code.
+    static class FakePuttableApi extends PuttableApi<String> {
+
+        final List<String> bodies = new CopyOnWriteArrayList<>();
+        final List<Map<String, String>> headers = new CopyOnWriteArrayList<>();
+
+        private final String mUrl;
+
+        FakePuttableApi(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public String getApiUrl() {
+            return mUrl;
+        }
+
+        @Override
+        public PutRequest<String> newPutRequest() {
+            return new PutRequest<String>() {
+                @Override
+                public <A extends Api & Puttable<String>> void put(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<String> responseWrapper) throws Throwable {
+                    String value = params.get("v");
+                    bodies.add(value);
+                    FakePuttableApi.this.headers.add(headers);
+                    if("bug".equals(value)) {
+                        throw new IllegalStateException(value);
+                    }
+                    if("offline".equals(value)) {
+                        throw new IOException(value);
+                    }
+                    responseWrapper.setCode(value.matches("\\d+") ? Integer.parseInt(value) : 200);
+                    responseWrapper.setResponse(value);
+                }
+            };
+        }
+    }
+}
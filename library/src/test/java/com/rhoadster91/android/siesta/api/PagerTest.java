@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import com.rhoadster91.android.siesta.api.capability.Gettable;
+import com.rhoadster91.android.siesta.api.capability.Pageable;
+import com.rhoadster91.android.siesta.request.GetRequest;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PagerTest {
+
+    // Pages 1 to PAGES, each answered with "page<n>"; page failAt fails once.
+    private static class PagedApi extends GettableApi<String> implements Pageable<String> {
+
+        static final int PAGES = 4;
+
+        final AtomicInteger fetches = new AtomicInteger();
+        volatile int failAt;
+
+        @Override
+        public String getApiUrl() {
+            return "http://example.com/feed";
+        }
+
+        @Override
+        public Map<String, String> getNextPageParams(Map<String, String> params, String response) {
+            int page = Integer.parseInt(params.get("page"));
+            return page < PAGES ? Collections.singletonMap("page", String.valueOf(page + 1)) : null;
+        }
+
+        @Override
+        public GetRequest<String> newGetRequest() {
+            return new GetRequest<String>() {
+                @Override
+                public <A extends Api & Gettable<String>> void get(A api, Map<String, String> params, Map<String, String> headers, ResponseWrapper<String> responseWrapper) throws Throwable {
+                    fetches.incrementAndGet();
+                    int page = Integer.parseInt(params.get("page"));
+                    if(page == failAt) {
+                        failAt = 0;
+                        responseWrapper.setCode(500);
+                        return;
+                    }
+                    responseWrapper.setCode(200);
+                    responseWrapper.setResponse("page" + page);
+                }
+            };
+        }
+    }
+
+    private static class RecordingListener implements Pager.PageListener<String> {
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onPage(int index, int responseCode, String page) {
+            events.add(index + " " + page);
+        }
+
+        @Override
+        public void onEnd() {
+            events.add("end");
+        }
+
+        @Override
+        public void onError(int index, int responseCode, String response, Throwable t) {
+            events.add(index + " error " + responseCode);
+        }
+
+        String next() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private ApiExecutor mApiExecutor;
+    private PagedApi mApi;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() throws Exception {
+        mApiExecutor = new ApiExecutor(4);
+        mApiExecutor.setCallbackExecutor(CallbackExecutors.immediate());
+        mApi = new PagedApi();
+        mListener = new RecordingListener();
+    }
+
+    @Test
+    public void deliversOnlyRequestedPages() throws Exception {
+        Pager<String> pager = mApiExecutor.page(mApi, mApiExecutor.toMap("page", "1"), mListener);
+        pager.request(1);
+        assertEquals("0 page1", mListener.next());
+        assertNull(mListener.events.poll(200, TimeUnit.MILLISECONDS));
+        pager.request(2);
+        assertEquals("1 page2", mListener.next());
+        assertEquals("2 page3", mListener.next());
+    }
+
+    @Test
+    public void fetchesNoFurtherThanLookaheadAhead() throws Exception {
+        Pager<String> pager = mApiExecutor.page(mApi, null, mApiExecutor.toMap("page", "1"), 2, mListener);
+        Thread.sleep(200);
+        assertEquals(2, mApi.fetches.get());
+        assertEquals(2, pager.getBufferedCount());
+        pager.request(1);
+        assertEquals("0 page1", mListener.next());
+        Thread.sleep(200);
+        assertEquals(3, mApi.fetches.get());
+    }
+
+    @Test
+    public void endsAfterLastPage() throws Exception {
+        Pager<String> pager = mApiExecutor.page(mApi, mApiExecutor.toMap("page", "1"), mListener);
+        pager.request(Long.MAX_VALUE);
+        for(int i = 1; i <= PagedApi.PAGES; i++) {
+            assertEquals((i - 1) + " page" + i, mListener.next());
+        }
+        assertEquals("end", mListener.next());
+        assertFalse(pager.hasMore());
+        assertNull(mListener.events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void retryResumesFromFailedPage() throws Exception {
+        mApi.failAt = 2;
+        Pager<String> pager = mApiExecutor.page(mApi, mApiExecutor.toMap("page", "1"), mListener);
+        pager.request(Long.MAX_VALUE);
+        assertEquals("0 page1", mListener.next());
+        assertEquals("1 error 500", mListener.next());
+        pager.retry();
+        assertEquals("1 page2", mListener.next());
+        assertEquals("2 page3", mListener.next());
+    }
+
+    @Test
+    public void cancelledPagerDeliversNothing() throws Exception {
+        Pager<String> pager = mApiExecutor.page(mApi, mApiExecutor.toMap("page", "1"), mListener);
+        pager.cancel();
+        pager.request(10);
+        assertTrue(pager.isCancelled());
+        assertNull(mListener.events.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class RequestSchedulerTest {
+
+    // Holds on to what the scheduler hands it until the test runs it.
+    private static class ManualExecutor implements Executor {
+
+        final List<Runnable> pending = new ArrayList<>();
+        int rejectNext;
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            if(rejectNext > 0) {
+                rejectNext--;
+                throw new RejectedExecutionException();
+            }
+            pending.add(command);
+        }
+
+        void runNext() {
+            Runnable next;
+            synchronized (this) {
+                next = pending.remove(0);
+            }
+            next.run();
+        }
+
+        synchronized int size() {
+            return pending.size();
+        }
+    }
+
+    private static class Task implements Runnable, RequestScheduler.Rejectable {
+
+        final String name;
+        final List<String> log;
+
+        Task(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void run() {
+            log.add(name);
+        }
+
+        @Override
+        public void reject(Throwable throwable) {
+            log.add("rejected " + name);
+        }
+    }
+
+    private final ManualExecutor mExecutor = new ManualExecutor();
+    private final List<String> mLog = new ArrayList<>();
+
+    private Task task(String name) {
+        return new Task(name, mLog);
+    }
+
+    @Test
+    public void runsNoMoreThanMaxRunning() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 2);
+        scheduler.enqueue(task("a"), Priority.NORMAL);
+        scheduler.enqueue(task("b"), Priority.NORMAL);
+        scheduler.enqueue(task("c"), Priority.NORMAL);
+        assertEquals(2, mExecutor.size());
+        assertEquals(1, scheduler.queuedCount());
+        assertEquals(2, scheduler.runningCount());
+        mExecutor.runNext();
+        assertEquals(2, mExecutor.size());
+        assertEquals(0, scheduler.queuedCount());
+    }
+
+    @Test
+    public void runsHigherPriorityFirst() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        scheduler.setAgingInterval(0);
+        scheduler.enqueue(task("blocker"), Priority.NORMAL);
+        scheduler.enqueue(task("background"), Priority.BACKGROUND);
+        scheduler.enqueue(task("normal"), Priority.NORMAL);
+        scheduler.enqueue(task("immediate"), Priority.IMMEDIATE);
+        while (mExecutor.size() > 0) {
+            mExecutor.runNext();
+        }
+        assertEquals("[blocker, immediate, normal, background]", mLog.toString());
+    }
+
+    @Test
+    public void keepsFifoOrderWithinPriority() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        for(int i = 0; i < 5; i++) {
+            scheduler.enqueue(task("t" + i), Priority.NORMAL);
+        }
+        while (mExecutor.size() > 0) {
+            mExecutor.runNext();
+        }
+        assertEquals("[t0, t1, t2, t3, t4]", mLog.toString());
+    }
+
+    @Test
+    public void agingPromotesLongQueuedTasks() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        scheduler.setAgingInterval(10);
+        scheduler.enqueue(task("blocker"), Priority.NORMAL);
+        scheduler.enqueue(task("old background"), Priority.BACKGROUND);
+        Thread.sleep(50);
+        scheduler.enqueue(task("new normal"), Priority.NORMAL);
+        while (mExecutor.size() > 0) {
+            mExecutor.runNext();
+        }
+        assertEquals("[blocker, old background, new normal]", mLog.toString());
+    }
+
+    @Test
+    public void limitsRunningPerHost() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 10);
+        scheduler.setMaxRunningPerHost(1);
+        scheduler.enqueue(task("a1"), Priority.NORMAL, "a", null);
+        scheduler.enqueue(task("a2"), Priority.NORMAL, "a", null);
+        scheduler.enqueue(task("b1"), Priority.NORMAL, "b", null);
+        assertEquals(2, mExecutor.size());
+        assertEquals(1, scheduler.runningCount("a"));
+        assertEquals(1, scheduler.runningCount("b"));
+        mExecutor.runNext();
+        mExecutor.runNext();
+        assertEquals(1, mExecutor.size());
+        mExecutor.runNext();
+        assertEquals("[a1, b1, a2]", mLog.toString());
+        assertEquals(0, scheduler.runningCount("a"));
+    }
+
+    @Test
+    public void limitsRunningBackgroundTasks() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 10);
+        scheduler.setMaxBackgroundRunning(1);
+        scheduler.enqueue(task("bg1"), Priority.BACKGROUND);
+        scheduler.enqueue(task("bg2"), Priority.PREFETCH);
+        scheduler.enqueue(task("normal"), Priority.NORMAL);
+        assertEquals(2, mExecutor.size());
+        assertEquals(1, scheduler.queuedCount());
+    }
+
+    @Test
+    public void raisingBackgroundLimitStartsQueuedTasks() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 10);
+        scheduler.setMaxBackgroundRunning(1);
+        scheduler.enqueue(task("bg1"), Priority.BACKGROUND);
+        scheduler.enqueue(task("bg2"), Priority.BACKGROUND);
+        assertEquals(1, mExecutor.size());
+        scheduler.setMaxBackgroundRunning(2);
+        assertEquals(2, mExecutor.size());
+        assertEquals(0, scheduler.queuedCount());
+    }
+
+    @Test
+    public void shutdownFailsQueuedAndLaterTasks() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        scheduler.enqueue(task("running"), Priority.NORMAL);
+        scheduler.enqueue(task("queued"), Priority.NORMAL);
+        scheduler.shutdown();
+        assertTrue(scheduler.isShutdown());
+        assertEquals(0, scheduler.queuedCount());
+        scheduler.enqueue(task("late"), Priority.NORMAL);
+        assertFalse(scheduler.offer(task("offered"), Priority.NORMAL, null, null, true));
+        mExecutor.runNext();
+        assertEquals(0, mExecutor.size());
+        assertEquals("[rejected queued, rejected late, running]", mLog.toString());
+    }
+
+    @Test
+    public void shutdownFailsDelayedTasksWithoutWaitingForThem() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        scheduler.enqueueDelayed(task("retry"), Priority.NORMAL, null, null, 60000);
+        scheduler.shutdown();
+        assertEquals("[rejected retry]", mLog.toString());
+        scheduler.enqueueDelayed(task("late retry"), Priority.NORMAL, null, null, 10);
+        assertEquals("[rejected retry, rejected late retry]", mLog.toString());
+        assertEquals(0, mExecutor.size());
+    }
+
+    @Test
+    public void reprioritizeMovesQueuedTask() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        scheduler.setAgingInterval(0);
+        Task prefetch = task("prefetch");
+        scheduler.enqueue(task("blocker"), Priority.NORMAL);
+        scheduler.enqueue(prefetch, Priority.PREFETCH);
+        scheduler.enqueue(task("normal"), Priority.NORMAL);
+        assertTrue(scheduler.reprioritize(prefetch, Priority.IMMEDIATE));
+        while (mExecutor.size() > 0) {
+            mExecutor.runNext();
+        }
+        assertEquals("[blocker, prefetch, normal]", mLog.toString());
+        assertFalse(scheduler.reprioritize(prefetch, Priority.IMMEDIATE));
+    }
+
+    @Test
+    public void dequeuedTaskNeverRuns() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        Task dropped = task("dropped");
+        scheduler.enqueue(task("blocker"), Priority.NORMAL);
+        scheduler.enqueue(dropped, Priority.NORMAL);
+        assertTrue(scheduler.dequeue(dropped));
+        assertFalse(scheduler.dequeue(dropped));
+        mExecutor.runNext();
+        assertEquals(0, mExecutor.size());
+        assertEquals("[blocker]", mLog.toString());
+    }
+
+    @Test
+    public void failFastOfferRejectsWhenQueueIsFull() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        scheduler.setMaxQueued(1, OverflowPolicy.FAIL_FAST);
+        assertTrue(scheduler.offer(task("running"), Priority.NORMAL, null, null, true));
+        assertTrue(scheduler.offer(task("queued"), Priority.NORMAL, null, null, true));
+        assertFalse(scheduler.offer(task("rejected"), Priority.NORMAL, null, null, true));
+        mExecutor.runNext();
+        assertTrue(scheduler.offer(task("admitted"), Priority.NORMAL, null, null, true));
+    }
+
+    @Test
+    public void blockingOfferWaitsForRoom() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        scheduler.setMaxQueued(1, OverflowPolicy.BLOCK);
+        scheduler.offer(task("running"), Priority.NORMAL, null, null, true);
+        scheduler.offer(task("queued"), Priority.NORMAL, null, null, true);
+        final boolean[] admitted = new boolean[1];
+        Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                admitted[0] = scheduler.offer(task("waiting"), Priority.NORMAL, null, null, true);
+            }
+        });
+        submitter.start();
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+        mExecutor.runNext();
+        submitter.join(5000);
+        assertFalse(submitter.isAlive());
+        assertTrue(admitted[0]);
+        assertFalse(scheduler.offer(task("not blocking"), Priority.NORMAL, null, null, false));
+    }
+
+    @Test
+    public void rejectedEntryFreesItsSlotForQueuedOnes() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(mExecutor, 1);
+        scheduler.enqueue(task("a"), Priority.NORMAL);
+        scheduler.enqueue(task("b"), Priority.NORMAL);
+        scheduler.enqueue(task("c"), Priority.NORMAL);
+        scheduler.enqueue(task("d"), Priority.NORMAL);
+        assertEquals(1, mExecutor.size());
+        synchronized (mExecutor) {
+            mExecutor.rejectNext = 2;
+        }
+        mExecutor.runNext();
+        assertEquals(1, mExecutor.size());
+        mExecutor.runNext();
+        assertEquals("[a, rejected b, rejected c, d]", mLog.toString());
+        assertEquals(0, scheduler.queuedCount());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.api;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void retryAfterSecondsAreConvertedToMillis() {
+        assertEquals(120000, RetryPolicy.parseRetryAfter(" 120 "));
+        assertEquals(0, RetryPolicy.parseRetryAfter("-5"));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon"));
+    }
+
+    @Test
+    public void hugeRetryAfterSecondsSaturate() {
+        assertEquals(Long.MAX_VALUE, RetryPolicy.parseRetryAfter("9223372036854776"));
+        assertEquals(Long.MAX_VALUE, RetryPolicy.parseRetryAfter(String.valueOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void retryAfterDelayIsCappedAtMaxDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 100, 5000);
+        assertEquals(2000, retryPolicy.getDelay(0, "2"));
+        assertEquals(5000, retryPolicy.getDelay(0, "60"));
+        assertEquals(5000, retryPolicy.getDelay(0, "9223372036854776"));
+    }
+
+    @Test
+    public void retryAfterDateIsCappedAtMaxDelay() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String date = format.format(new Date(System.currentTimeMillis() + 24L * 60 * 60 * 1000));
+        RetryPolicy retryPolicy = new RetryPolicy(3, 100, 5000);
+        assertEquals(5000, retryPolicy.getDelay(0, date));
+        assertEquals(0, retryPolicy.getDelay(0, "Thu, 01 Jan 1970 00:00:00 GMT"));
+    }
+
+    @Test
+    public void ignoredRetryAfterFallsBackToBackoff() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 100, 5000).withRetryAfter(false);
+        for(int attempt = 0; attempt < 40; attempt++) {
+            long delay = retryPolicy.getDelay(attempt, "60");
+            assertTrue(delay >= 0 && delay <= 5000);
+        }
+    }
+}
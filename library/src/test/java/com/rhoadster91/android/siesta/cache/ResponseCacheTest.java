@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() throws Exception {
+        ResponseCache cache = new ResponseCache(2, 100);
+        cache.put("a", 200, "A", 10000, 1);
+        cache.put("b", 200, "B", 10000, 1);
+        assertNotNull(cache.get("a"));
+        cache.put("c", 200, "C", 10000, 1);
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a").getResponse());
+        assertEquals("C", cache.get("c").getResponse());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void evictsBySize() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 10);
+        cache.put("a", 200, "A", 10000, 6);
+        cache.put("b", 200, "B", 10000, 6);
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertEquals(6, cache.size());
+    }
+
+    @Test
+    public void replacingEntryUpdatesSize() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 10);
+        cache.put("a", 200, "A", 10000, 6);
+        cache.put("a", 200, "A2", 10000, 3);
+        assertEquals(1, cache.entryCount());
+        assertEquals(3, cache.size());
+        assertEquals("A2", cache.get("a").getResponse());
+    }
+
+    @Test
+    public void doesNotStoreOversizeOrUncacheableEntries() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 10);
+        cache.put("a", 200, "A", 10000, 11);
+        assertNull(cache.get("a"));
+        cache.put("b", 200, "B", 10000, 1);
+        cache.put("b", 200, "B2", 0, 1);
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void expiresAfterTtl() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 100);
+        cache.put("a", 200, "A", 50, 1);
+        assertNotNull(cache.get("a"));
+        Thread.sleep(80);
+        assertFalse(cache.contains("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.expiredCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void expiredEntryIsRemovedPastMaxStaleness() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 100);
+        cache.setMaxStaleness(20);
+        cache.put("a", 200, "A", 20, 1);
+        Thread.sleep(60);
+        assertNull(cache.get("a", 10000));
+        assertEquals(1, cache.expiredCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void freshOnlyLookupKeepsStaleEntryForLaterStaleLookup() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 100);
+        cache.put("a", 200, "A", 20, 1);
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        ResponseCache.Entry stale = cache.get("a", 10000);
+        assertNotNull(stale);
+        assertTrue(stale.isStale());
+    }
+
+    @Test
+    public void servesStaleEntriesWithinMaxStaleness() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 100);
+        cache.put("a", 200, "A", 20, 1);
+        assertFalse(cache.get("a").isStale());
+        Thread.sleep(50);
+        ResponseCache.Entry stale = cache.get("a", 10000);
+        assertNotNull(stale);
+        assertTrue(stale.isStale());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void containsDoesNotCountTowardsStatistics() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 100);
+        cache.put("a", 200, "A", 10000, 1);
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertEquals(0, cache.hitCount());
+        assertEquals(0, cache.missCount());
+    }
+}
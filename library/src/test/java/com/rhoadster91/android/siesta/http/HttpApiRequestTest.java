@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class HttpApiRequestTest {
+
+    private static final Map<String, String> NONE = Collections.emptyMap();
+    private static final String BODY = "{\"items\":[\"a\",\"b\",\"c\",\"a\",\"b\",\"c\",\"a\",\"b\",\"c\"]}";
+
+    private TestServer mServer;
+    private SimpleHttpApiRequest mRequest;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestServer();
+        mRequest = new SimpleHttpApiRequest(new UrlConnectionTransport(), null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeflaterOutputStream deflate = new DeflaterOutputStream(out);
+        deflate.write(bytes);
+        deflate.close();
+        return out.toByteArray();
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+        return new String(ResponseBodyReader.readBytes(in, -1), "UTF-8");
+    }
+
+    @Test
+    public void gzipResponseIsDecoded() throws Throwable {
+        mServer.enqueue(200, gzip(BODY.getBytes("UTF-8")), "Content-Encoding", "gzip");
+        TestApi api = new TestApi(mServer.url("/items"));
+        api.responseCompression = true;
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        mRequest.get(api, NONE, NONE, responseWrapper);
+        assertEquals(BODY, responseWrapper.getResponse());
+        assertEquals("gzip, deflate", mServer.takeRequest().headers.get("Accept-Encoding"));
+    }
+
+    @Test
+    public void deflateResponseIsDecoded() throws Throwable {
+        mServer.enqueue(200, deflate(BODY.getBytes("UTF-8")), "Content-Encoding", "deflate");
+        TestApi api = new TestApi(mServer.url("/items"));
+        api.responseCompression = true;
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        mRequest.get(api, NONE, NONE, responseWrapper);
+        assertEquals(BODY, responseWrapper.getResponse());
+    }
+
+    @Test
+    public void compressedErrorBodyIsDecoded() throws Throwable {
+        mServer.enqueue(500, gzip("{\"error\":\"boom\"}".getBytes("UTF-8")), "Content-Encoding", "gzip");
+        TestApi api = new TestApi(mServer.url("/items"));
+        api.responseCompression = true;
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        mRequest.get(api, NONE, NONE, responseWrapper);
+        assertEquals(500, responseWrapper.getCode());
+        assertEquals("{\"error\":\"boom\"}", responseWrapper.getResponse());
+    }
+
+    @Test
+    public void responseCompressionIsOptIn() throws Throwable {
+        mServer.enqueue(200, BODY.getBytes("UTF-8"));
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        mRequest.get(new TestApi(mServer.url("/items")), NONE, NONE, responseWrapper);
+        assertEquals(BODY, responseWrapper.getResponse());
+        assertNull(mServer.takeRequest().headers.get("Accept-Encoding"));
+    }
+
+    @Test
+    public void callerAcceptEncodingIsKept() throws Throwable {
+        mServer.enqueue(200, BODY.getBytes("UTF-8"));
+        TestApi api = new TestApi(mServer.url("/items"));
+        api.responseCompression = true;
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept-Encoding", "identity");
+        mRequest.get(api, NONE, headers, new ResponseWrapper<String>());
+        assertEquals("identity", mServer.takeRequest().headers.get("Accept-Encoding"));
+    }
+
+    @Test
+    public void requestBodyAtThresholdIsGzipped() throws Throwable {
+        mServer.enqueue(201, new byte[0]);
+        TestApi api = new TestApi(mServer.url("/items"));
+        api.body = BODY;
+        api.requestCompressionThreshold = BODY.length();
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        mRequest.post(api, NONE, NONE, responseWrapper);
+        TestServer.Request request = mServer.takeRequest();
+        assertEquals("gzip", request.headers.get("Content-Encoding"));
+        assertEquals(BODY, gunzip(request.body));
+        assertEquals(request.body.length, responseWrapper.getBytesSent());
+    }
+
+    @Test
+    public void requestBodyBelowThresholdIsSentAsIs() throws Throwable {
+        mServer.enqueue(201, new byte[0]);
+        TestApi api = new TestApi(mServer.url("/items"));
+        api.body = BODY;
+        api.requestCompressionThreshold = BODY.length() + 1;
+        mRequest.post(api, NONE, NONE, new ResponseWrapper<String>());
+        TestServer.Request request = mServer.takeRequest();
+        assertNull(request.headers.get("Content-Encoding"));
+        assertEquals(BODY, new String(request.body, "UTF-8"));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class HttpDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static HttpDiskCache.Entry entry(int bodySize) {
+        return new HttpDiskCache.Entry(200, "\"v1\"", null, "text/plain", 0, 60000, new byte[bodySize]);
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws Exception {
+        File directory = mFolder.newFolder();
+        HttpDiskCache cache = new HttpDiskCache(directory, 10000);
+        cache.put("http://example.com/a", entry(10));
+        cache.close();
+
+        cache = new HttpDiskCache(directory, 10000);
+        HttpDiskCache.Entry entry = cache.get("http://example.com/a");
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.getEtag());
+        assertEquals(10, entry.getBody().length);
+    }
+
+    @Test
+    public void oversizedEntryDoesNotEvictOthers() throws Exception {
+        HttpDiskCache cache = new HttpDiskCache(mFolder.newFolder(), 1000);
+        cache.put("http://example.com/a", entry(100));
+        cache.put("http://example.com/b", entry(100));
+        cache.put("http://example.com/huge", entry(5000));
+        assertEquals(2, cache.entryCount());
+        assertNotNull(cache.get("http://example.com/a"));
+        assertNotNull(cache.get("http://example.com/b"));
+        assertNull(cache.get("http://example.com/huge"));
+    }
+
+    @Test
+    public void oversizedEntryReplacesPreviousVersion() throws Exception {
+        HttpDiskCache cache = new HttpDiskCache(mFolder.newFolder(), 1000);
+        cache.put("http://example.com/a", entry(100));
+        cache.put("http://example.com/a", entry(5000));
+        assertEquals(0, cache.entryCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void missingEntryFileStopsCountingTowardsSize() throws Exception {
+        File directory = mFolder.newFolder();
+        HttpDiskCache cache = new HttpDiskCache(directory, 10000);
+        cache.put("http://example.com/a", entry(100));
+        assertTrue(cache.size() > 0);
+        assertTrue(new File(directory, HttpDiskCache.keyFor("http://example.com/a") + ".entry").delete());
+
+        assertNull(cache.get("http://example.com/a"));
+        assertEquals(0, cache.entryCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void orphanedFilesAreDeletedOnOpen() throws Exception {
+        File directory = mFolder.newFolder();
+        HttpDiskCache cache = new HttpDiskCache(directory, 10000);
+        cache.put("http://example.com/a", entry(100));
+        cache.close();
+        File tmp = new File(directory, "abc123.tmp");
+        File orphan = new File(directory, HttpDiskCache.keyFor("http://example.com/b") + ".entry");
+        assertTrue(tmp.createNewFile());
+        assertTrue(orphan.createNewFile());
+
+        cache = new HttpDiskCache(directory, 10000);
+        assertFalse(tmp.exists());
+        assertFalse(orphan.exists());
+        assertNotNull(cache.get("http://example.com/a"));
+    }
+}
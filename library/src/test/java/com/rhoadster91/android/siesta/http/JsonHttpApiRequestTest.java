@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.json.JsonCodecs;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JsonHttpApiRequestTest {
+
+    private static final Map<String, String> NONE = Collections.emptyMap();
+
+    private TestServer mServer;
+    private ConnectionStats mStats;
+    private UrlConnectionTransport mTransport;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestServer();
+        mStats = new ConnectionStats();
+        mTransport = new UrlConnectionTransport(mStats);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void successBodyIsDecodedInItsCharset() throws Throwable {
+        mServer.enqueue(200, "\"caf\u00e9\"".getBytes("ISO-8859-1"), "Content-Type", "application/json; charset=ISO-8859-1");
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        new JsonHttpApiRequest<>(mTransport, JsonCodecs.STRING).get(new TestApi(mServer.url("/json")), NONE, NONE, responseWrapper);
+        assertEquals(200, responseWrapper.getCode());
+        assertEquals("caf\u00e9", responseWrapper.getResponse());
+        assertEquals(1, mStats.getReusableCount());
+    }
+
+    @Test
+    public void errorBodyIsNotDecoded() throws Throwable {
+        mServer.enqueue(404, "<html>not found</html>".getBytes("UTF-8"));
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        new JsonHttpApiRequest<>(mTransport, JsonCodecs.STRING).get(new TestApi(mServer.url("/json")), NONE, NONE, responseWrapper);
+        assertEquals(404, responseWrapper.getCode());
+        assertNull(responseWrapper.getResponse());
+        assertEquals(0, mStats.getActiveCount());
+    }
+
+    @Test
+    public void noContentIsNotDecoded() throws Throwable {
+        mServer.enqueue(204, new byte[0]);
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        new JsonHttpApiRequest<>(mTransport, JsonCodecs.STRING).get(new TestApi(mServer.url("/json")), NONE, NONE, responseWrapper);
+        assertEquals(204, responseWrapper.getCode());
+        assertNull(responseWrapper.getResponse());
+    }
+}
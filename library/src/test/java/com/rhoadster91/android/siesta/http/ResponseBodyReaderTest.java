@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResponseBodyReaderTest {
+
+    // Hands out at most a few bytes per read, like a slow socket.
+    private static class TrickleInputStream extends ByteArrayInputStream {
+
+        TrickleInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 7));
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void readsKnownLengthAcrossShortReads() throws Exception {
+        byte[] body = randomBytes(1000);
+        assertArrayEquals(body, ResponseBodyReader.readBytes(new TrickleInputStream(body), body.length));
+    }
+
+    @Test
+    public void readsUnknownLengthAcrossSegments() throws Exception {
+        byte[] body = randomBytes(3 * BufferPool.SEGMENT_SIZE + 17);
+        assertArrayEquals(body, ResponseBodyReader.readBytes(new ByteArrayInputStream(body), -1));
+        assertArrayEquals(body, ResponseBodyReader.readBytes(new TrickleInputStream(body), -1));
+    }
+
+    @Test
+    public void readsUnknownLengthOfExactlyOneSegment() throws Exception {
+        byte[] body = randomBytes(BufferPool.SEGMENT_SIZE);
+        assertArrayEquals(body, ResponseBodyReader.readBytes(new ByteArrayInputStream(body), -1));
+    }
+
+    @Test
+    public void emptyAndMissingBodiesAreEmpty() throws Exception {
+        assertEquals(0, ResponseBodyReader.readBytes(null, 10).length);
+        assertEquals(0, ResponseBodyReader.readBytes(new ByteArrayInputStream(new byte[0]), -1).length);
+        assertEquals(0, ResponseBodyReader.readBytes(new ByteArrayInputStream(new byte[0]), 0).length);
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedBodyIsAnError() throws Exception {
+        ResponseBodyReader.readBytes(new ByteArrayInputStream(new byte[10]), 20);
+    }
+
+    @Test
+    public void charsetComesFromContentType() throws Exception {
+        assertEquals(Charset.forName("ISO-8859-1"), ResponseBodyReader.charsetOf("text/plain; charset=ISO-8859-1"));
+        assertEquals(Charset.forName("ISO-8859-1"), ResponseBodyReader.charsetOf("text/plain;CHARSET=\"iso-8859-1\""));
+        assertEquals(Charset.forName("UTF-16BE"), ResponseBodyReader.charsetOf("application/json; q=1; charset=utf-16be"));
+    }
+
+    @Test
+    public void missingOrUnknownCharsetIsUtf8() throws Exception {
+        assertEquals(ResponseBodyReader.DEFAULT_CHARSET, ResponseBodyReader.charsetOf(null));
+        assertEquals(ResponseBodyReader.DEFAULT_CHARSET, ResponseBodyReader.charsetOf("application/json"));
+        assertEquals(ResponseBodyReader.DEFAULT_CHARSET, ResponseBodyReader.charsetOf("text/plain; charset=no-such-charset"));
+        assertEquals(ResponseBodyReader.DEFAULT_CHARSET, ResponseBodyReader.charsetOf("text/plain; charset="));
+    }
+
+    @Test
+    public void readStringDecodesWithTheDeclaredCharset() throws Exception {
+        byte[] latin1 = {'c', 'a', 'f', (byte) 0xe9};
+        assertEquals("caf\u00e9", ResponseBodyReader.readString(new ByteArrayInputStream(latin1), latin1.length, "text/plain; charset=ISO-8859-1"));
+        byte[] utf8 = "caf\u00e9".getBytes("UTF-8");
+        assertEquals("caf\u00e9", ResponseBodyReader.readString(new TrickleInputStream(utf8), -1, null));
+        assertFalse(Arrays.equals(latin1, utf8));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class SimpleHttpApiRequestTest {
+
+    private static class FakeConnection extends HttpURLConnection {
+
+        private final Map<String, String> mHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        FakeConnection(String... headers) throws Exception {
+            super(new URL("http://example.com/"));
+            for(int i = 0; i < headers.length; i += 2) {
+                mHeaders.put(headers[i], headers[i + 1]);
+            }
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return mHeaders.get(name);
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+        }
+    }
+
+    @Test
+    public void readsMaxAge() throws Exception {
+        assertEquals(60000, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "public, max-age=60")));
+    }
+
+    @Test
+    public void noStoreWinsWhereverItAppears() throws Exception {
+        assertEquals(-1, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "no-cache, no-store")));
+        assertEquals(-1, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "max-age=60, no-store")));
+        assertEquals(-1, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "no-cache, private")));
+    }
+
+    @Test
+    public void noCacheRequiresRevalidation() throws Exception {
+        assertEquals(0, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "max-age=60, no-cache")));
+    }
+
+    @Test
+    public void hugeMaxAgeSaturates() throws Exception {
+        assertEquals(Long.MAX_VALUE, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "max-age=9223372036854776")));
+    }
+
+    @Test
+    public void responsesVaryingOnRequestHeadersAreNotStored() throws Exception {
+        assertEquals(-1, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "max-age=60", "Vary", "Accept-Language")));
+        assertEquals(-1, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "max-age=60", "Vary", "*")));
+        assertEquals(60000, SimpleHttpApiRequest.getMaxAge(new FakeConnection("Cache-Control", "max-age=60", "Vary", "Accept-Encoding")));
+    }
+
+    @Test
+    public void cacheKeySeparatesCredentials() throws Exception {
+        URL url = new URL("http://example.com/me");
+        Map<String, String> alice = new HashMap<>();
+        alice.put("Authorization", "Bearer alice");
+        Map<String, String> bob = new HashMap<>();
+        bob.put("authorization", "Bearer bob");
+        Map<String, String> anonymous = new HashMap<>();
+        anonymous.put("Accept", "text/plain");
+        String aliceKey = SimpleHttpApiRequest.cacheKey(url, alice);
+        assertNotEquals(aliceKey, SimpleHttpApiRequest.cacheKey(url, bob));
+        assertNotEquals(aliceKey, SimpleHttpApiRequest.cacheKey(url, anonymous));
+        assertEquals(url.toString(), SimpleHttpApiRequest.cacheKey(url, anonymous));
+        assertFalse(aliceKey.contains("alice"));
+    }
+}
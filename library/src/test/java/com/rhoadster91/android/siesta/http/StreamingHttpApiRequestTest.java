@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.response.ResponseReaderHandler;
+import com.rhoadster91.android.siesta.response.ResponseStreamHandler;
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StreamingHttpApiRequestTest {
+
+    private static final Map<String, String> NONE = Collections.emptyMap();
+
+    // Reads the body line by line, so the test sees what arrived and how.
+    private static class LinesHandler extends ResponseReaderHandler<String> {
+
+        int responseCode;
+
+        @Override
+        public String handleResponse(int responseCode, Reader body) throws Throwable {
+            this.responseCode = responseCode;
+            StringBuilder lines = new StringBuilder();
+            BufferedReader reader = (BufferedReader) body;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.append('[').append(line).append(']');
+            }
+            return lines.toString();
+        }
+    }
+
+    private TestServer mServer;
+    private ConnectionStats mStats;
+    private UrlConnectionTransport mTransport;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestServer();
+        mStats = new ConnectionStats();
+        mTransport = new UrlConnectionTransport(mStats);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void handlerReadsBodyInDeclaredCharset() throws Throwable {
+        mServer.enqueue(200, "caf\u00e9\nbar".getBytes("ISO-8859-1"), "Content-Type", "text/plain; charset=ISO-8859-1");
+        LinesHandler handler = new LinesHandler();
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        new StreamingHttpApiRequest<>(mTransport, handler).get(new TestApi(mServer.url("/lines")), NONE, NONE, responseWrapper);
+        assertEquals(200, handler.responseCode);
+        assertEquals(200, responseWrapper.getCode());
+        assertEquals("[caf\u00e9][bar]", responseWrapper.getResponse());
+        assertEquals(1, mStats.getReusableCount());
+        assertEquals(0, mStats.getActiveCount());
+    }
+
+    @Test
+    public void errorBodyIsStreamedToTheHandler() throws Throwable {
+        mServer.enqueue(400, "bad request".getBytes("UTF-8"));
+        LinesHandler handler = new LinesHandler();
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        new StreamingHttpApiRequest<>(mTransport, handler).get(new TestApi(mServer.url("/lines")), NONE, NONE, responseWrapper);
+        assertEquals(400, handler.responseCode);
+        assertEquals("[bad request]", responseWrapper.getResponse());
+    }
+
+    @Test
+    public void emptyBodyIsAnEmptyStream() throws Throwable {
+        mServer.enqueue(204, new byte[0]);
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        new StreamingHttpApiRequest<>(mTransport, new ResponseStreamHandler<String>() {
+            @Override
+            public String handleResponse(int responseCode, InputStream body, Charset charset) throws Throwable {
+                return body.read() == -1 ? "empty" : "not empty";
+            }
+        }).get(new TestApi(mServer.url("/empty")), NONE, NONE, responseWrapper);
+        assertEquals(204, responseWrapper.getCode());
+        assertEquals("empty", responseWrapper.getResponse());
+    }
+
+    @Test
+    public void handlerFailureAbortsTheConnection() throws Throwable {
+        mServer.enqueue(200, "{\"truncated\":".getBytes("UTF-8"));
+        ResponseWrapper<String> responseWrapper = new ResponseWrapper<>();
+        try {
+            new StreamingHttpApiRequest<>(mTransport, new ResponseStreamHandler<String>() {
+                @Override
+                public String handleResponse(int responseCode, InputStream body, Charset charset) throws Throwable {
+                    body.read();
+                    throw new IOException("malformed");
+                }
+            }).get(new TestApi(mServer.url("/broken")), NONE, NONE, responseWrapper);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("malformed", expected.getMessage());
+        }
+        assertNull(responseWrapper.getResponse());
+        assertEquals(1, mStats.getDiscardedCount());
+        assertEquals(0, mStats.getActiveCount());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.api.GettableApi;
+import com.rhoadster91.android.siesta.api.capability.Postable;
+import com.rhoadster91.android.siesta.request.GetRequest;
+import com.rhoadster91.android.siesta.request.PostRequest;
+
+import java.util.Map;
+
+// An Api whose URL, body and transport settings the test sets directly. Tests
+// drive the request classes themselves, so the factory methods are unused.
+class TestApi extends GettableApi<String> implements Postable<String> {
+
+    final String url;
+    String body = "";
+    boolean responseCompression;
+    int requestCompressionThreshold = -1;
+    long totalTimeout;
+
+    TestApi(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public String getApiUrl() {
+        return url;
+    }
+
+    @Override
+    public String processGetParams(Map<String, String> params) {
+        return url;
+    }
+
+    @Override
+    public String processPutParams(Map<String, String> params) {
+        return body;
+    }
+
+    @Override
+    public boolean isResponseCompressionEnabled() {
+        return responseCompression;
+    }
+
+    @Override
+    public int getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    @Override
+    public long getTotalTimeout() {
+        return totalTimeout;
+    }
+
+    @Override
+    public GetRequest<String> newGetRequest() {
+        return new SimpleHttpApiRequest();
+    }
+
+    @Override
+    public PostRequest<String> newPostRequest() {
+        return new SimpleHttpApiRequest();
+    }
+
+    @Override
+    public boolean isPostSuccess(int responseCode, String response) {
+        return responseCode >= 200 && responseCode < 300;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Serves queued responses from a local port and records the requests it was
+// sent. Unexpected requests get a 404.
+class TestServer {
+
+    static class Request {
+
+        final String method;
+        final String path;
+        final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final byte[] body;
+
+        Request(String method, String path, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.body = body;
+        }
+    }
+
+    private static class Response {
+
+        final int code;
+        final byte[] body;
+        final String[] headers;
+        final long delay;
+
+        Response(int code, byte[] body, String[] headers, long delay) {
+            this.code = code;
+            this.body = body;
+            this.headers = headers;
+            this.delay = delay;
+        }
+    }
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final BlockingQueue<Response> mResponses = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Request> mRequests = new LinkedBlockingQueue<>();
+
+    TestServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + path;
+    }
+
+    void enqueue(int code, byte[] body, String... headers) {
+        enqueueDelayed(code, body, 0, headers);
+    }
+
+    void enqueueDelayed(int code, byte[] body, long delay, String... headers) {
+        mResponses.add(new Response(code, body, headers, delay));
+    }
+
+    Request takeRequest() throws InterruptedException {
+        Request request = mRequests.poll(5, TimeUnit.SECONDS);
+        if(request == null) {
+            throw new AssertionError("No request arrived");
+        }
+        return request;
+    }
+
+    void shutdown() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            Request request = new Request(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), readFully(exchange.getRequestBody()));
+            for(Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+                request.headers.put(header.getKey(), header.getValue().get(0));
+            }
+            mRequests.add(request);
+
+            Response response = mResponses.poll();
+            if(response == null) {
+                response = new Response(404, new byte[0], new String[0], 0);
+            }
+            if(response.delay > 0) {
+                Thread.sleep(response.delay);
+            }
+            for(int i = 0; i < response.headers.length; i += 2) {
+                exchange.getResponseHeaders().add(response.headers[i], response.headers[i + 1]);
+            }
+            exchange.sendResponseHeaders(response.code, response.body.length > 0 ? response.body.length : -1);
+            OutputStream out = exchange.getResponseBody();
+            out.write(response.body);
+            out.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.http;
+
+import com.rhoadster91.android.siesta.response.ResponseWrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UrlConnectionTransportTest {
+
+    private static final String[] KEEP_ALIVE_PROPERTIES = {"http.keepAlive", "http.maxConnections", "http.keepAliveDuration"};
+
+    private static final Map<String, String> NONE = Collections.emptyMap();
+
+    private final String[] mSavedProperties = new String[KEEP_ALIVE_PROPERTIES.length];
+
+    private TestServer mServer;
+    private ConnectionStats mStats;
+    private UrlConnectionTransport mTransport;
+
+    @Before
+    public void setUp() throws Exception {
+        for(int i = 0; i < KEEP_ALIVE_PROPERTIES.length; i++) {
+            mSavedProperties[i] = System.getProperty(KEEP_ALIVE_PROPERTIES[i]);
+        }
+        mServer = new TestServer();
+        mStats = new ConnectionStats();
+        mTransport = new UrlConnectionTransport(mStats);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        for(int i = 0; i < KEEP_ALIVE_PROPERTIES.length; i++) {
+            if(mSavedProperties[i] == null) {
+                System.clearProperty(KEEP_ALIVE_PROPERTIES[i]);
+            } else {
+                System.setProperty(KEEP_ALIVE_PROPERTIES[i], mSavedProperties[i]);
+            }
+        }
+    }
+
+    @Test
+    public void openAppliesTheApiTimeouts() throws Exception {
+        TestApi api = new TestApi(mServer.url("/"));
+        HttpURLConnection urlConnection = mTransport.open(api, new URL(api.url));
+        assertEquals(api.getConnectTimeout(), urlConnection.getConnectTimeout());
+        assertEquals(api.getReadTimeout(), urlConnection.getReadTimeout());
+        assertEquals(1, mStats.getActiveCount());
+        assertEquals(1, mStats.getActiveCount("127.0.0.1"));
+        mTransport.abort(urlConnection);
+        assertEquals(0, mStats.getActiveCount());
+        assertEquals(1, mStats.getDiscardedCount());
+    }
+
+    @Test
+    public void drainedResponsesAreCountedReusable() throws Throwable {
+        mServer.enqueue(200, "a".getBytes("UTF-8"));
+        mServer.enqueue(200, "b".getBytes("UTF-8"));
+        TestApi api = new TestApi(mServer.url("/items"));
+        SimpleHttpApiRequest request = new SimpleHttpApiRequest(mTransport, null);
+        ResponseWrapper<String> first = new ResponseWrapper<>();
+        request.get(api, NONE, NONE, first);
+        ResponseWrapper<String> second = new ResponseWrapper<>();
+        request.get(api, NONE, NONE, second);
+        assertEquals("a", first.getResponse());
+        assertEquals("b", second.getResponse());
+        assertEquals(2, mStats.getRequestCount());
+        assertEquals(2, mStats.getReusableCount());
+        assertEquals(0, mStats.getActiveCount());
+        assertEquals(Integer.valueOf(0), mStats.getActiveCountsByHost().get("127.0.0.1"));
+    }
+
+    @Test
+    public void largeUnreadBodyIsDiscarded() throws Exception {
+        mServer.enqueue(200, new byte[256 * 1024]);
+        TestApi api = new TestApi(mServer.url("/large"));
+        HttpURLConnection urlConnection = mTransport.open(api, new URL(api.url));
+        assertEquals(200, urlConnection.getResponseCode());
+        mTransport.release(urlConnection, urlConnection.getInputStream());
+        assertEquals(1, mStats.getDiscardedCount());
+        assertEquals(0, mStats.getReusableCount());
+    }
+
+    @Test
+    public void totalTimeoutDisconnectsSlowRequests() throws Throwable {
+        mServer.enqueueDelayed(200, "late".getBytes("UTF-8"), 3000);
+        TestApi api = new TestApi(mServer.url("/slow"));
+        api.totalTimeout = 200;
+        long start = System.nanoTime();
+        try {
+            new SimpleHttpApiRequest(mTransport, null).get(api, NONE, NONE, new ResponseWrapper<String>());
+            fail();
+        } catch (IOException expected) {
+        }
+        assertTrue(System.nanoTime() - start < 2000 * 1000000L);
+        assertEquals(1, mStats.getTimeoutCount());
+        assertEquals(0, mStats.getActiveCount());
+    }
+
+    @Test
+    public void setKeepAliveUsesDefaults() throws Exception {
+        UrlConnectionTransport.setKeepAlive();
+        assertEquals("true", System.getProperty("http.keepAlive"));
+        assertEquals(String.valueOf(UrlConnectionTransport.DEFAULT_MAX_IDLE_CONNECTIONS), System.getProperty("http.maxConnections"));
+        assertEquals(String.valueOf(UrlConnectionTransport.DEFAULT_KEEP_ALIVE_DURATION), System.getProperty("http.keepAliveDuration"));
+    }
+
+    @Test
+    public void noIdleConnectionsDisablesKeepAlive() throws Exception {
+        UrlConnectionTransport.setKeepAlive(0, 1000);
+        assertEquals("false", System.getProperty("http.keepAlive"));
+        assertEquals("0", System.getProperty("http.maxConnections"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeKeepAliveIsRejected() throws Exception {
+        UrlConnectionTransport.setKeepAlive(5, -1);
+    }
+}
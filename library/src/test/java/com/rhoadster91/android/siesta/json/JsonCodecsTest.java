@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.json;
+
+import android.util.JsonReader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JsonCodecsTest {
+
+    enum Color {
+        RED, GREEN
+    }
+
+    static class Base {
+        long id;
+    }
+
+    static class Model extends Base {
+        String name;
+        int count;
+        boolean enabled;
+        double ratio;
+        Color color;
+        List<String> tags;
+        Map<String, Integer> scores;
+        Model child;
+        transient String ignored = "kept";
+        static String sShared;
+    }
+
+    static class Wrapped {
+        final String value;
+
+        Wrapped(String value) {
+            this.value = value;
+        }
+    }
+
+    static class Unreadable {
+        Unreadable(String value) {
+        }
+    }
+
+    private static <T> T read(JsonCodec<T> codec, String json) throws IOException {
+        return codec.read(new JsonReader(new StringReader(json)));
+    }
+
+    @Test
+    public void readsScalars() throws Exception {
+        assertEquals("a\"b\n\u00e9", read(JsonCodecs.STRING, "\"a\\\"b\\n\\u00e9\""));
+        assertEquals(Boolean.TRUE, read(JsonCodecs.BOOLEAN, "true"));
+        assertEquals(Integer.valueOf(-12), read(JsonCodecs.INTEGER, "-12"));
+        assertEquals(Long.valueOf(1L << 40), read(JsonCodecs.LONG, "1099511627776"));
+        assertEquals(2.5, read(JsonCodecs.DOUBLE, "2.5"), 0);
+        assertEquals(2.5f, read(JsonCodecs.FLOAT, "2.5"), 0);
+        assertNull(read(JsonCodecs.VOID, "{\"anything\":[1,2]}"));
+    }
+
+    @Test
+    public void nullReadsAsNull() throws Exception {
+        assertNull(read(JsonCodecs.STRING, "null"));
+        assertNull(read(JsonCodecs.INTEGER, "null"));
+        assertNull(read(JsonCodecs.listOf(JsonCodecs.STRING), "null"));
+        assertNull(read(JsonCodecs.get(Model.class), "null"));
+    }
+
+    @Test
+    public void primitivesShareTheBoxedCodecs() throws Exception {
+        assertSame(JsonCodecs.INTEGER, JsonCodecs.get(int.class));
+        assertSame(JsonCodecs.DOUBLE, JsonCodecs.get(Double.class));
+    }
+
+    @Test
+    public void readsListsAndMaps() throws Exception {
+        assertEquals(Arrays.asList(1, null, 3), read(JsonCodecs.listOf(JsonCodecs.INTEGER), "[1, null, 3]"));
+        Map<String, List<String>> map = read(JsonCodecs.mapOf(JsonCodecs.listOf(JsonCodecs.STRING)), "{\"a\":[\"x\"],\"b\":[]}");
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(map.keySet().toArray()));
+        assertEquals(Collections.singletonList("x"), map.get("a"));
+        assertTrue(map.get("b").isEmpty());
+    }
+
+    @Test
+    public void readsModelsReflectively() throws Exception {
+        Model model = read(JsonCodecs.get(Model.class), "{\"id\":7,\"name\":\"n\",\"count\":3,\"enabled\":true,\"ratio\":0.5,"
+                + "\"color\":\"GREEN\",\"tags\":[\"t\"],\"scores\":{\"s\":1},\"child\":{\"name\":\"c\",\"child\":null}}");
+        assertEquals(7, model.id);
+        assertEquals("n", model.name);
+        assertEquals(3, model.count);
+        assertTrue(model.enabled);
+        assertEquals(0.5, model.ratio, 0);
+        assertEquals(Color.GREEN, model.color);
+        assertEquals(Collections.singletonList("t"), model.tags);
+        assertEquals(Collections.singletonMap("s", 1), model.scores);
+        assertEquals("c", model.child.name);
+        assertNull(model.child.child);
+    }
+
+    @Test
+    public void unknownStaticAndTransientFieldsAreSkipped() throws Exception {
+        Model model = read(JsonCodecs.get(Model.class), "{\"extra\":{\"a\":[1,{}]},\"ignored\":\"x\",\"sShared\":\"x\",\"name\":\"n\"}");
+        assertEquals("n", model.name);
+        assertEquals("kept", model.ignored);
+        assertNull(Model.sShared);
+    }
+
+    @Test
+    public void nullLeavesPrimitiveFieldsAtTheirDefault() throws Exception {
+        Model model = read(JsonCodecs.get(Model.class), "{\"count\":null,\"enabled\":null}");
+        assertEquals(0, model.count);
+        assertFalse(model.enabled);
+    }
+
+    @Test
+    public void unknownEnumConstantReadsAsNull() throws Exception {
+        assertNull(read(JsonCodecs.get(Color.class), "\"BLUE\""));
+        assertEquals(Color.RED, read(JsonCodecs.get(Color.class), "\"RED\""));
+    }
+
+    @Test
+    public void codecsAreCachedPerClass() throws Exception {
+        assertSame(JsonCodecs.get(Model.class), JsonCodecs.get(Model.class));
+    }
+
+    @Test
+    public void registeredCodecsWin() throws Exception {
+        JsonCodec<Wrapped> codec = new JsonCodec<Wrapped>() {
+            @Override
+            public Wrapped read(JsonReader reader) throws IOException {
+                return new Wrapped(reader.nextString());
+            }
+        };
+        JsonCodecs.register(Wrapped.class, codec);
+        assertSame(codec, JsonCodecs.get(Wrapped.class));
+        assertEquals("w", read(JsonCodecs.listOf(JsonCodecs.get(Wrapped.class)), "[\"w\"]").get(0).value);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void interfacesAreRejected() throws Exception {
+        JsonCodecs.get(Runnable.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void classesWithoutADefaultConstructorAreRejected() throws Exception {
+        JsonCodecs.get(Unreadable.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void mismatchedTokensFail() throws Exception {
+        read(JsonCodecs.get(Model.class), "{\"name\":[]}");
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() throws Exception {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() throws Exception {
+        Histogram histogram = new Histogram();
+        for(int i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(100));
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(3.5, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void percentilesStayWithinTheBucketError() throws Exception {
+        Histogram histogram = new Histogram();
+        for(int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertWithinBucketError(5000, histogram.getPercentile(50));
+        assertWithinBucketError(9000, histogram.getPercentile(90));
+        assertWithinBucketError(9900, histogram.getPercentile(99));
+        assertEquals(10000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() throws Exception {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getSum());
+    }
+
+    @Test
+    public void everyValueFallsInsideItsBucket() throws Exception {
+        Random random = new Random(7);
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+        for(long value : values) {
+            assertInsideBucket(value);
+        }
+        for(int i = 0; i < 10000; i++) {
+            assertInsideBucket((random.nextLong() >>> 1) >>> random.nextInt(63));
+        }
+        new Histogram().record(Long.MAX_VALUE);
+    }
+
+    private static void assertInsideBucket(long value) {
+        int index = Histogram.indexOf(value);
+        assertTrue(String.valueOf(value), value <= Histogram.upperBoundOf(index));
+        if(index > 0) {
+            assertTrue(String.valueOf(value), value > Histogram.upperBoundOf(index - 1));
+        }
+    }
+
+    private static void assertWithinBucketError(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, actual >= expected && actual <= expected * 1.125);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    private final MetricsRegistry mRegistry = new MetricsRegistry();
+
+    @Test
+    public void metricsAreKeptPerApiClassAndMethod() throws Exception {
+        RequestMetrics get = mRegistry.getMetrics(String.class, 0);
+        assertSame(get, mRegistry.getMetrics(String.class, 0));
+        assertNotSame(get, mRegistry.getMetrics(String.class, 1));
+        assertNotSame(get, mRegistry.getMetrics(Integer.class, 0));
+        assertEquals("java.lang.String", get.getApiName());
+        assertEquals(3, mRegistry.getAllMetrics().size());
+        mRegistry.reset();
+        assertTrue(mRegistry.getAllMetrics().isEmpty());
+    }
+
+    @Test
+    public void recordedRequestsUpdateCountsAndStatusCodes() throws Exception {
+        RequestMetrics metrics = mRegistry.getMetrics(String.class, 0);
+        mRegistry.recordRequest(metrics, 200, true, 10, 100, 5, 50);
+        mRegistry.recordRequest(metrics, 200, true, 20, 200, 0, 70);
+        mRegistry.recordRequest(metrics, 503, false, 30, 300, 5, 0);
+        mRegistry.recordRequest(metrics, 0, false, 40, 0, 0, 0);
+        mRegistry.recordRequest(metrics, 1000, false, 50, 0, 0, 0);
+        assertEquals(5, metrics.getRequestCount());
+        assertEquals(3, metrics.getFailureCount());
+        assertEquals(10, metrics.getBytesSent());
+        assertEquals(120, metrics.getBytesReceived());
+        assertEquals(2, metrics.getStatusCount(200));
+        assertEquals(1, metrics.getStatusCount(503));
+        assertEquals(2, metrics.getStatusCount(0));
+        assertEquals(2, metrics.getStatusCount(-1));
+        assertEquals("{0=2, 200=2, 503=1}", metrics.getStatusCounts().toString());
+        assertEquals(5, metrics.getQueueWait().getCount());
+        assertEquals(50, metrics.getQueueWait().getMax());
+        assertEquals(300, metrics.getNetworkTime().getMax());
+    }
+
+    @Test
+    public void dedupHitRateCountsHitsAgainstAllCallers() throws Exception {
+        RequestMetrics metrics = mRegistry.getMetrics(String.class, 0);
+        assertEquals(0, metrics.getDedupHitRate(), 0);
+        mRegistry.recordRequest(metrics, 200, true, 0, 0, 0, 0);
+        metrics.recordDedupHit();
+        metrics.recordDedupHit();
+        metrics.recordDedupHit();
+        assertEquals(3, metrics.getDedupHits());
+        assertEquals(0.75, metrics.getDedupHitRate(), 0);
+    }
+
+    @Test
+    public void listenersSeeEveryRecordedRequestUntilRemoved() throws Exception {
+        final List<String> seen = new ArrayList<>();
+        MetricsRegistry.Listener listener = new MetricsRegistry.Listener() {
+            @Override
+            public void onRequestCompleted(RequestMetrics metrics, int responseCode, boolean success, long queueWaitMicros, long networkMicros, long bytesSent, long bytesReceived) {
+                seen.add(responseCode + " " + success + " " + bytesReceived);
+            }
+        };
+        mRegistry.addListener(listener);
+        mRegistry.addListener(listener);
+        RequestMetrics metrics = mRegistry.getMetrics(String.class, 0);
+        mRegistry.recordRequest(metrics, 200, true, 0, 0, 0, 42);
+        mRegistry.removeListener(listener);
+        mRegistry.recordRequest(metrics, 500, false, 0, 0, 0, 0);
+        assertEquals("[200 true 42]", seen.toString());
+    }
+
+    @Test
+    public void queuedAndActiveCountsFollowTheTaskLifecycle() throws Exception {
+        mRegistry.onTaskQueued();
+        mRegistry.onTaskQueued();
+        assertEquals(2, mRegistry.getQueuedCount());
+        mRegistry.onTaskStarted();
+        assertEquals(1, mRegistry.getQueuedCount());
+        assertEquals(1, mRegistry.getActiveCount());
+        mRegistry.onTaskDequeued();
+        mRegistry.onTaskFinished();
+        assertEquals(0, mRegistry.getQueuedCount());
+        assertEquals(0, mRegistry.getActiveCount());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.metrics;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TracerTest {
+
+    private final Tracer mTracer = new Tracer(2);
+
+    @Test
+    public void newTraceIsEnqueuedButNotRecorded() throws Exception {
+        RequestTrace trace = mTracer.newTrace(String.class, 0, "sig");
+        assertEquals("java.lang.String", trace.getApiName());
+        assertEquals("sig", trace.getSignature());
+        assertTrue(trace.getTimestamp(RequestTrace.Phase.ENQUEUED) != 0);
+        assertEquals(0, trace.getTimestamp(RequestTrace.Phase.STARTED));
+        assertTrue(mTracer.getTraces().isEmpty());
+        trace.finish();
+        assertEquals(1, mTracer.getTraces().size());
+    }
+
+    @Test
+    public void tracesGetDistinctIds() throws Exception {
+        assertNotEquals(mTracer.newTrace(String.class, 0, "a").getId(), mTracer.newTrace(String.class, 0, "a").getId());
+    }
+
+    @Test
+    public void everyStartCountsAsAnAttempt() throws Exception {
+        RequestTrace trace = mTracer.newTrace(String.class, 0, "sig");
+        trace.mark(RequestTrace.Phase.STARTED);
+        trace.mark(RequestTrace.Phase.CONNECTED);
+        trace.mark(RequestTrace.Phase.STARTED);
+        assertEquals(2, trace.getAttempts());
+    }
+
+    @Test
+    public void durationNeedsBothPhasesInOrder() throws Exception {
+        RequestTrace trace = mTracer.newTrace(String.class, 0, "sig");
+        assertEquals(-1, trace.getDuration(RequestTrace.Phase.ENQUEUED, RequestTrace.Phase.STARTED));
+        Thread.sleep(1);
+        trace.mark(RequestTrace.Phase.STARTED);
+        assertTrue(trace.getDuration(RequestTrace.Phase.ENQUEUED, RequestTrace.Phase.STARTED) > 0);
+        assertEquals(-1, trace.getDuration(RequestTrace.Phase.STARTED, RequestTrace.Phase.ENQUEUED));
+    }
+
+    @Test
+    public void oldestTracesAreDroppedAtCapacity() throws Exception {
+        for(String signature : new String[]{"a", "b", "c"}) {
+            mTracer.newTrace(String.class, 0, signature).finish();
+        }
+        List<RequestTrace> traces = mTracer.getTraces();
+        assertEquals(2, traces.size());
+        assertEquals("b", traces.get(0).getSignature());
+        assertEquals("c", traces.get(1).getSignature());
+        mTracer.clear();
+        assertTrue(mTracer.getTraces().isEmpty());
+    }
+
+    @Test
+    public void chromeTraceHasOneEventPerCompletedPhase() throws Exception {
+        RequestTrace trace = mTracer.newTrace(String.class, 1, "sig");
+        trace.mark(RequestTrace.Phase.STARTED);
+        trace.mark(RequestTrace.Phase.FIRST_BYTE);
+        trace.finish();
+        String json = mTracer.toChromeTraceJson();
+        assertTrue(json, json.startsWith("{\"traceEvents\":[{\"name\":\"queue\",\"cat\":\"java.lang.String\",\"ph\":\"X\",\"pid\":1,\"tid\":" + trace.getId() + ","));
+        assertTrue(json, json.contains("{\"name\":\"wait\","));
+        assertFalse(json, json.contains("\"connect\""));
+        assertTrue(json, json.contains("\"args\":{\"signature\":\"sig\",\"method\":1,\"attempts\":1}"));
+        assertTrue(json, json.endsWith("}]}"));
+    }
+
+    @Test
+    public void emptyChromeTraceIsValid() throws Exception {
+        assertEquals("{\"traceEvents\":[]}", mTracer.toChromeTraceJson());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() throws Exception {
+        new Tracer(0);
+    }
+}
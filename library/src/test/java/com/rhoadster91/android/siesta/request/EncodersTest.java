@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Girish Kamath
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rhoadster91.android.siesta.request;
+
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EncodersTest {
+
+    private static final String[] SAMPLES = {
+            "", "plain", "a b+c", "50%", "a/b?c=d&e#f", "~!$'()*,;:@", "caf\u00e9", "\u4e2d\u6587",
+            "\ud83d\ude00", "a\ud800b", "\udc00", "x\ud83d", "\ud83d\ud83d\ude00"
+    };
+
+    @Test
+    public void queryValueMatchesUrlEncoder() throws Exception {
+        for(String sample : SAMPLES) {
+            assertEquals(sample, URLEncoder.encode(sample, "UTF-8"), queryValue(sample));
+        }
+    }
+
+    @Test
+    public void queryValueMatchesUrlEncoderOnRandomStrings() throws Exception {
+        Random random = new Random(42);
+        for(int i = 0; i < 2000; i++) {
+            char[] chars = new char[random.nextInt(8)];
+            for(int j = 0; j < chars.length; j++) {
+                chars[j] = random.nextInt(4) == 0 ? (char) (0xd800 + random.nextInt(0x800)) : (char) random.nextInt(0x3000);
+            }
+            String sample = new String(chars);
+            assertEquals(URLEncoder.encode(sample, "UTF-8"), queryValue(sample));
+        }
+    }
+
+    @Test
+    public void pathSegmentKeepsSubDelimitersAndEscapesTheRest() throws Exception {
+        assertEquals("a%20b~!$&'()*+,;=:@", pathSegment("a b~!$&'()*+,;=:@"));
+        assertEquals("a%2Fb%3Fc%23", pathSegment("a/b?c#"));
+        assertEquals("%F0%9F%98%80", pathSegment("\ud83d\ude00"));
+        assertEquals("a%3Fb", pathSegment("a\ud800b"));
+    }
+
+    @Test
+    public void jsonStringEscapesControlAndSeparatorCharacters() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        Encoders.appendJsonString(builder, "q\"b\\\n\t\u0001\u2028");
+        assertEquals("\"q\\\"b\\\\\\n\\t\\u0001\\u2028\"", builder.toString());
+    }
+
+    private static String queryValue(String value) {
+        StringBuilder builder = new StringBuilder();
+        Encoders.appendQueryValue(builder, value);
+        return builder.toString();
+    }
+
+    private static String pathSegment(String value) {
+        StringBuilder builder = new StringBuilder();
+        Encoders.appendPathSegment(builder, value);
+        return builder.toString();
+    }
+}